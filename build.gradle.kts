@@ -3,6 +3,7 @@ plugins {
     id("io.micronaut.application") version "4.6.1"
     id("com.gradleup.shadow") version "8.3.9"
     id("io.micronaut.aot") version "4.6.1"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 version = "1.0.0"
@@ -28,6 +29,8 @@ dependencies {
     
     // WebSocket
     implementation("io.micronaut:micronaut-websocket")
+    // Acceso al canal Netty para escribir frames ya codificados
+    implementation("io.micronaut:micronaut-http-server-netty")
     
     // Reactive Streams
     implementation("io.projectreactor:reactor-core")
@@ -69,6 +72,15 @@ tasks.withType<Test> {
 
 graalvmNative.toolchainDetection = false
 
+// Benchmarks: ./gradlew jmh (src/jmh/java)
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // Bytes asignados por operación (gc.alloc.rate.norm)
+    profilers.set(listOf("gc"))
+}
+
 micronaut {
     runtime("netty")
     testRuntime("junit5")
@@ -0,0 +1,85 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import com.beepit.server.domain.command.ReplyAdapterCommand;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Request;
+import com.beepit.server.domain.command.UserManagerCommand;
+import com.beepit.server.domain.command.UserManagerCommand.GetUser;
+import com.beepit.server.domain.response.UserManagerResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second against the user manager: {@code AskPattern.ask}
+ * (temporary actor, promise and scheduled timeout per request) compared to
+ * the long-lived {@link ReplyAdapterActor} with correlation ids.
+ *
+ * Each invocation sends a burst of lookups and waits for every reply.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AskVsReplyAdapterBenchmark {
+
+    private static final int BURST = 1_000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private ActorSystem<UserManagerCommand> system;
+    private ActorRef<ReplyAdapterCommand<UserManagerResponse>> replies;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        system = ActorSystem.create(UserManagerActor.create(), "ask-benchmark");
+        replies = system.systemActorOf(ReplyAdapterActor.create(UserManagerResponse.class), "reply-adapter", Props.empty());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void ask() {
+        CompletableFuture<?>[] results = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            results[i] = AskPattern.<UserManagerCommand, UserManagerResponse>ask(
+                system,
+                replyTo -> new GetUser("alice", replyTo),
+                TIMEOUT,
+                system.scheduler()
+            ).toCompletableFuture();
+        }
+        CompletableFuture.allOf(results).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void replyAdapter() {
+        CompletableFuture<?>[] results = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            CompletableFuture<UserManagerResponse> result = new CompletableFuture<>();
+            results[i] = result;
+            replies.tell(new Request<>(
+                (correlationId, replyTo) -> system.tell(
+                    new UserManagerCommand.Correlated(correlationId, new GetUser("alice", replyTo))),
+                (response, error) -> {
+                    if (error == null) {
+                        result.complete(response);
+                    } else {
+                        result.completeExceptionally(error);
+                    }
+                },
+                TIMEOUT.toMillis()
+            ));
+        }
+        CompletableFuture.allOf(results).join();
+    }
+}
@@ -0,0 +1,65 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AskPattern;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.SendPrivateMessage;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Private message throughput of the sharded conversation system compared to
+ * a single conversation actor ({@code shards = 0}).
+ *
+ * Each invocation sends a burst of messages spread over many conversations
+ * and waits for every acknowledgement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConversationThroughputBenchmark {
+
+    private static final int CONVERSATIONS = 256;
+    private static final int BURST = 1_000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({"0", "1", "4", "8"})
+    public int shards;
+
+    private ActorSystem<ConversationManagerCommand> system;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Behavior<ConversationManagerCommand> behavior = shards == 0
+            ? ConversationShardActor.create()
+            : ConversationManagerActor.create(shards);
+        system = ActorSystem.create(behavior, "conversation-benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void sendPrivateMessages() {
+        CompletableFuture<?>[] acks = new CompletableFuture<?>[BURST];
+        for (int i = 0; i < BURST; i++) {
+            String recipientId = "user-" + (i % CONVERSATIONS);
+            acks[i] = AskPattern.<ConversationManagerCommand, ConversationManagerResponse>ask(
+                system,
+                replyTo -> new SendPrivateMessage("sender", recipientId, "benchmark", replyTo),
+                TIMEOUT,
+                system.scheduler()
+            ).toCompletableFuture();
+        }
+        CompletableFuture.allOf(acks).join();
+    }
+}
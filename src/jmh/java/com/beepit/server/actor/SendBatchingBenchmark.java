@@ -0,0 +1,87 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.SendPrivateMessage;
+import com.beepit.server.domain.command.SendBatcherCommand;
+import com.beepit.server.domain.command.SendBatcherCommand.Enqueue;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import com.beepit.server.journal.FsyncPolicy;
+import com.beepit.server.journal.JournalConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable private message sends from many concurrent senders, with and
+ * without micro-batching. Both modes only acknowledge a send once it is
+ * on disk: without batching every append is forced ({@code PER_WRITE}),
+ * with batching each batch is forced once by its group commit.
+ *
+ * Run with {@code -bm sample} to get the latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+public class SendBatchingBenchmark {
+
+    private static final int CONVERSATIONS = 256;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({"false", "true"})
+    public boolean batching;
+
+    private Path directory;
+    private ActorSystem<ConversationManagerCommand> system;
+    private ActorRef<SendBatcherCommand> batcher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("batching-benchmark");
+        JournalConfiguration journal = new JournalConfiguration();
+        journal.setEnabled(true);
+        journal.setDirectory(directory);
+        journal.setFsyncPolicy(batching ? FsyncPolicy.GROUP : FsyncPolicy.PER_WRITE);
+        journal.setFsyncGroupSize(Integer.MAX_VALUE);
+        journal.setSnapshotEvery(Integer.MAX_VALUE);
+
+        SendBatchConfiguration batch = new SendBatchConfiguration();
+        batch.setEnabled(batching);
+
+        system = ActorSystem.create(ConversationManagerActor.create(4, journal), "batching-benchmark");
+        batcher = system.systemActorOf(SendBatcher.create(system, batch), "send-batcher", Props.empty());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object sendPrivateMessage() {
+        String recipientId = "user-" + ThreadLocalRandom.current().nextInt(CONVERSATIONS);
+        return AskPattern.<SendBatcherCommand, ConversationManagerResponse>ask(
+            batcher,
+            replyTo -> new Enqueue(new SendPrivateMessage("sender", recipientId, "benchmark", replyTo)),
+            TIMEOUT,
+            system.scheduler()
+        ).toCompletableFuture().join();
+    }
+}
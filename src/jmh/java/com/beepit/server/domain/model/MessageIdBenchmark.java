@@ -0,0 +1,34 @@
+package com.beepit.server.domain.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of minting a message id: {@code UUID.randomUUID()} (SecureRandom)
+ * against the {@link Snowflake} generator, under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class MessageIdBenchmark {
+
+    private final Snowflake snowflake = new Snowflake(0);
+
+    @Benchmark
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public long snowflakeId() {
+        return snowflake.nextId();
+    }
+
+    @Benchmark
+    public String snowflakeString() {
+        return Snowflake.format(snowflake.nextId());
+    }
+}
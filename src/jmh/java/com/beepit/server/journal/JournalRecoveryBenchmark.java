@@ -0,0 +1,85 @@
+package com.beepit.server.journal;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.beepit.server.actor.ConversationShardActor;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.GetInbox;
+import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time for a shard to rebuild its state from a journal of {@code messages}
+ * private messages (no snapshot, so the whole journal is replayed).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalRecoveryBenchmark {
+
+    private static final int CONVERSATIONS = 1_000;
+    private static final Duration TIMEOUT = Duration.ofMinutes(10);
+
+    @Param({"1000000", "10000000"})
+    public int messages;
+
+    private JournalConfiguration config;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        config = new JournalConfiguration();
+        config.setEnabled(true);
+        config.setDirectory(Files.createTempDirectory("journal-benchmark"));
+        config.setFsyncPolicy(FsyncPolicy.INTERVAL);
+        config.setSnapshotEvery(Integer.MAX_VALUE);
+
+        try (Journal journal = Journal.open(config.getDirectory().resolve("shard-0"), config, 0, event -> {})) {
+            long[] seqs = new long[CONVERSATIONS];
+            for (int i = 0; i < messages; i++) {
+                int conversation = i % CONVERSATIONS;
+                String recipientId = "user-" + conversation;
+                journal.append(new JournalEvent.MessageAppended(
+                    Conversation.idFor("sender", recipientId),
+                    new PrivateMessage(seqs[conversation]++, "sender", recipientId, "benchmark message " + i)
+                ));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        try (Stream<Path> files = Files.walk(config.getDirectory())) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object recover() {
+        ActorSystem<ConversationManagerCommand> system =
+            ActorSystem.create(ConversationShardActor.create(config, "shard-0"), "recovery-benchmark");
+        try {
+            // The first reply arrives once recovery has finished
+            return AskPattern.<ConversationManagerCommand, ConversationManagerResponse>ask(
+                system,
+                replyTo -> new GetInbox("sender", replyTo),
+                TIMEOUT,
+                system.scheduler()
+            ).toCompletableFuture().join();
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.serde.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of inbound JSON frames: the former parse into a
+ * {@code Map<String, Object>} (then reading the fields out of it) against the
+ * typed {@link InboundFrame} decode of {@link JsonWireCodec}, for a single
+ * send and a batch of ten. Bytes allocated per decode come from the GC
+ * profiler ({@code gc.alloc.rate.norm}), enabled for {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InboundDecodeBenchmark {
+
+    @Param({"send", "send_batch"})
+    public String frame;
+
+    private ObjectMapper objectMapper;
+    private JsonWireCodec codec;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        objectMapper = ObjectMapper.getDefault();
+        codec = new JsonWireCodec(objectMapper);
+        String content = "¿Quedamos a las ocho en la puerta del cine?";
+        if (frame.equals("send")) {
+            encoded = objectMapper.writeValueAsBytes(Map.of("content", content));
+        } else {
+            List<Map<String, String>> messages = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                messages.add(Map.of("correlationId", "c" + i, "content", content));
+            }
+            encoded = objectMapper.writeValueAsBytes(Map.of("type", "send_batch", "messages", messages));
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Object mapParse() throws IOException {
+        Map<String, Object> data = objectMapper.readValue(encoded, Map.class);
+        if (!"send_batch".equals(data.get("type"))) {
+            return data.get("content") instanceof String content ? content : null;
+        }
+        List<String> contents = new ArrayList<>();
+        for (Object element : (List<?>) data.get("messages")) {
+            Map<?, ?> item = (Map<?, ?>) element;
+            if (item.get("correlationId") instanceof String && item.get("content") instanceof String content) {
+                contents.add(content);
+            }
+        }
+        return contents;
+    }
+
+    @Benchmark
+    public WireCommand typedDecode() throws IOException {
+        return codec.decode(encoded);
+    }
+}
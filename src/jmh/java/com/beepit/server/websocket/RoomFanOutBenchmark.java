@@ -0,0 +1,115 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.Message;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import com.beepit.server.websocket.WireEvent.RoomMessage;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One room message delivered to every member of a large room, until the last
+ * member has received its frame: from the calling thread, as the private
+ * chat broadcast does, against a {@link FanOutPlan} that delivers each event
+ * loop's members on that loop.
+ *
+ * Members are in-process channels spread over the event loops, each with a
+ * peer that counts the frames it reads. Run with {@code -bm sample} for the
+ * completion percentiles; the per-recipient p99 of the sharded path is also
+ * in {@code DeliveryMetrics}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoomFanOutBenchmark {
+
+    @Param({"500", "5000"})
+    public int members;
+
+    @Param({"caller", "sharded"})
+    public String mode;
+
+    private EventLoopGroup loops;
+    private Channel server;
+    private Counter counter;
+    private FrameBroadcaster broadcaster;
+    private List<LiveSession> recipients;
+    private FanOutPlan plan;
+    private RoomMessage event;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        loops = new DefaultEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2);
+        counter = new Counter();
+        LocalAddress address = new LocalAddress("room-fan-out-benchmark");
+        server = new ServerBootstrap()
+            .group(loops)
+            .channel(LocalServerChannel.class)
+            .childHandler(counter)
+            .bind(address).sync().channel();
+
+        DeliveryMetrics metrics = new DeliveryMetrics();
+        OutboundConfiguration outbound = new OutboundConfiguration();
+        broadcaster = new FrameBroadcaster(null, metrics, outbound);
+        recipients = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            LocalChannel channel = new LocalChannel();
+            loops.register(channel).sync();
+            channel.connect(address).sync();
+            WireCodec codec = new BinaryWireCodec();
+            recipients.add(new LiveSession(null, channel,
+                new OutboundQueue(null, channel, codec, outbound, metrics), codec));
+        }
+        plan = FanOutPlan.of(recipients);
+        event = new RoomMessage(new Message("alice", "Hola a todos", "general"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        server.close().sync();
+        loops.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    @Benchmark
+    public void fanOut() throws IOException, InterruptedException {
+        CountDownLatch received = new CountDownLatch(members);
+        counter.latch.set(received);
+        if (mode.equals("sharded")) {
+            broadcaster.broadcast(plan, event);
+        } else {
+            broadcaster.broadcast(recipients, event);
+        }
+        if (!received.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(received.getCount() + " members did not receive the message");
+        }
+    }
+
+    /** Peer of every member: releases the frame and counts it. */
+    @ChannelHandler.Sharable
+    private static class Counter extends ChannelInboundHandlerAdapter {
+
+        private final AtomicReference<CountDownLatch> latch = new AtomicReference<>(new CountDownLatch(0));
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object frame) {
+            ReferenceCountUtil.release(frame);
+            latch.get().countDown();
+        }
+    }
+}
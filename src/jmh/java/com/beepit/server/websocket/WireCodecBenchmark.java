@@ -0,0 +1,111 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireEvent.Message;
+import io.micronaut.serde.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON against the binary subprotocol for a typical chat message: encoding
+ * the {@code message} event, decoding it on the client, and decoding a send
+ * command on the server. The encoded size of each frame (bytes per message on
+ * the wire, before WebSocket framing) is reported next to every result as the
+ * {@code messageEventBytes} and {@code sendCommandBytes} secondary metrics.
+ *
+ * The binary codec is measured in steady state: both user ids are already in
+ * the connection's string table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireCodecBenchmark {
+
+    private static final UnpooledByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+    private WireCodec server;
+    private BinaryWireCodec client;
+    private Message event;
+    private byte[] encodedEvent;
+    private byte[] encodedCommand;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        objectMapper = ObjectMapper.getDefault();
+        PrivateMessage message = new PrivateMessage(1_234, "user-4f1c2a", "user-9b7e10",
+            "¿Quedamos a las ocho en la puerta del cine?");
+        event = new Message(message);
+        Send command = new Send(message.content());
+
+        if (format.equals("binary")) {
+            BinaryWireCodec binary = new BinaryWireCodec();
+            client = new BinaryWireCodec();
+            // First frame: fills the string tables of both ends
+            ByteBuf first = binary.encode(event, ALLOCATOR, FrameKind.ESSENTIAL);
+            client.decodeEvent(first);
+            first.release();
+            server = binary;
+            encodedCommand = toBytes(client.encodeCommand(command, ALLOCATOR));
+        } else {
+            server = new JsonWireCodec(objectMapper);
+            encodedCommand = objectMapper.writeValueAsBytes(Map.of("content", command.content()));
+        }
+        encodedEvent = toBytes(server.encode(event, ALLOCATOR, FrameKind.ESSENTIAL));
+    }
+
+    @Benchmark
+    public int encodeMessage(FrameSizes sizes) throws IOException {
+        ByteBuf frame = server.encode(event, ALLOCATOR, FrameKind.ESSENTIAL);
+        int size = frame.readableBytes();
+        frame.release();
+        return size;
+    }
+
+    @Benchmark
+    public Object decodeMessageOnClient(FrameSizes sizes) throws IOException {
+        if (client != null) {
+            return client.decodeEvent(Unpooled.wrappedBuffer(encodedEvent));
+        }
+        return objectMapper.readValue(encodedEvent, Map.class);
+    }
+
+    @Benchmark
+    public WireCommand decodeSendCommand(FrameSizes sizes) throws IOException {
+        return server.decode(encodedCommand);
+    }
+
+    /** Encoded sizes of the format, constant secondary results of every benchmark. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FrameSizes {
+
+        public long messageEventBytes;
+        public long sendCommandBytes;
+
+        @Setup(Level.Iteration)
+        public void setup(WireCodecBenchmark benchmark) {
+            messageEventBytes = benchmark.encodedEvent.length;
+            sendCommandBytes = benchmark.encodedCommand.length;
+        }
+    }
+
+    private static byte[] toBytes(ByteBuf frame) {
+        try {
+            return ByteBufUtil.getBytes(frame);
+        } finally {
+            frame.release();
+        }
+    }
+}
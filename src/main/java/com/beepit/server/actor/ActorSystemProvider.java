@@ -2,12 +2,23 @@ package com.beepit.server.actor;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
 import com.beepit.server.domain.command.ChatRoomCommand;
 import com.beepit.server.domain.command.UserManagerCommand;
 import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ReplyAdapterCommand;
+import com.beepit.server.domain.command.SendBatcherCommand;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import com.beepit.server.domain.response.UserManagerResponse;
+import com.beepit.server.journal.JournalConfiguration;
+import com.beepit.server.storage.TieringConfiguration;
+import io.micronaut.context.annotation.Value;
 import jakarta.inject.Singleton;
 import jakarta.annotation.PreDestroy;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Provider for Akka Actor Systems.
  * 
@@ -25,20 +36,62 @@ public class ActorSystemProvider {
     private final ActorSystem<ChatRoomCommand> chatRoomSystem;
     private final ActorSystem<UserManagerCommand> userManagerSystem;
     private final ActorSystem<ConversationManagerCommand> conversationManagerSystem;
+    private final List<ActorRef<SendBatcherCommand>> sendBatchers;
+    private final List<ActorRef<ReplyAdapterCommand<ConversationManagerResponse>>> conversationReplies;
+    private final ActorRef<ReplyAdapterCommand<UserManagerResponse>> userReplies;
     
-    public ActorSystemProvider() {
+    /**
+     * @param journalConfiguration persistence of the conversation shards
+     * @param tieringConfiguration hot/cold storage of conversation messages
+     * @param sendBatchConfiguration micro-batching of private message sends
+     * @param chatRoomConfiguration group room history size and passivation
+     * @param conversationShards number of conversation shards; 0 uses one per
+     *                           available processor
+     */
+    public ActorSystemProvider(JournalConfiguration journalConfiguration,
+                               TieringConfiguration tieringConfiguration,
+                               SendBatchConfiguration sendBatchConfiguration,
+                               ChatRoomConfiguration chatRoomConfiguration,
+                               @Value("${beepit.conversations.shards:0}") int conversationShards) {
         this.chatRoomSystem = ActorSystem.create(
-            ChatRoomActor.create(), 
+            ChatRoomActor.create(chatRoomConfiguration), 
             "chat-room-system"
         );
         this.userManagerSystem = ActorSystem.create(
             UserManagerActor.create(), 
             "user-manager-system"
         );
+        int shards = conversationShards > 0 ? conversationShards : Runtime.getRuntime().availableProcessors();
         this.conversationManagerSystem = ActorSystem.create(
-            ConversationManagerActor.create(), 
+            ConversationManagerActor.create(
+                shards,
+                journalConfiguration,
+                tieringConfiguration
+            ), 
             "conversation-manager-system"
         );
+        // One batcher and one reply adapter per shard, picked with the shard's own hash
+        List<ActorRef<SendBatcherCommand>> batchers = new ArrayList<>(shards);
+        List<ActorRef<ReplyAdapterCommand<ConversationManagerResponse>>> replies = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            batchers.add(conversationManagerSystem.systemActorOf(
+                SendBatcher.create(conversationManagerSystem, sendBatchConfiguration),
+                "send-batcher-" + i,
+                Props.empty()
+            ));
+            replies.add(conversationManagerSystem.systemActorOf(
+                ReplyAdapterActor.create(ConversationManagerResponse.class),
+                "reply-adapter-" + i,
+                Props.empty()
+            ));
+        }
+        this.sendBatchers = List.copyOf(batchers);
+        this.conversationReplies = List.copyOf(replies);
+        this.userReplies = userManagerSystem.systemActorOf(
+            ReplyAdapterActor.create(UserManagerResponse.class),
+            "reply-adapter",
+            Props.empty()
+        );
     }
     
     public ActorRef<ChatRoomCommand> getChatRoomActor() {
@@ -53,6 +106,32 @@ public class ActorSystemProvider {
         return conversationManagerSystem;
     }
     
+    /**
+     * Entry point for private message sends of a conversation: coalesces them
+     * into batches when {@code beepit.conversations.batch.enabled} is set.
+     * There is one batcher per conversation shard, and a conversation's sends
+     * always go through the batcher of its shard, so every batch targets a
+     * single shard and keeps the order of its sends.
+     */
+    public ActorRef<SendBatcherCommand> getSendBatcher(String conversationId) {
+        return sendBatchers.get(indexOf(conversationId));
+    }
+    
+    /**
+     * Ask-free request/reply with the conversation system: requests carry a
+     * correlation id and replies come back to the adapter of the
+     * conversation's shard. Replies about one conversation thus arrive at one
+     * adapter, in the order the shard sent them.
+     */
+    public ActorRef<ReplyAdapterCommand<ConversationManagerResponse>> getConversationReplies(String conversationId) {
+        return conversationReplies.get(indexOf(conversationId));
+    }
+    
+    /** Ask-free request/reply with the user manager, see {@link #getConversationReplies(String)}. */
+    public ActorRef<ReplyAdapterCommand<UserManagerResponse>> getUserReplies() {
+        return userReplies;
+    }
+    
     /**
      * Returns a shared scheduler instance. All ActorSystems share the same
      * underlying scheduler, so we can use any of them.
@@ -61,6 +140,11 @@ public class ActorSystemProvider {
         return userManagerSystem.scheduler();
     }
     
+    /** Same index as {@link ConversationManagerActor}'s shard of the conversation. */
+    private int indexOf(String conversationId) {
+        return Math.floorMod(conversationId.hashCode(), sendBatchers.size());
+    }
+    
     @PreDestroy
     public void shutdown() {
         chatRoomSystem.terminate();
@@ -1,5 +1,6 @@
 package com.beepit.server.actor;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
@@ -7,90 +8,136 @@ import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 import com.beepit.server.domain.command.ChatRoomCommand;
 import com.beepit.server.domain.command.ChatRoomCommand.*;
-import com.beepit.server.domain.response.ChatRoomResponse;
 import com.beepit.server.domain.response.ChatRoomResponse.*;
 import com.beepit.server.domain.response.ParticipantsResponse;
 import com.beepit.server.domain.model.RoomState;
-import com.beepit.server.domain.model.UserSession;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Routes group room commands to one {@link ChatRoomEntity} child per room,
+ * created when the first session joins. Commands for a room that has no
+ * entity are answered here (not found / empty).
+ *
+ * Passivation: an idle, empty entity sends {@link Passivate}; the parent
+ * stops routing to it, buffers the room's commands and tells it
+ * {@link StopRoom}, which the entity processes after everything routed to it
+ * before. The entity then hands its state back in {@link RoomStopped}: if
+ * commands were buffered, or a join reached the entity in the meantime, a new
+ * entity starts with that state and gets the buffer; otherwise the room is
+ * dropped, its history with it (rooms live in memory only).
+ */
 public class ChatRoomActor extends AbstractBehavior<ChatRoomCommand> {
-    
-    private final Map<String, RoomState> rooms;
-    
-    private ChatRoomActor(ActorContext<ChatRoomCommand> context, Map<String, RoomState> rooms) {
+
+    private final ChatRoomConfiguration config;
+    private final Map<String, ActorRef<ChatRoomCommand>> rooms = new HashMap<>();
+    // Rooms being passivated: commands received until the entity returns its state
+    private final Map<String, List<ChatRoomCommand>> passivating = new HashMap<>();
+    // Name suffix: a room's previous entity may still be registered when the new one is created
+    private long incarnation;
+
+    private ChatRoomActor(ActorContext<ChatRoomCommand> context, ChatRoomConfiguration config) {
         super(context);
-        this.rooms = rooms;
+        this.config = config;
     }
-    
+
     public static Behavior<ChatRoomCommand> create() {
-        return Behaviors.setup(context -> 
-            new ChatRoomActor(context, new ConcurrentHashMap<>())
-        );
+        return create(new ChatRoomConfiguration());
+    }
+
+    public static Behavior<ChatRoomCommand> create(ChatRoomConfiguration config) {
+        return Behaviors.setup(context -> new ChatRoomActor(context, config));
     }
-    
+
     @Override
     public Receive<ChatRoomCommand> createReceive() {
         return newReceiveBuilder()
             .onMessage(JoinRoom.class, this::onJoinRoom)
-            .onMessage(LeaveRoom.class, this::onLeaveRoom)
+            .onMessage(LeaveRoom.class, command -> {
+                route(command.roomId(), command);
+                return this;
+            })
             .onMessage(SendMessage.class, this::onSendMessage)
             .onMessage(GetRoomParticipants.class, this::onGetParticipants)
+            .onMessage(GetRoomHistory.class, this::onGetHistory)
+            .onMessage(Passivate.class, this::onPassivate)
+            .onMessage(RoomStopped.class, this::onRoomStopped)
             .build();
     }
-    
+
     private Behavior<ChatRoomCommand> onJoinRoom(JoinRoom command) {
-        getContext().getLog().info("User {} joining room {}", 
-            command.session().username(), command.roomId());
-        
-        RoomState room = rooms.computeIfAbsent(command.roomId(), k -> new RoomState());
-        room.getParticipants().put(command.session().userId(), command.session());
-        
-        command.replyTo().tell(new JoinedRoom(
-            command.roomId(), 
-            room.getParticipants().keySet()
-        ));
-        
-        return this;
-    }
-    
-    private Behavior<ChatRoomCommand> onLeaveRoom(LeaveRoom command) {
-        getContext().getLog().info("User {} leaving room {}", 
-            command.userId(), command.roomId());
-        
-        RoomState room = rooms.get(command.roomId());
-        if (room != null) {
-            room.getParticipants().remove(command.userId());
+        if (!route(command.roomId(), command)) {
+            spawn(command.roomId(), new RoomState(config.getHistorySize())).tell(command);
         }
-        
         return this;
     }
-    
+
     private Behavior<ChatRoomCommand> onSendMessage(SendMessage command) {
-        getContext().getLog().info("Message from {} in room {}", 
-            command.message().sender(), command.message().roomId());
-        
-        RoomState room = rooms.get(command.message().roomId());
-        if (room != null) {
-            room.getMessageHistory().add(command.message());
-            command.replyTo().tell(new MessageSent(command.message().id()));
-        } else {
+        if (!route(command.message().roomId(), command)) {
             command.replyTo().tell(new ErrorResponse("Room not found: " + command.message().roomId()));
         }
-        
         return this;
     }
-    
+
     private Behavior<ChatRoomCommand> onGetParticipants(GetRoomParticipants command) {
-        RoomState room = rooms.get(command.roomId());
-        Set<UserSession> participants = room != null 
-            ? new HashSet<>(room.getParticipants().values())
-            : Collections.emptySet();
-        
-        command.replyTo().tell(new ParticipantsResponse(participants));
-        
+        if (!route(command.roomId(), command)) {
+            command.replyTo().tell(new ParticipantsResponse(Collections.emptySet()));
+        }
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onGetHistory(GetRoomHistory command) {
+        if (!route(command.roomId(), command)) {
+            command.replyTo().tell(new RoomHistory(command.roomId(), List.of()));
+        }
         return this;
     }
+
+    private Behavior<ChatRoomCommand> onPassivate(Passivate command) {
+        // A request from an entity that is no longer the room's current one is ignored
+        if (command.entity().equals(rooms.get(command.roomId()))) {
+            getContext().getLog().debug("Passivating room {}", command.roomId());
+            rooms.remove(command.roomId());
+            passivating.put(command.roomId(), new ArrayList<>());
+            command.entity().tell(new StopRoom());
+        }
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onRoomStopped(RoomStopped command) {
+        List<ChatRoomCommand> buffered = passivating.remove(command.roomId());
+        if (buffered == null) {
+            return this;
+        }
+        if (!buffered.isEmpty() || !command.state().isEmpty()) {
+            ActorRef<ChatRoomCommand> entity = spawn(command.roomId(), command.state());
+            buffered.forEach(entity::tell);
+        } else {
+            getContext().getLog().info("Room {} passivated", command.roomId());
+        }
+        return this;
+    }
+
+    /** Sends the command to the room's entity, or buffers it while passivating. Returns false if the room has none. */
+    private boolean route(String roomId, ChatRoomCommand command) {
+        List<ChatRoomCommand> buffered = passivating.get(roomId);
+        if (buffered != null) {
+            buffered.add(command);
+            return true;
+        }
+        ActorRef<ChatRoomCommand> entity = rooms.get(roomId);
+        if (entity == null) {
+            return false;
+        }
+        entity.tell(command);
+        return true;
+    }
+
+    private ActorRef<ChatRoomCommand> spawn(String roomId, RoomState state) {
+        ActorRef<ChatRoomCommand> entity = getContext().spawn(
+            ChatRoomEntity.create(roomId, state, getContext().getSelf(), config.getIdleTimeout()),
+            "room-" + (++incarnation));
+        rooms.put(roomId, entity);
+        return entity;
+    }
 }
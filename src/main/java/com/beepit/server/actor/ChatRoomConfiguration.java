@@ -0,0 +1,32 @@
+package com.beepit.server.actor;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Group rooms ({@code beepit.rooms.*}): how many messages each room keeps
+ * and how long an empty room lives before its entity is passivated.
+ */
+@ConfigurationProperties("beepit.rooms")
+public class ChatRoomConfiguration {
+
+    private int historySize = 200;
+    private Duration idleTimeout = Duration.ofMinutes(5);
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+}
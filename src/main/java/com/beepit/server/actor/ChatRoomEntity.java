@@ -0,0 +1,109 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import com.beepit.server.domain.command.ChatRoomCommand;
+import com.beepit.server.domain.command.ChatRoomCommand.*;
+import com.beepit.server.domain.model.RoomState;
+import com.beepit.server.domain.response.ChatRoomResponse.*;
+import com.beepit.server.domain.response.ParticipantsResponse;
+
+import java.time.Duration;
+import java.util.HashSet;
+
+/**
+ * One group room, spawned by {@link ChatRoomActor} when someone joins it.
+ * Owns the room's {@link RoomState}, so rooms never contend with each other.
+ *
+ * When the room is empty and receives nothing for the idle timeout it asks
+ * the parent to passivate it; see {@link ChatRoomActor} for the hand-off.
+ */
+public class ChatRoomEntity extends AbstractBehavior<ChatRoomCommand> {
+
+    private final String roomId;
+    private final RoomState state;
+    private final ActorRef<ChatRoomCommand> parent;
+
+    private ChatRoomEntity(ActorContext<ChatRoomCommand> context, String roomId, RoomState state,
+                           ActorRef<ChatRoomCommand> parent, Duration idleTimeout) {
+        super(context);
+        this.roomId = roomId;
+        this.state = state;
+        this.parent = parent;
+        context.setReceiveTimeout(idleTimeout, new RoomIdle());
+    }
+
+    public static Behavior<ChatRoomCommand> create(String roomId, RoomState state,
+                                                   ActorRef<ChatRoomCommand> parent, Duration idleTimeout) {
+        return Behaviors.setup(context -> new ChatRoomEntity(context, roomId, state, parent, idleTimeout));
+    }
+
+    @Override
+    public Receive<ChatRoomCommand> createReceive() {
+        return newReceiveBuilder()
+            .onMessage(JoinRoom.class, this::onJoinRoom)
+            .onMessage(LeaveRoom.class, this::onLeaveRoom)
+            .onMessage(SendMessage.class, this::onSendMessage)
+            .onMessage(GetRoomParticipants.class, this::onGetParticipants)
+            .onMessage(GetRoomHistory.class, this::onGetHistory)
+            .onMessage(RoomIdle.class, this::onIdle)
+            .onMessage(StopRoom.class, this::onStop)
+            .build();
+    }
+
+    private Behavior<ChatRoomCommand> onJoinRoom(JoinRoom command) {
+        getContext().getLog().info("User {} joining room {}",
+            command.session().username(), roomId);
+
+        state.join(command.session());
+        command.replyTo().tell(new JoinedRoom(
+            roomId,
+            state.getParticipantIds(),
+            state.getMessageHistory(Integer.MAX_VALUE)
+        ));
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onLeaveRoom(LeaveRoom command) {
+        if (state.leave(command.sessionId())) {
+            getContext().getLog().info("Session {} leaving room {}", command.sessionId(), roomId);
+        }
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onSendMessage(SendMessage command) {
+        getContext().getLog().debug("Message from {} in room {}",
+            command.message().sender(), roomId);
+
+        state.append(command.message());
+        command.replyTo().tell(new MessageSent(command.message(), state.getParticipants()));
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onGetParticipants(GetRoomParticipants command) {
+        command.replyTo().tell(new ParticipantsResponse(new HashSet<>(state.getParticipants())));
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onGetHistory(GetRoomHistory command) {
+        command.replyTo().tell(new RoomHistory(roomId, state.getMessageHistory(command.limit())));
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onIdle(RoomIdle idle) {
+        // A room with participants stays alive even if nobody writes
+        if (state.isEmpty()) {
+            parent.tell(new Passivate(roomId, getContext().getSelf()));
+        }
+        return this;
+    }
+
+    private Behavior<ChatRoomCommand> onStop(StopRoom stop) {
+        parent.tell(new RoomStopped(roomId, state));
+        return Behaviors.stopped();
+    }
+}
@@ -1,6 +1,8 @@
 package com.beepit.server.actor;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
@@ -10,162 +12,221 @@ import com.beepit.server.domain.command.ConversationManagerCommand.*;
 import com.beepit.server.domain.response.ConversationManagerResponse;
 import com.beepit.server.domain.response.ConversationManagerResponse.*;
 import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.domain.model.InboxEntry;
 import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.journal.ConversationJournal;
+import com.beepit.server.journal.JournalConfiguration;
+import com.beepit.server.storage.TieringConfiguration;
 
-import java.time.Instant;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
+/**
+ * Guardian of the conversation system. It does not hold any conversation
+ * state: each conversation is owned by one {@link ConversationShardActor},
+ * chosen by hashing its conversation id, so sends to different conversations
+ * run in parallel while each conversation keeps its own ordering.
+ *
+ * Queries that span several conversations (a user's inbox, lookups by message
+ * id) are scattered to every shard and merged by a {@link ShardReplyAggregator}.
+ *
+ * When persistence is enabled each shard journals to its own directory; the
+ * shard count is part of the on-disk layout and cannot change between runs.
+ */
 public class ConversationManagerActor extends AbstractBehavior<ConversationManagerCommand> {
 
-    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
-    private final Map<String, PrivateMessage> messagesById = new ConcurrentHashMap<>();
+    private final List<ActorRef<ConversationManagerCommand>> shards;
 
-    private ConversationManagerActor(ActorContext<ConversationManagerCommand> context) {
+    private ConversationManagerActor(ActorContext<ConversationManagerCommand> context, int shardCount,
+                                     JournalConfiguration journal, TieringConfiguration tiering) {
         super(context);
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(context.spawn(
+                Behaviors.supervise(ConversationShardActor.create(
+                    journal, tiering, "shard-" + i, tiering.getHeapBudget() / shardCount))
+                    .onFailure(SupervisorStrategy.resume()),
+                "shard-" + i
+            ));
+        }
     }
 
     public static Behavior<ConversationManagerCommand> create() {
-        return Behaviors.setup(ConversationManagerActor::new);
+        return create(Runtime.getRuntime().availableProcessors());
+    }
+
+    public static Behavior<ConversationManagerCommand> create(int shardCount) {
+        return create(shardCount, new JournalConfiguration());
+    }
+
+    public static Behavior<ConversationManagerCommand> create(int shardCount, JournalConfiguration journal) {
+        return create(shardCount, journal, new TieringConfiguration());
+    }
+
+    public static Behavior<ConversationManagerCommand> create(int shardCount, JournalConfiguration journal,
+                                                              TieringConfiguration tiering) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        return Behaviors.setup(context -> {
+            if (journal.isEnabled()) {
+                ConversationJournal.checkLayout(journal, shardCount);
+            }
+            return new ConversationManagerActor(context, shardCount, journal, tiering);
+        });
     }
 
     @Override
     public Receive<ConversationManagerCommand> createReceive() {
         return newReceiveBuilder()
                 .onMessage(SendPrivateMessage.class, this::onSendPrivateMessage)
+                .onMessage(SendPrivateMessageBatch.class, this::onSendPrivateMessageBatch)
                 .onMessage(GetConversation.class, this::onGetConversation)
+                .onMessage(GetConversationPage.class, this::onGetConversationPage)
+                .onMessage(GetMessagesSince.class, cmd -> forward(cmd.conversationId(), cmd))
                 .onMessage(GetUserConversations.class, this::onGetUserConversations)
-                .onMessage(MarkMessageDelivered.class, this::onMarkMessageDelivered)
-                .onMessage(MarkMessageRead.class, this::onMarkMessageRead)
+                .onMessage(GetInbox.class, this::onGetInbox)
+                .onMessage(MarkMessageDelivered.class, cmd -> onMessageLookup(cmd, cmd.replyTo()))
+                .onMessage(MarkMessageRead.class, cmd -> onMessageLookup(cmd, cmd.replyTo()))
+                .onMessage(MarkDeliveredUpTo.class, cmd -> forward(cmd.conversationId(), cmd))
+                .onMessage(MarkReadUpTo.class, cmd -> forward(cmd.conversationId(), cmd))
+                .onMessage(AdvanceDeliveredUpTo.class, cmd -> forward(cmd.conversationId(), cmd))
+                .onMessage(GetPendingDeliveries.class, this::onGetPendingDeliveries)
                 .build();
     }
 
     private Behavior<ConversationManagerCommand> onSendPrivateMessage(SendPrivateMessage cmd) {
-        PrivateMessage message = new PrivateMessage(cmd.senderId(), cmd.recipientId(), cmd.content());
-        messagesById.put(message.messageId(), message);
-        
-        String conversationId = getConversationId(cmd.senderId(), cmd.recipientId());
-        Conversation conversation = conversations.get(conversationId);
-        
-        if (conversation == null) {
-            List<String> participants = Arrays.asList(cmd.senderId(), cmd.recipientId());
-            List<PrivateMessage> messages = new ArrayList<>();
-            messages.add(message);
-            conversation = new Conversation(
-                conversationId,
-                participants,
-                messages,
-                Instant.now(),
-                Instant.now()
-            );
-        } else {
-            List<PrivateMessage> messages = new ArrayList<>(conversation.messages());
-            messages.add(message);
-            conversation = new Conversation(
-                conversation.conversationId(),
-                conversation.participants(),
-                messages,
-                conversation.createdAt(),
-                Instant.now()
-            );
+        shardFor(Conversation.idFor(cmd.senderId(), cmd.recipientId())).tell(cmd);
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onSendPrivateMessageBatch(SendPrivateMessageBatch cmd) {
+        // One sub-batch per shard, keeping the arrival order within each
+        Map<Integer, List<SendPrivateMessage>> byShard = new HashMap<>();
+        for (SendPrivateMessage send : cmd.messages()) {
+            byShard.computeIfAbsent(shardIndex(Conversation.idFor(send.senderId(), send.recipientId())),
+                index -> new ArrayList<>()).add(send);
         }
-        
-        conversations.put(conversationId, conversation);
-        cmd.replyTo().tell(new MessageSent(message));
+        byShard.forEach((index, sends) -> shards.get(index).tell(new SendPrivateMessageBatch(sends)));
         return this;
     }
 
     private Behavior<ConversationManagerCommand> onGetConversation(GetConversation cmd) {
-        String conversationId = getConversationId(cmd.userId1(), cmd.userId2());
-        Conversation conversation = conversations.get(conversationId);
-        
-        if (conversation != null) {
-            cmd.replyTo().tell(new ConversationFound(conversation));
-        } else {
-            // Crear conversación vacía
-            List<String> participants = Arrays.asList(cmd.userId1(), cmd.userId2());
-            Conversation emptyConversation = new Conversation(conversationId, participants);
-            conversations.put(conversationId, emptyConversation);
-            cmd.replyTo().tell(new ConversationFound(emptyConversation));
-        }
+        shardFor(Conversation.idFor(cmd.userId1(), cmd.userId2())).tell(cmd);
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onGetConversationPage(GetConversationPage cmd) {
+        shardFor(cmd.conversationId()).tell(cmd);
         return this;
     }
 
     private Behavior<ConversationManagerCommand> onGetUserConversations(GetUserConversations cmd) {
-        List<Conversation> userConversations = conversations.values().stream()
-                .filter(conv -> conv.participants().contains(cmd.userId()))
-                .sorted((c1, c2) -> c2.lastMessageAt().compareTo(c1.lastMessageAt()))
-                .toList();
-        
-        cmd.replyTo().tell(new ConversationsList(userConversations));
+        ActorRef<ConversationManagerResponse> aggregator = scatter(cmd.replyTo(), this::mergeConversations);
+        shards.forEach(shard -> shard.tell(new GetUserConversations(cmd.userId(), aggregator)));
         return this;
     }
 
-    private Behavior<ConversationManagerCommand> onMarkMessageDelivered(MarkMessageDelivered cmd) {
-        PrivateMessage message = messagesById.get(cmd.messageId());
-        if (message != null) {
-            PrivateMessage updated = new PrivateMessage(
-                message.messageId(),
-                message.senderId(),
-                message.recipientId(),
-                message.content(),
-                message.timestamp(),
-                true,
-                message.read()
-            );
-            messagesById.put(cmd.messageId(), updated);
-            updateMessageInConversations(updated);
-            cmd.replyTo().tell(new MessageUpdated(cmd.messageId()));
-        } else {
-            cmd.replyTo().tell(new ErrorResponse("Message not found"));
-        }
+    private Behavior<ConversationManagerCommand> onGetInbox(GetInbox cmd) {
+        ActorRef<ConversationManagerResponse> aggregator = scatter(cmd.replyTo(), this::mergeInboxes);
+        shards.forEach(shard -> shard.tell(new GetInbox(cmd.userId(), aggregator)));
         return this;
     }
 
-    private Behavior<ConversationManagerCommand> onMarkMessageRead(MarkMessageRead cmd) {
-        PrivateMessage message = messagesById.get(cmd.messageId());
-        if (message != null) {
-            PrivateMessage updated = new PrivateMessage(
-                message.messageId(),
-                message.senderId(),
-                message.recipientId(),
-                message.content(),
-                message.timestamp(),
-                true,
-                true
-            );
-            messagesById.put(cmd.messageId(), updated);
-            updateMessageInConversations(updated);
-            cmd.replyTo().tell(new MessageUpdated(cmd.messageId()));
-        } else {
-            cmd.replyTo().tell(new ErrorResponse("Message not found"));
+    /**
+     * Every shard may answer with up to {@code limit} messages; the merge keeps
+     * the first {@code limit} so one reply never carries more, and reports the
+     * rest as {@code more}. Nothing was marked delivered, so what is trimmed
+     * comes back in the next query.
+     */
+    private Behavior<ConversationManagerCommand> onGetPendingDeliveries(GetPendingDeliveries cmd) {
+        ActorRef<ConversationManagerResponse> aggregator =
+            scatter(cmd.replyTo(), replies -> mergePendingDeliveries(replies, cmd.limit()));
+        shards.forEach(shard -> shard.tell(new GetPendingDeliveries(cmd.userId(), cmd.limit(), aggregator)));
+        return this;
+    }
+
+    /**
+     * Message ids do not carry their conversation, so the command is sent to
+     * every shard and the one that owns the message answers the caller.
+     */
+    private Behavior<ConversationManagerCommand> onMessageLookup(ConversationManagerCommand cmd,
+                                                                 ActorRef<ConversationManagerResponse> replyTo) {
+        ActorRef<ConversationManagerResponse> aggregator = scatter(replyTo, this::mergeLookups);
+        for (ActorRef<ConversationManagerCommand> shard : shards) {
+            shard.tell(switch (cmd) {
+                case MarkMessageDelivered delivered -> new MarkMessageDelivered(delivered.messageId(), aggregator);
+                case MarkMessageRead read -> new MarkMessageRead(read.messageId(), aggregator);
+                default -> throw new IllegalArgumentException("Not a message lookup: " + cmd);
+            });
         }
         return this;
     }
 
-    private void updateMessageInConversations(PrivateMessage updatedMessage) {
-        String conversationId = getConversationId(updatedMessage.senderId(), updatedMessage.recipientId());
-        Conversation conversation = conversations.get(conversationId);
-        
-        if (conversation != null) {
-            List<PrivateMessage> updatedMessages = conversation.messages().stream()
-                    .map(msg -> msg.messageId().equals(updatedMessage.messageId()) ? updatedMessage : msg)
-                    .toList();
-            
-            Conversation updatedConversation = new Conversation(
-                conversation.conversationId(),
-                conversation.participants(),
-                updatedMessages,
-                conversation.createdAt(),
-                conversation.lastMessageAt()
-            );
-            conversations.put(conversationId, updatedConversation);
+    private Behavior<ConversationManagerCommand> forward(String conversationId, ConversationManagerCommand cmd) {
+        shardFor(conversationId).tell(cmd);
+        return this;
+    }
+
+    private ActorRef<ConversationManagerResponse> scatter(
+            ActorRef<ConversationManagerResponse> replyTo,
+            Function<List<ConversationManagerResponse>, ConversationManagerResponse> merge) {
+        return getContext().spawnAnonymous(ShardReplyAggregator.create(shards.size(), merge, replyTo));
+    }
+
+    private ConversationManagerResponse mergeConversations(List<ConversationManagerResponse> replies) {
+        List<Conversation> merged = new ArrayList<>();
+        for (ConversationManagerResponse reply : replies) {
+            if (reply instanceof ConversationsList list) {
+                merged.addAll(list.conversations());
+            }
+        }
+        merged.sort(Comparator.comparing(Conversation::lastMessageAt).reversed());
+        return new ConversationsList(merged);
+    }
+
+    private ConversationManagerResponse mergeInboxes(List<ConversationManagerResponse> replies) {
+        List<InboxEntry> merged = new ArrayList<>();
+        for (ConversationManagerResponse reply : replies) {
+            if (reply instanceof Inbox inbox) {
+                merged.addAll(inbox.entries());
+            }
         }
+        merged.sort(UserInbox.order());
+        return new Inbox(merged);
+    }
+
+    private ConversationManagerResponse mergePendingDeliveries(List<ConversationManagerResponse> replies, int limit) {
+        List<PrivateMessage> messages = new ArrayList<>();
+        boolean more = false;
+        for (ConversationManagerResponse reply : replies) {
+            if (reply instanceof PendingDeliveries pending) {
+                messages.addAll(pending.messages());
+                more |= pending.more();
+            }
+        }
+        if (messages.size() > limit) {
+            return new PendingDeliveries(List.copyOf(messages.subList(0, limit)), true);
+        }
+        return new PendingDeliveries(messages, more);
+    }
+
+    private ConversationManagerResponse mergeLookups(List<ConversationManagerResponse> replies) {
+        return replies.stream()
+                .filter(reply -> reply instanceof MessageUpdated)
+                .findFirst()
+                .orElse(new ErrorResponse("Message not found"));
+    }
+
+    private ActorRef<ConversationManagerCommand> shardFor(String conversationId) {
+        return shards.get(shardIndex(conversationId));
     }
 
-    private String getConversationId(String userId1, String userId2) {
-        List<String> sorted = Arrays.asList(userId1, userId2);
-        Collections.sort(sorted);
-        return String.join("_", sorted);
+    private int shardIndex(String conversationId) {
+        return Math.floorMod(conversationId.hashCode(), shards.size());
     }
 }
@@ -0,0 +1,576 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.*;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import com.beepit.server.domain.response.ConversationManagerResponse.*;
+import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.domain.model.ConversationState;
+import com.beepit.server.domain.model.InboxEntry;
+import com.beepit.server.domain.model.MessageLog;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.journal.ConversationJournal;
+import com.beepit.server.journal.ConversationSnapshot;
+import com.beepit.server.journal.JournalConfiguration;
+import com.beepit.server.journal.JournalEvent;
+import com.beepit.server.journal.JournalEvent.MessageAppended;
+import com.beepit.server.journal.JournalEvent.ReceiptsMoved;
+import com.beepit.server.storage.ColdSegmentTier;
+import com.beepit.server.storage.TieringConfiguration;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns a subset of the conversations of the node. {@link ConversationManagerActor}
+ * routes every command for a given conversation to the same shard, so messages of
+ * one conversation stay ordered while different conversations progress in parallel.
+ *
+ * With persistence enabled every state change is journaled before it is applied,
+ * and the journal is committed before the command is acknowledged (one commit
+ * per command or batch, however many events it wrote). The shard rebuilds its
+ * conversations (and the inbox projection derived from them) from its snapshot
+ * and journal when it starts. Delivered watermarks moved by the server itself
+ * ({@link AdvanceDeliveredUpTo}) ride on the next commit instead of forcing one.
+ * Conversations that never had a message are not persisted.
+ *
+ * With tiering enabled, when the estimated heap footprint of hot messages goes
+ * over the shard's budget, the oldest full segments of the least recently
+ * active conversations are demoted to the cold tier. Conversations without
+ * messages for the configured idle time are passivated: all of their
+ * messages, the partial tail segment included, go to the cold tier. Reads
+ * load them back through the tier's cache, and the next send brings the tail
+ * segment back onto the heap, indexed by message id again. Demoted messages,
+ * and passivated ones until then, cannot be looked up by message id
+ * (watermark commands still cover them).
+ */
+public class ConversationShardActor extends AbstractBehavior<ConversationManagerCommand> {
+
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int PREVIEW_LENGTH = 100;
+    private static final Object PASSIVATION_TIMER = "passivation";
+
+    private final Map<String, ConversationState> conversations = new ConcurrentHashMap<>();
+    private final Map<String, MessageRef> messagesById = new ConcurrentHashMap<>();
+    // Inbox projection per user, ordered by last message (most recent first)
+    private final Map<String, UserInbox> inboxes = new HashMap<>();
+    // Conversations with messages not yet delivered, per recipient (oldest first)
+    private final Map<String, Set<String>> pendingDelivery = new HashMap<>();
+    private ConversationJournal journal = ConversationJournal.disabled();
+    // Cold tier: null while everything stays in memory
+    private ColdSegmentTier coldTier;
+    private TieringConfiguration tiering;
+    private long heapBudget;
+    private long hotBytes;
+    private long nextDemotionAt;
+
+    private ConversationShardActor(ActorContext<ConversationManagerCommand> context) {
+        super(context);
+    }
+
+    public static Behavior<ConversationManagerCommand> create() {
+        return Behaviors.setup(ConversationShardActor::new);
+    }
+
+    /**
+     * Shard persisted under {@code <journal directory>/<name>}. Recovery runs
+     * before the first command is processed.
+     */
+    public static Behavior<ConversationManagerCommand> create(JournalConfiguration config, String name) {
+        return create(config, new TieringConfiguration(), name, 0);
+    }
+
+    /**
+     * Shard persisted under {@code <journal directory>/<name>} that demotes old
+     * messages to {@code <storage directory>/<name>} once its hot messages
+     * exceed {@code heapBudget} bytes.
+     */
+    public static Behavior<ConversationManagerCommand> create(JournalConfiguration journal,
+                                                              TieringConfiguration tiering,
+                                                              String name,
+                                                              long heapBudget) {
+        if (!journal.isEnabled() && !tiering.isEnabled()) {
+            return create();
+        }
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> {
+            ConversationShardActor shard = new ConversationShardActor(context);
+            if (tiering.isEnabled()) {
+                shard.coldTier = ColdSegmentTier.open(tiering, name);
+                shard.tiering = tiering;
+                shard.heapBudget = heapBudget;
+                if (tiering.getPassivateAfter().isPositive()) {
+                    // A conversation is passivated between passivateAfter and twice that after its last message
+                    timers.startTimerAtFixedRate(PASSIVATION_TIMER, new PassivateIdle(), tiering.getPassivateAfter());
+                }
+            }
+            if (journal.isEnabled()) {
+                shard.recover(journal, name);
+            }
+            return shard;
+        }));
+    }
+
+    @Override
+    public Receive<ConversationManagerCommand> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(SendPrivateMessage.class, this::onSendPrivateMessage)
+                .onMessage(SendPrivateMessageBatch.class, this::onSendPrivateMessageBatch)
+                .onMessage(GetConversation.class, this::onGetConversation)
+                .onMessage(GetConversationPage.class, this::onGetConversationPage)
+                .onMessage(GetMessagesSince.class, this::onGetMessagesSince)
+                .onMessage(GetUserConversations.class, this::onGetUserConversations)
+                .onMessage(GetInbox.class, this::onGetInbox)
+                .onMessage(MarkMessageDelivered.class, this::onMarkMessageDelivered)
+                .onMessage(MarkMessageRead.class, this::onMarkMessageRead)
+                .onMessage(MarkDeliveredUpTo.class, this::onMarkDeliveredUpTo)
+                .onMessage(MarkReadUpTo.class, this::onMarkReadUpTo)
+                .onMessage(AdvanceDeliveredUpTo.class, this::onAdvanceDeliveredUpTo)
+                .onMessage(GetPendingDeliveries.class, this::onGetPendingDeliveries)
+                .onMessage(PassivateIdle.class, cmd -> onPassivateIdle())
+                .onSignal(PostStop.class, signal -> onPostStop())
+                .build();
+    }
+
+    private Behavior<ConversationManagerCommand> onSendPrivateMessage(SendPrivateMessage cmd) {
+        PrivateMessage message = sendPrivateMessage(cmd);
+        journal.commit();
+        cmd.reply(new MessageSent(message));
+        maybeSnapshot();
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onSendPrivateMessageBatch(SendPrivateMessageBatch cmd) {
+        List<PrivateMessage> sent = new ArrayList<>(cmd.messages().size());
+        for (SendPrivateMessage send : cmd.messages()) {
+            sent.add(sendPrivateMessage(send));
+        }
+        // A single journal commit for the whole batch before acknowledging
+        journal.commit();
+        for (int i = 0; i < sent.size(); i++) {
+            cmd.messages().get(i).reply(new MessageSent(sent.get(i)));
+        }
+        maybeSnapshot();
+        return this;
+    }
+
+    private PrivateMessage sendPrivateMessage(SendPrivateMessage cmd) {
+        ConversationState conversation = getOrCreateConversation(cmd.senderId(), cmd.recipientId());
+        PrivateMessage message = new PrivateMessage(
+            conversation.nextSeq(), cmd.senderId(), cmd.recipientId(), cmd.content());
+        
+        journal.append(new MessageAppended(conversation.getConversationId(), message));
+        appendMessage(conversation, message);
+        refreshInbox(conversation);
+        return message;
+    }
+
+    private Behavior<ConversationManagerCommand> onGetConversation(GetConversation cmd) {
+        // Creates the empty conversation if it does not exist
+        ConversationState conversation = getOrCreateConversation(cmd.userId1(), cmd.userId2());
+        cmd.replyTo().tell(new ConversationFound(conversation.snapshot()));
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onGetConversationPage(GetConversationPage cmd) {
+        ConversationState conversation = conversations.get(cmd.conversationId());
+        if (conversation == null) {
+            cmd.replyTo().tell(new ConversationPage(cmd.conversationId(), List.of(), null));
+            return this;
+        }
+        
+        int size = conversation.getMessages().size();
+        int limit = Math.clamp(cmd.limit(), 1, MAX_PAGE_SIZE);
+        int end = cmd.beforeCursor() == null
+            ? size
+            : (int) Math.clamp(cmd.beforeCursor(), 0L, (long) size);
+        int start = Math.max(0, end - limit);
+        
+        cmd.replyTo().tell(new ConversationPage(
+            cmd.conversationId(),
+            conversation.range(start, end),
+            start > 0 ? (long) start : null
+        ));
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onGetMessagesSince(GetMessagesSince cmd) {
+        ConversationState conversation = conversations.get(cmd.conversationId());
+        int size = conversation == null ? 0 : conversation.getMessages().size();
+        // Bounded before adding: a Long.MAX_VALUE cursor must not overflow
+        long from = Math.max(0, Math.min(cmd.afterSeq(), size) + 1);
+        
+        // A cursor ahead of the conversation means the server lost state
+        if (from > size || size - from > cmd.limit()) {
+            cmd.replyTo().tell(new ResyncRequired(cmd.conversationId(), size));
+            return this;
+        }
+        cmd.replyTo().tell(new MessagesSince(
+            cmd.conversationId(),
+            from == size ? List.of() : conversation.range((int) from, size),
+            size
+        ));
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onGetUserConversations(GetUserConversations cmd) {
+        UserInbox inbox = inboxes.get(cmd.userId());
+        List<Conversation> userConversations = inbox == null ? List.of() : inbox.entries().stream()
+                .map(entry -> conversations.get(entry.conversationId()).snapshot())
+                .toList();
+        
+        cmd.replyTo().tell(new ConversationsList(userConversations));
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onGetInbox(GetInbox cmd) {
+        UserInbox inbox = inboxes.get(cmd.userId());
+        cmd.replyTo().tell(new Inbox(inbox == null ? List.of() : List.copyOf(inbox.entries())));
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onMarkMessageDelivered(MarkMessageDelivered cmd) {
+        MessageRef ref = messagesById.get(cmd.messageId());
+        if (ref != null) {
+            ConversationState conversation = conversations.get(ref.conversationId());
+            PrivateMessage message = conversation.getMessages().get(ref.index());
+            if (conversation.markDelivered(message.recipientId(), message.seq())) {
+                onReceiptsMoved(conversation, message.recipientId());
+                journal.commit();
+            }
+            cmd.replyTo().tell(new MessageUpdated(cmd.messageId()));
+        } else {
+            cmd.replyTo().tell(new ErrorResponse("Message not found"));
+        }
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onMarkMessageRead(MarkMessageRead cmd) {
+        MessageRef ref = messagesById.get(cmd.messageId());
+        if (ref != null) {
+            ConversationState conversation = conversations.get(ref.conversationId());
+            PrivateMessage message = conversation.getMessages().get(ref.index());
+            if (conversation.markRead(message.recipientId(), message.seq())) {
+                onReceiptsMoved(conversation, message.recipientId());
+                journal.commit();
+            }
+            cmd.replyTo().tell(new MessageUpdated(cmd.messageId()));
+        } else {
+            cmd.replyTo().tell(new ErrorResponse("Message not found"));
+        }
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onMarkDeliveredUpTo(MarkDeliveredUpTo cmd) {
+        ConversationState conversation = conversations.get(cmd.conversationId());
+        if (conversation == null || !conversation.getParticipants().contains(cmd.userId())) {
+            cmd.replyTo().tell(new ErrorResponse("Conversation not found"));
+            return this;
+        }
+        if (conversation.markDelivered(cmd.userId(), cmd.cursor())) {
+            onReceiptsMoved(conversation, cmd.userId());
+            journal.commit();
+        }
+        replyReceipts(conversation, cmd.userId(), cmd.replyTo());
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onMarkReadUpTo(MarkReadUpTo cmd) {
+        ConversationState conversation = conversations.get(cmd.conversationId());
+        if (conversation == null || !conversation.getParticipants().contains(cmd.userId())) {
+            cmd.replyTo().tell(new ErrorResponse("Conversation not found"));
+            return this;
+        }
+        if (conversation.markRead(cmd.userId(), cmd.cursor())) {
+            onReceiptsMoved(conversation, cmd.userId());
+            journal.commit();
+        }
+        replyReceipts(conversation, cmd.userId(), cmd.replyTo());
+        return this;
+    }
+
+    /**
+     * No commit of its own: the watermark is written to the journal and made
+     * durable by the shard's next commit (that of the next send or batch).
+     */
+    private Behavior<ConversationManagerCommand> onAdvanceDeliveredUpTo(AdvanceDeliveredUpTo cmd) {
+        ConversationState conversation = conversations.get(cmd.conversationId());
+        if (conversation == null || !conversation.getParticipants().contains(cmd.userId())) {
+            cmd.reply(new ErrorResponse("Conversation not found"));
+            return this;
+        }
+        if (conversation.markDelivered(cmd.userId(), cmd.cursor())) {
+            onReceiptsMoved(conversation, cmd.userId());
+        }
+        cmd.reply(receiptsOf(conversation, cmd.userId()));
+        return this;
+    }
+
+    /**
+     * Replies with what the user has pending, conversation by conversation
+     * (up to {@code limit} messages). Nothing moves here: the caller advances
+     * the watermarks once the messages are written to the client.
+     */
+    private Behavior<ConversationManagerCommand> onGetPendingDeliveries(GetPendingDeliveries cmd) {
+        Set<String> pending = pendingDelivery.getOrDefault(cmd.userId(), Set.of());
+        List<PrivateMessage> messages = new ArrayList<>();
+        boolean more = false;
+        for (String conversationId : pending) {
+            if (messages.size() >= cmd.limit()) {
+                more = true;
+                break;
+            }
+            ConversationState conversation = conversations.get(conversationId);
+            int from = (int) conversation.getReceipts(cmd.userId()).deliveredUpTo();
+            int size = conversation.getMessages().size();
+            int to = Math.min(size, from + cmd.limit() - messages.size());
+            more |= to < size;
+            for (PrivateMessage message : conversation.range(from, to)) {
+                if (message.recipientId().equals(cmd.userId())) {
+                    messages.add(message);
+                }
+            }
+        }
+        cmd.replyTo().tell(new PendingDeliveries(messages, more));
+        return this;
+    }
+
+    private Behavior<ConversationManagerCommand> onPassivateIdle() {
+        Instant idleSince = Instant.now().minus(tiering.getPassivateAfter());
+        int passivated = 0;
+        for (ConversationState conversation : conversations.values()) {
+            MessageLog log = conversation.getMessages();
+            if (!log.hasHotMessages() || !conversation.getLastMessageAt().isBefore(idleSince)) {
+                continue;
+            }
+            for (PrivateMessage message : log.range(log.coldSegmentCount() * log.segmentSize(), log.size())) {
+                messagesById.remove(message.messageId());
+            }
+            hotBytes -= log.passivate();
+            passivated++;
+        }
+        if (passivated > 0) {
+            getContext().getLog().debug("{} conversations passivated; ~{} bytes in memory", passivated, hotBytes);
+        }
+        return this;
+    }
+
+    private void replyReceipts(ConversationState conversation, String userId,
+                               ActorRef<ConversationManagerResponse> replyTo) {
+        replyTo.tell(receiptsOf(conversation, userId));
+    }
+
+    private static ReceiptsUpdated receiptsOf(ConversationState conversation, String userId) {
+        ConversationState.Receipts receipts = conversation.getReceipts(userId);
+        return new ReceiptsUpdated(
+            conversation.getConversationId(),
+            userId,
+            receipts.deliveredUpTo(),
+            receipts.readUpTo()
+        );
+    }
+
+    private Behavior<ConversationManagerCommand> onPostStop() {
+        journal.close();
+        if (coldTier != null) {
+            coldTier.close();
+        }
+        return this;
+    }
+
+    private ConversationState getOrCreateConversation(String userId1, String userId2) {
+        String conversationId = Conversation.idFor(userId1, userId2);
+        ConversationState conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            conversation = new ConversationState(conversationId, Arrays.asList(userId1, userId2), Instant.now(), coldTier);
+            conversations.put(conversationId, conversation);
+            refreshInbox(conversation);
+        }
+        return conversation;
+    }
+
+    private void appendMessage(ConversationState conversation, PrivateMessage message) {
+        if (coldTier != null) {
+            reactivateTail(conversation);
+        }
+        int index = conversation.append(message);
+        messagesById.put(message.messageId(), new MessageRef(conversation.getConversationId(), index));
+        if (coldTier != null) {
+            hotBytes += MessageLog.estimateSize(message);
+            maybeDemote();
+        }
+    }
+
+    /**
+     * Brings the tail segment of a passivated conversation back onto the heap
+     * before it is appended to, and indexes its messages by id again.
+     */
+    private void reactivateTail(ConversationState conversation) {
+        MessageLog log = conversation.getMessages();
+        long reactivated = log.reactivateTail();
+        if (reactivated == 0) {
+            return;
+        }
+        hotBytes += reactivated;
+        int tailStart = log.size() - log.size() % log.segmentSize();
+        List<PrivateMessage> tail = log.range(tailStart, log.size());
+        for (int i = 0; i < tail.size(); i++) {
+            messagesById.put(tail.get(i).messageId(), new MessageRef(conversation.getConversationId(), tailStart + i));
+        }
+    }
+
+    /**
+     * Demotes eligible segments, least recently active conversations first,
+     * until the hot messages are back under 90% of the budget. If not enough
+     * is eligible, the next attempt waits until another 10% of the budget has
+     * been appended instead of rescanning on every message.
+     */
+    private void maybeDemote() {
+        if (hotBytes <= heapBudget || hotBytes < nextDemotionAt) {
+            return;
+        }
+        long target = heapBudget / 10 * 9;
+        Instant hotSince = Instant.now().minus(tiering.getHotWindow());
+        List<ConversationState> leastRecentFirst = conversations.values().stream()
+            .sorted(Comparator.comparing(ConversationState::getLastMessageAt))
+            .toList();
+        for (ConversationState conversation : leastRecentFirst) {
+            hotBytes -= demoteOldSegments(conversation, hotSince);
+            if (hotBytes <= target) {
+                break;
+            }
+        }
+        nextDemotionAt = hotBytes > target ? hotBytes + heapBudget / 10 : 0;
+        getContext().getLog().debug("Messages in memory after demoting: ~{} bytes", hotBytes);
+    }
+
+    private long demoteOldSegments(ConversationState conversation, Instant hotSince) {
+        MessageLog log = conversation.getMessages();
+        int segmentSize = log.segmentSize();
+        // Only full segments outside the last N messages and older than the window
+        int keepFrom = log.size() - tiering.getHotMessages();
+        long released = 0;
+        while (log.demotableSegments() > 0) {
+            int end = (log.coldSegmentCount() + 1) * segmentSize;
+            if (end > keepFrom || !log.get(end - 1).timestamp().isBefore(hotSince)) {
+                break;
+            }
+            for (PrivateMessage message : log.range(end - segmentSize, end)) {
+                messagesById.remove(message.messageId());
+            }
+            released += log.demoteOldestSegment();
+        }
+        return released;
+    }
+
+    /**
+     * Journals the new watermarks of a participant (the watermarks have already
+     * moved in memory, but the reply is only sent once the journal is
+     * committed) and updates the unread counts.
+     */
+    private void onReceiptsMoved(ConversationState conversation, String userId) {
+        ConversationState.Receipts receipts = conversation.getReceipts(userId);
+        journal.append(new ReceiptsMoved(
+            conversation.getConversationId(), userId, receipts.deliveredUpTo(), receipts.readUpTo()));
+        refreshInbox(conversation);
+        maybeSnapshot();
+    }
+
+    /**
+     * Rewrites the inbox entries of every participant from the conversation
+     * state, and whether the conversation has messages pending delivery to them.
+     */
+    private void refreshInbox(ConversationState conversation) {
+        int size = conversation.getMessages().size();
+        String preview = null;
+        if (size > 0) {
+            String content = conversation.getMessages().get(size - 1).content();
+            preview = content.length() > PREVIEW_LENGTH ? content.substring(0, PREVIEW_LENGTH) : content;
+        }
+        for (String userId : new LinkedHashSet<>(conversation.getParticipants())) {
+            inboxes.computeIfAbsent(userId, id -> new UserInbox()).put(new InboxEntry(
+                conversation.getConversationId(),
+                otherParticipant(conversation, userId),
+                conversation.unreadCount(userId),
+                preview,
+                conversation.getLastMessageAt()
+            ));
+            if (conversation.undeliveredCount(userId) > 0) {
+                pendingDelivery.computeIfAbsent(userId, id -> new LinkedHashSet<>()).add(conversation.getConversationId());
+            } else {
+                Set<String> pending = pendingDelivery.get(userId);
+                if (pending != null && pending.remove(conversation.getConversationId()) && pending.isEmpty()) {
+                    pendingDelivery.remove(userId);
+                }
+            }
+        }
+    }
+
+    private void maybeSnapshot() {
+        if (journal.isSnapshotDue()) {
+            journal.snapshot(conversations.values().stream()
+                .map(conversation -> new ConversationSnapshot(
+                    conversation.getConversationId(),
+                    conversation.getParticipants(),
+                    conversation.getCreatedAt(),
+                    conversation.getAllReceipts(),
+                    conversation.getMessages().snapshot()
+                ))
+                .toList());
+        }
+    }
+
+    private void recover(JournalConfiguration config, String name) throws IOException {
+        long start = System.nanoTime();
+        journal = ConversationJournal.open(config, name, this::restoreConversation, this::replay);
+        conversations.values().forEach(this::refreshInbox);
+        getContext().getLog().info("Shard {} recovered: {} conversations, {} messages in {} ms",
+            name, conversations.size(), messagesById.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void restoreConversation(ConversationSnapshot snapshot) {
+        ConversationState conversation = new ConversationState(
+            snapshot.conversationId(), snapshot.participants(), snapshot.createdAt(), coldTier);
+        conversations.put(conversation.getConversationId(), conversation);
+        snapshot.messages().forEach(message -> appendMessage(conversation, message));
+        snapshot.receipts().forEach(conversation::restoreReceipts);
+    }
+
+    private void replay(JournalEvent event) {
+        switch (event) {
+            case MessageAppended appended -> {
+                PrivateMessage message = appended.message();
+                ConversationState conversation = conversations.computeIfAbsent(appended.conversationId(),
+                    id -> new ConversationState(id, Arrays.asList(message.senderId(), message.recipientId()),
+                        message.timestamp(), coldTier));
+                appendMessage(conversation, message);
+            }
+            case ReceiptsMoved moved -> {
+                ConversationState conversation = conversations.get(moved.conversationId());
+                if (conversation != null) {
+                    conversation.restoreReceipts(moved.userId(),
+                        new ConversationState.Receipts(moved.deliveredUpTo(), moved.readUpTo()));
+                }
+            }
+        }
+    }
+
+    private static String otherParticipant(ConversationState conversation, String userId) {
+        return conversation.getParticipants().stream()
+            .filter(id -> !id.equals(userId))
+            .findFirst()
+            .orElse(userId);
+    }
+
+    /** Position of a message inside its conversation log. */
+    private record MessageRef(String conversationId, int index) {}
+
+}
@@ -0,0 +1,188 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import com.beepit.server.domain.command.ReplyAdapterCommand;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Reply;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Request;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Tick;
+import com.beepit.server.domain.response.CorrelatedReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Long-lived stand-in for {@code AskPattern.ask} on hot paths.
+ *
+ * An ask spawns a temporary actor, schedules its own timeout and allocates a
+ * promise for every request. Here a long-lived actor owns the in-flight
+ * requests sent through it: the target receives a correlation id and this
+ * actor's (single) reply address, and answers with a {@link CorrelatedReply}.
+ * A system can run several, each with its own correlation ids, to spread
+ * the replies of a hot path.
+ *
+ * In-flight requests live in a fixed ring indexed by correlation id, and
+ * timeouts in a hashed timing wheel advanced by one periodic timer, so a
+ * request costs one small entry and no scheduler task. Timeouts are accurate
+ * to one tick.
+ */
+public class ReplyAdapterActor<R> extends AbstractBehavior<ReplyAdapterCommand<R>> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplyAdapterActor.class);
+
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+    // One turn of the wheel = 512 ticks; longer deadlines wait several turns
+    static final int WHEEL_SLOTS = 512;
+    static final int MAX_IN_FLIGHT = 1 << 16;
+
+    private static final Object TICK_TIMER = "tick";
+
+    private final ActorRef<R> replyTo;
+    private final long tickMillis;
+    private final Pending<R>[] inFlight;
+    private final Pending<R>[] wheel;
+    private long nextCorrelationId = 1;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    private ReplyAdapterActor(ActorContext<ReplyAdapterCommand<R>> context, Class<R> responseClass, Duration tick) {
+        super(context);
+        this.replyTo = context.messageAdapter(responseClass, ReplyAdapterActor::toReply);
+        this.tickMillis = tick.toMillis();
+        this.inFlight = (Pending<R>[]) new Pending<?>[MAX_IN_FLIGHT];
+        this.wheel = (Pending<R>[]) new Pending<?>[WHEEL_SLOTS];
+    }
+
+    public static <R> Behavior<ReplyAdapterCommand<R>> create(Class<R> responseClass) {
+        return create(responseClass, DEFAULT_TICK);
+    }
+
+    public static <R> Behavior<ReplyAdapterCommand<R>> create(Class<R> responseClass, Duration tick) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> {
+            timers.startTimerAtFixedRate(TICK_TIMER, new Tick<>(), tick);
+            return new ReplyAdapterActor<>(context, responseClass, tick);
+        }));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Receive<ReplyAdapterCommand<R>> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Request.class, request -> onRequest((Request<R>) request))
+                .onMessage(Reply.class, reply -> onReply((Reply<R>) reply))
+                .onMessage(Tick.class, tick -> onTick())
+                .build();
+    }
+
+    private static <R> ReplyAdapterCommand<R> toReply(R response) {
+        if (response instanceof CorrelatedReply<?> correlated) {
+            @SuppressWarnings("unchecked")
+            R unwrapped = (R) correlated.response();
+            return new Reply<>(correlated.correlationId(), unwrapped);
+        }
+        return new Reply<>(0, response);
+    }
+
+    private Behavior<ReplyAdapterCommand<R>> onRequest(Request<R> request) {
+        long correlationId = nextCorrelationId;
+        int index = indexOf(correlationId);
+        if (inFlight[index] != null) {
+            // The oldest request is still waiting: the ring is full
+            complete(request.callback(), null, new IllegalStateException("Too many requests in flight"));
+            return this;
+        }
+        nextCorrelationId++;
+
+        long ticks = Math.max(1, (request.timeoutMillis() + tickMillis - 1) / tickMillis);
+        // +1: the current tick has already started, the deadline never gets shorter
+        Pending<R> pending = new Pending<>(correlationId, request.callback(), currentTick + ticks + 1);
+        inFlight[index] = pending;
+        int slot = (int) (pending.deadlineTick & (WHEEL_SLOTS - 1));
+        pending.next = wheel[slot];
+        wheel[slot] = pending;
+
+        try {
+            request.dispatch().send(correlationId, replyTo);
+        } catch (RuntimeException e) {
+            inFlight[index] = null;
+            pending.done = true;
+            complete(pending.callback, null, e);
+        }
+        return this;
+    }
+
+    private Behavior<ReplyAdapterCommand<R>> onReply(Reply<R> reply) {
+        int index = indexOf(reply.correlationId());
+        Pending<R> pending = inFlight[index];
+        if (reply.correlationId() == 0 || pending == null || pending.correlationId != reply.correlationId()) {
+            LOG.debug("Reply without a pending request (id {}), probably after its timeout", reply.correlationId());
+            return this;
+        }
+        inFlight[index] = null;
+        // Stays linked in the wheel until its slot passes
+        pending.done = true;
+        complete(pending.callback, reply.response(), null);
+        return this;
+    }
+
+    private Behavior<ReplyAdapterCommand<R>> onTick() {
+        currentTick++;
+        int slot = (int) (currentTick & (WHEEL_SLOTS - 1));
+        Pending<R> previous = null;
+        Pending<R> pending = wheel[slot];
+        while (pending != null) {
+            Pending<R> next = pending.next;
+            boolean expired = !pending.done && pending.deadlineTick <= currentTick;
+            if (pending.done || expired) {
+                if (previous == null) {
+                    wheel[slot] = next;
+                } else {
+                    previous.next = next;
+                }
+                if (expired) {
+                    inFlight[indexOf(pending.correlationId)] = null;
+                    pending.done = true;
+                    complete(pending.callback, null, new TimeoutException(
+                        "No reply to request " + pending.correlationId + " in time"));
+                }
+            } else {
+                previous = pending;
+            }
+            pending = next;
+        }
+        return this;
+    }
+
+    private static int indexOf(long correlationId) {
+        return (int) (correlationId & (MAX_IN_FLIGHT - 1));
+    }
+
+    private static <R> void complete(BiConsumer<R, Throwable> callback, R response, Throwable error) {
+        try {
+            callback.accept(response, error);
+        } catch (RuntimeException e) {
+            LOG.warn("Reply callback failed", e);
+        }
+    }
+
+    private static final class Pending<R> {
+        private final long correlationId;
+        private final BiConsumer<R, Throwable> callback;
+        private final long deadlineTick;
+        private Pending<R> next;
+        private boolean done;
+
+        private Pending(long correlationId, BiConsumer<R, Throwable> callback, long deadlineTick) {
+            this.correlationId = correlationId;
+            this.callback = callback;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.beepit.server.actor;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Micro-batching of private message sends ({@code beepit.conversations.batch.*}).
+ * When disabled, every send goes to the conversation system on its own.
+ */
+@ConfigurationProperties("beepit.conversations.batch")
+public class SendBatchConfiguration {
+
+    private boolean enabled = false;
+    private int maxSize = 64;
+    private Duration window = Duration.ofMillis(2);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public void setWindow(Duration window) {
+        this.window = window;
+    }
+}
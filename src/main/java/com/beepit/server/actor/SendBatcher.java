@@ -0,0 +1,85 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.SendPrivateMessage;
+import com.beepit.server.domain.command.ConversationManagerCommand.SendPrivateMessageBatch;
+import com.beepit.server.domain.command.SendBatcherCommand;
+import com.beepit.server.domain.command.SendBatcherCommand.Enqueue;
+import com.beepit.server.domain.command.SendBatcherCommand.FlushBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces private message sends that arrive within a short window (or until
+ * the batch is full) into one {@link SendPrivateMessageBatch}, so the shards
+ * apply them together and make them durable with a single journal commit.
+ *
+ * The window starts with the first message of a batch, so an isolated send
+ * waits at most one window. With batching disabled sends are forwarded as is.
+ */
+public class SendBatcher extends AbstractBehavior<SendBatcherCommand> {
+
+    private static final Object FLUSH_TIMER = "flush";
+
+    private final ActorRef<ConversationManagerCommand> conversations;
+    private final SendBatchConfiguration config;
+    private final TimerScheduler<SendBatcherCommand> timers;
+    private List<SendPrivateMessage> pending;
+
+    private SendBatcher(ActorContext<SendBatcherCommand> context,
+                        TimerScheduler<SendBatcherCommand> timers,
+                        ActorRef<ConversationManagerCommand> conversations,
+                        SendBatchConfiguration config) {
+        super(context);
+        this.timers = timers;
+        this.conversations = conversations;
+        this.config = config;
+        this.pending = new ArrayList<>(config.getMaxSize());
+    }
+
+    public static Behavior<SendBatcherCommand> create(ActorRef<ConversationManagerCommand> conversations,
+                                                      SendBatchConfiguration config) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers ->
+            new SendBatcher(context, timers, conversations, config)));
+    }
+
+    @Override
+    public Receive<SendBatcherCommand> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Enqueue.class, this::onEnqueue)
+                .onMessage(FlushBatch.class, cmd -> flush())
+                .build();
+    }
+
+    private Behavior<SendBatcherCommand> onEnqueue(Enqueue cmd) {
+        if (!config.isEnabled()) {
+            conversations.tell(cmd.message());
+            return this;
+        }
+        pending.add(cmd.message());
+        if (pending.size() >= config.getMaxSize()) {
+            return flush();
+        }
+        if (pending.size() == 1) {
+            timers.startSingleTimer(FLUSH_TIMER, new FlushBatch(), config.getWindow());
+        }
+        return this;
+    }
+
+    private Behavior<SendBatcherCommand> flush() {
+        timers.cancel(FLUSH_TIMER);
+        if (!pending.isEmpty()) {
+            conversations.tell(new SendPrivateMessageBatch(List.copyOf(pending)));
+            pending = new ArrayList<>(config.getMaxSize());
+        }
+        return this;
+    }
+}
@@ -0,0 +1,54 @@
+package com.beepit.server.actor;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import com.beepit.server.domain.response.ConversationManagerResponse.ErrorResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Short-lived actor that collects one reply per shard, merges them and
+ * answers the original caller. If some shard does not answer in time the
+ * caller gets an {@link ErrorResponse}: a merge of the replies received so far
+ * would look like a complete answer (an inbox missing conversations, a
+ * message reported as not found).
+ */
+final class ShardReplyAggregator {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(2);
+
+    private ShardReplyAggregator() {
+    }
+
+    static Behavior<ConversationManagerResponse> create(
+            int expectedReplies,
+            Function<List<ConversationManagerResponse>, ConversationManagerResponse> merge,
+            ActorRef<ConversationManagerResponse> replyTo) {
+        return Behaviors.setup(context -> {
+            ErrorResponse timeout = new ErrorResponse("Shard did not reply in time");
+            List<ConversationManagerResponse> replies = new ArrayList<>(expectedReplies);
+            context.setReceiveTimeout(TIMEOUT, timeout);
+
+            return Behaviors.receive(ConversationManagerResponse.class)
+                .onAnyMessage(reply -> {
+                    if (reply == timeout) {
+                        context.getLog().warn("{} of {} shards replied in time", replies.size(), expectedReplies);
+                        replyTo.tell(timeout);
+                        return Behaviors.stopped();
+                    }
+                    replies.add(reply);
+                    if (replies.size() < expectedReplies) {
+                        return Behaviors.same();
+                    }
+                    replyTo.tell(merge.apply(replies));
+                    return Behaviors.stopped();
+                })
+                .build();
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package com.beepit.server.actor;
+
+import com.beepit.server.domain.model.InboxEntry;
+
+import java.util.*;
+
+/**
+ * Inbox projection of one user inside a shard: an entry per conversation,
+ * ordered by last activity (most recent first).
+ */
+final class UserInbox {
+
+    private static final Comparator<InboxEntry> MOST_RECENT_FIRST =
+        Comparator.comparing(InboxEntry::lastMessageAt).reversed()
+            .thenComparing(InboxEntry::conversationId);
+
+    private final Map<String, InboxEntry> entries = new HashMap<>();
+    private final NavigableSet<InboxEntry> ordered = new TreeSet<>(MOST_RECENT_FIRST);
+
+    void put(InboxEntry entry) {
+        InboxEntry previous = entries.put(entry.conversationId(), entry);
+        if (previous != null) {
+            ordered.remove(previous);
+        }
+        ordered.add(entry);
+    }
+
+    /** Entries in inbox order, most recent first. */
+    Collection<InboxEntry> entries() {
+        return Collections.unmodifiableCollection(ordered);
+    }
+
+    static Comparator<InboxEntry> order() {
+        return MOST_RECENT_FIRST;
+    }
+}
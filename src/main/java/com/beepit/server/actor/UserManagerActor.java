@@ -1,5 +1,6 @@
 package com.beepit.server.actor;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
@@ -20,10 +21,12 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
 
     private final Map<String, AppUser> usersById = new ConcurrentHashMap<>();
     private final Map<String, String> userIdsByUsername = new ConcurrentHashMap<>();
+    // Id of the Correlated being handled; 0 outside of it
+    private long correlationId;
 
     private UserManagerActor(ActorContext<UserManagerCommand> context) {
         super(context);
-        // Pre-crear usuarios de prueba
+        // Pre-create test users
         createTestUsers();
     }
 
@@ -35,7 +38,7 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
             userIdsByUsername.put(username.toLowerCase(), user.userId());
         }
         
-        // No agregar contactos - todos empiezan sin contactos
+        // Do not add contacts - everyone starts without contacts
     }
 
     public static Behavior<UserManagerCommand> create() {
@@ -52,14 +55,32 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
                 .onMessage(AddContact.class, this::onAddContact)
                 .onMessage(GetContacts.class, this::onGetContacts)
                 .onMessage(SetUserOnline.class, this::onSetUserOnline)
+                .onMessage(UserManagerCommand.Correlated.class, this::onCorrelated)
                 .build();
     }
 
+    /**
+     * Handles the wrapped command; every handler answers synchronously, so its
+     * reply goes out while the correlation id is set.
+     */
+    private Behavior<UserManagerCommand> onCorrelated(UserManagerCommand.Correlated cmd) throws Exception {
+        correlationId = cmd.correlationId();
+        try {
+            return receive(getContext(), cmd.command());
+        } finally {
+            correlationId = 0;
+        }
+    }
+
+    private void reply(ActorRef<UserManagerResponse> replyTo, UserManagerResponse response) {
+        replyTo.tell(correlationId == 0 ? response : new UserManagerResponse.Correlated(correlationId, response));
+    }
+
     private Behavior<UserManagerCommand> onRegisterUser(RegisterUser cmd) {
         String usernameLower = cmd.username().toLowerCase();
         
         if (userIdsByUsername.containsKey(usernameLower)) {
-            cmd.replyTo().tell(new ErrorResponse("Username already exists"));
+            reply(cmd.replyTo(), new ErrorResponse("Username already exists"));
             return this;
         }
 
@@ -67,7 +88,7 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
         usersById.put(newUser.userId(), newUser);
         userIdsByUsername.put(usernameLower, newUser.userId());
         
-        cmd.replyTo().tell(new UserRegistered(newUser));
+        reply(cmd.replyTo(), new UserRegistered(newUser));
         return this;
     }
 
@@ -76,17 +97,17 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
         String userId = userIdsByUsername.get(usernameLower);
         
         if (userId == null) {
-            cmd.replyTo().tell(new ErrorResponse("User not found"));
+            reply(cmd.replyTo(), new ErrorResponse("User not found"));
             return this;
         }
 
         AppUser user = usersById.get(userId);
         if (!user.password().equals(cmd.password())) {
-            cmd.replyTo().tell(new ErrorResponse("Invalid password"));
+            reply(cmd.replyTo(), new ErrorResponse("Invalid password"));
             return this;
         }
 
-        // Marcar como online
+        // Mark as online
         AppUser onlineUser = new AppUser(
             user.userId(),
             user.username(),
@@ -97,22 +118,22 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
         );
         usersById.put(userId, onlineUser);
         
-        cmd.replyTo().tell(new UserLoggedIn(onlineUser));
+        reply(cmd.replyTo(), new UserLoggedIn(onlineUser));
         return this;
     }
 
     private Behavior<UserManagerCommand> onGetUser(GetUser cmd) {
         AppUser user = usersById.get(cmd.userId());
         if (user != null) {
-            cmd.replyTo().tell(new UserFound(user));
+            reply(cmd.replyTo(), new UserFound(user));
         } else {
-            cmd.replyTo().tell(new ErrorResponse("User not found"));
+            reply(cmd.replyTo(), new ErrorResponse("User not found"));
         }
         return this;
     }
 
     private Behavior<UserManagerCommand> onGetAllUsers(GetAllUsers cmd) {
-        cmd.replyTo().tell(new AllUsers(new ArrayList<>(usersById.values())));
+        reply(cmd.replyTo(), new AllUsers(new ArrayList<>(usersById.values())));
         return this;
     }
 
@@ -121,12 +142,12 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
         AppUser contact = usersById.get(cmd.contactId());
         
         if (user == null || contact == null) {
-            cmd.replyTo().tell(new ErrorResponse("User or contact not found"));
+            reply(cmd.replyTo(), new ErrorResponse("User or contact not found"));
             return this;
         }
 
         if (user.contactIds().contains(cmd.contactId())) {
-            cmd.replyTo().tell(new ErrorResponse("Contact already exists"));
+            reply(cmd.replyTo(), new ErrorResponse("Contact already exists"));
             return this;
         }
 
@@ -143,7 +164,7 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
         );
         usersById.put(cmd.userId(), updatedUser);
         
-        cmd.replyTo().tell(new ContactAdded(cmd.userId(), cmd.contactId()));
+        reply(cmd.replyTo(), new ContactAdded(cmd.userId(), cmd.contactId()));
         return this;
     }
 
@@ -151,7 +172,7 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
         AppUser user = usersById.get(cmd.userId());
         
         if (user == null) {
-            cmd.replyTo().tell(new ErrorResponse("User not found"));
+            reply(cmd.replyTo(), new ErrorResponse("User not found"));
             return this;
         }
 
@@ -162,7 +183,7 @@ public class UserManagerActor extends AbstractBehavior<UserManagerCommand> {
                     "Hey there! I'm using Beepit", u.online()))
                 .collect(Collectors.toList());
         
-        cmd.replyTo().tell(new ContactList(contacts));
+        reply(cmd.replyTo(), new ContactList(contacts));
         return this;
     }
 
@@ -1,7 +1,10 @@
 package com.beepit.server.controller;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.javadsl.AskPattern;
 import com.beepit.server.actor.ActorSystemProvider;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Request;
+import com.beepit.server.domain.command.UserManagerCommand;
 import com.beepit.server.domain.command.UserManagerCommand.*;
 import com.beepit.server.domain.command.ConversationManagerCommand.*;
 import com.beepit.server.domain.response.UserManagerResponse;
@@ -18,9 +21,13 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Controller("/api/auth")
@@ -33,19 +40,37 @@ public class AuthController {
         this.actorSystemProvider = actorSystemProvider;
     }
 
+    /**
+     * Sends a user manager command through the node's reply adapter instead of
+     * an ask: the command is wrapped with a correlation id and the reply comes
+     * back to the adapter.
+     */
+    private Mono<UserManagerResponse> requestUsers(Function<ActorRef<UserManagerResponse>, UserManagerCommand> command,
+                                                   Duration timeout) {
+        return Mono.<UserManagerResponse>create(sink -> actorSystemProvider.getUserReplies().tell(new Request<>(
+            (correlationId, replyTo) -> actorSystemProvider.getUserManagerActor().tell(
+                new UserManagerCommand.Correlated(correlationId, command.apply(replyTo))),
+            (response, error) -> {
+                if (error == null) {
+                    sink.success(response);
+                } else {
+                    sink.error(error);
+                }
+            },
+            timeout.toMillis()
+        )))
+        // The reply completes on the actor's thread: build the HTTP response outside it
+        .publishOn(Schedulers.parallel());
+    }
+
     @Post("/register")
     public Mono<HttpResponse<?>> register(@Valid @Body RegisterRequest request) {
-        return Mono.fromCompletionStage(
-            AskPattern.ask(
-                actorSystemProvider.getUserManagerActor(),
-                (akka.actor.typed.ActorRef<UserManagerResponse> replyTo) -> 
-                    new RegisterUser(request.username, request.password, replyTo),
-                Duration.ofSeconds(3),
-                actorSystemProvider.getScheduler()
-            )
+        return requestUsers(
+            replyTo -> new RegisterUser(request.username, request.password, replyTo),
+            Duration.ofSeconds(3)
         ).map(response -> {
             if (response instanceof UserRegistered registered) {
-                // Devolver el objeto AppUser completo
+                // Return the full AppUser object
                 return HttpResponse.ok(registered.user());
             } else if (response instanceof UserManagerResponse.ErrorResponse error) {
                 return HttpResponse.badRequest(new ErrorDTO(error.message()));
@@ -56,17 +81,12 @@ public class AuthController {
 
     @Post("/login")
     public Mono<HttpResponse<?>> login(@Valid @Body LoginRequest request) {
-        return Mono.fromCompletionStage(
-            AskPattern.ask(
-                actorSystemProvider.getUserManagerActor(),
-                (akka.actor.typed.ActorRef<UserManagerResponse> replyTo) -> 
-                    new LoginUser(request.username, request.password, replyTo),
-                Duration.ofSeconds(3),
-                actorSystemProvider.getScheduler()
-            )
+        return requestUsers(
+            replyTo -> new LoginUser(request.username, request.password, replyTo),
+            Duration.ofSeconds(3)
         ).map(response -> {
             if (response instanceof UserLoggedIn loggedIn) {
-                // Devolver el objeto AppUser completo que espera el frontend
+                // Return the full AppUser object the frontend expects
                 return HttpResponse.ok(loggedIn.user());
             } else if (response instanceof UserManagerResponse.ErrorResponse error) {
                 return HttpResponse.unauthorized().body(new ErrorDTO(error.message()));
@@ -77,14 +97,9 @@ public class AuthController {
 
     @Get("/contacts/{userId}")
     public Mono<HttpResponse<?>> getContacts(@PathVariable String userId) {
-        return Mono.fromCompletionStage(
-            AskPattern.ask(
-                actorSystemProvider.getUserManagerActor(),
-                (akka.actor.typed.ActorRef<UserManagerResponse> replyTo) -> 
-                    new GetContacts(userId, replyTo),
-                Duration.ofSeconds(2),
-                actorSystemProvider.getScheduler()
-            )
+        return requestUsers(
+            replyTo -> new GetContacts(userId, replyTo),
+            Duration.ofSeconds(2)
         ).map(response -> {
             if (response instanceof ContactList contactList) {
                 return HttpResponse.ok(contactList.contacts());
@@ -97,14 +112,9 @@ public class AuthController {
 
     @Get("/users")
     public Mono<HttpResponse<List<AppUser>>> getAllUsers() {
-        return Mono.fromCompletionStage(
-            AskPattern.ask(
-                actorSystemProvider.getUserManagerActor(),
-                (akka.actor.typed.ActorRef<UserManagerResponse> replyTo) -> 
-                    new GetAllUsers(replyTo),
-                Duration.ofSeconds(2),
-                actorSystemProvider.getScheduler()
-            )
+        return requestUsers(
+            replyTo -> new GetAllUsers(replyTo),
+            Duration.ofSeconds(2)
         ).map(response -> {
             if (response instanceof AllUsers allUsers) {
                 return HttpResponse.ok(allUsers.users());
@@ -115,14 +125,9 @@ public class AuthController {
 
     @Post("/contacts/add")
     public Mono<HttpResponse<?>> addContact(@Valid @Body AddContactRequest request) {
-        return Mono.fromCompletionStage(
-            AskPattern.ask(
-                actorSystemProvider.getUserManagerActor(),
-                (akka.actor.typed.ActorRef<UserManagerResponse> replyTo) -> 
-                    new AddContact(request.userId, request.contactId, replyTo),
-                Duration.ofSeconds(2),
-                actorSystemProvider.getScheduler()
-            )
+        return requestUsers(
+            replyTo -> new AddContact(request.userId, request.contactId, replyTo),
+            Duration.ofSeconds(2)
         ).map(response -> {
             if (response instanceof ContactAdded) {
                 return HttpResponse.ok(new MessageDTO("Contact added successfully"));
@@ -139,55 +144,42 @@ public class AuthController {
             AskPattern.ask(
                 actorSystemProvider.getConversationManagerActor(),
                 (akka.actor.typed.ActorRef<ConversationManagerResponse> replyTo) -> 
-                    new GetUserConversations(userId, replyTo),
+                    new GetInbox(userId, replyTo),
                 Duration.ofSeconds(5),
                 actorSystemProvider.getScheduler()
             )
         ).flatMap(response -> {
-            if (response instanceof ConversationsList found) {
+            if (response instanceof Inbox inbox) {
                 // Get user's contacts to identify non-contacts
-                return Mono.fromCompletionStage(
-                    AskPattern.ask(
-                        actorSystemProvider.getUserManagerActor(),
-                        (akka.actor.typed.ActorRef<UserManagerResponse> replyTo) -> 
-                            new GetContacts(userId, replyTo),
-                        Duration.ofSeconds(2),
-                        actorSystemProvider.getScheduler()
-                    )
+                return requestUsers(
+                    replyTo -> new GetContacts(userId, replyTo),
+                    Duration.ofSeconds(2)
                 ).map(contactsResponse -> {
                     if (contactsResponse instanceof ContactList contactsFound) {
-                        List<String> contactIds = contactsFound.contacts().stream()
+                        Set<String> contactIds = contactsFound.contacts().stream()
                             .map(Contact::userId)
-                            .collect(Collectors.toList());
+                            .collect(Collectors.toSet());
                         
-                        // Separate conversations into contacts and non-contacts
-                        List<ConversationInfo> conversations = found.conversations().stream()
-                            .map(conv -> {
-                                String otherUserId = conv.participants().stream()
-                                    .filter(id -> !id.equals(userId))
-                                    .findFirst()
-                                    .orElse("unknown");
-                                boolean isContact = contactIds.contains(otherUserId);
-                                int unreadCount = (int) conv.messages().stream()
-                                    .filter(msg -> !msg.senderId().equals(userId) && !msg.read())
-                                    .count();
-                                return new ConversationInfo(
-                                    conv.conversationId(),
-                                    otherUserId,
-                                    isContact,
-                                    unreadCount,
-                                    conv.messages().isEmpty() ? null : 
-                                        conv.messages().get(conv.messages().size() - 1).content()
-                                );
-                            })
+                        // Unread count and last message come precomputed in the inbox projection
+                        List<ConversationInfo> conversations = inbox.entries().stream()
+                            .map(entry -> new ConversationInfo(
+                                entry.conversationId(),
+                                entry.otherUserId(),
+                                contactIds.contains(entry.otherUserId()),
+                                entry.unreadCount(),
+                                entry.lastMessage(),
+                                entry.lastMessageAt()
+                            ))
                             .collect(Collectors.toList());
                         
                         return HttpResponse.ok(conversations);
                     }
                     return HttpResponse.ok(List.of());
                 });
+            } else if (response instanceof ConversationManagerResponse.ErrorResponse error) {
+                return Mono.just(HttpResponse.serverError(new ErrorDTO(error.message())));
             }
-            return Mono.just(HttpResponse.ok(List.of()));
+            return Mono.just(HttpResponse.serverError(new ErrorDTO("Unknown error")));
         });
     }
 
@@ -232,6 +224,7 @@ public class AuthController {
         String otherUserId,
         boolean isContact,
         int unreadCount,
-        String lastMessage
+        String lastMessage,
+        Instant lastMessageAt
     ) {}
 }
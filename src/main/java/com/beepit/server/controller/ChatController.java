@@ -1,14 +1,33 @@
 package com.beepit.server.controller;
 
+import com.beepit.server.websocket.DeliveryMetrics;
+import com.beepit.server.websocket.HistoryCache;
+import com.beepit.server.websocket.OutboundQueue;
+import com.beepit.server.websocket.SessionRegistry;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import reactor.core.publisher.Mono;
 
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
 @Controller("/api")
 public class ChatController {
     
+    private static final int SLOW_SESSIONS_LIMIT = 100;
+    
+    private final DeliveryMetrics deliveryMetrics;
+    private final SessionRegistry sessionRegistry;
+    private final HistoryCache historyCache;
+    
+    public ChatController(DeliveryMetrics deliveryMetrics, SessionRegistry sessionRegistry, HistoryCache historyCache) {
+        this.deliveryMetrics = deliveryMetrics;
+        this.sessionRegistry = sessionRegistry;
+        this.historyCache = historyCache;
+    }
+    
     @Get("/health")
     public Mono<Map<String, String>> health() {
         return Mono.just(Map.of(
@@ -17,4 +36,28 @@ public class ChatController {
             "version", "1.0.0"
         ));
     }
+    
+    /** WebSocket frames delivered, failed and dropped (session closed). */
+    @Get("/metrics/delivery")
+    public Mono<Map<String, Long>> deliveryMetrics() {
+        return Mono.just(deliveryMetrics.snapshot());
+    }
+    
+    /** Conversations with their recent history cached, its estimated size and hits. */
+    @Get("/metrics/history-cache")
+    public Mono<Map<String, Long>> historyCacheMetrics() {
+        return Mono.just(historyCache.stats());
+    }
+    
+    /** Sessions with queued or dropped frames, the furthest behind first. */
+    @Get("/metrics/sessions")
+    public Mono<List<Map<String, Object>>> slowSessions() {
+        return Mono.just(sessionRegistry.allSessions().stream()
+            .map(LiveSession::outbound)
+            .filter(queue -> queue.depth() > 0 || queue.dropped() > 0)
+            .sorted(Comparator.comparingInt(OutboundQueue::depth).reversed())
+            .limit(SLOW_SESSIONS_LIMIT)
+            .map(OutboundQueue::stats)
+            .toList());
+    }
 }
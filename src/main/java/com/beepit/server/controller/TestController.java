@@ -17,7 +17,7 @@ public class TestController {
         String protocol = request != null && request.isSecure() ? "https" : "http";
         String wsProtocol = request != null && request.isSecure() ? "wss" : "ws";
         
-        // Forzar localhost para evitar problemas con IPv6
+        // Force localhost to avoid IPv6 issues
         String host = "localhost";
         int port = request != null ? request.getServerAddress().getPort() : 8080;
         
@@ -2,18 +2,41 @@ package com.beepit.server.domain.command;
 
 import akka.actor.typed.ActorRef;
 import com.beepit.server.domain.model.Message;
+import com.beepit.server.domain.model.RoomState;
 import com.beepit.server.domain.model.UserSession;
 import com.beepit.server.domain.response.ChatRoomResponse;
 import com.beepit.server.domain.response.ParticipantsResponse;
 
-public sealed interface ChatRoomCommand 
+public sealed interface ChatRoomCommand
     permits ChatRoomCommand.JoinRoom,
             ChatRoomCommand.LeaveRoom,
             ChatRoomCommand.SendMessage,
-            ChatRoomCommand.GetRoomParticipants {
-    
+            ChatRoomCommand.GetRoomParticipants,
+            ChatRoomCommand.GetRoomHistory,
+            ChatRoomCommand.RoomIdle,
+            ChatRoomCommand.Passivate,
+            ChatRoomCommand.StopRoom,
+            ChatRoomCommand.RoomStopped {
+
+    /** Adds the session to the room, creating the room if needed. */
     public record JoinRoom(UserSession session, String roomId, ActorRef<ChatRoomResponse> replyTo) implements ChatRoomCommand {}
-    public record LeaveRoom(String userId, String roomId) implements ChatRoomCommand {}
+    public record LeaveRoom(String sessionId, String roomId) implements ChatRoomCommand {}
     public record SendMessage(Message message, ActorRef<ChatRoomResponse> replyTo) implements ChatRoomCommand {}
     public record GetRoomParticipants(String roomId, ActorRef<ParticipantsResponse> replyTo) implements ChatRoomCommand {}
+    /** The latest {@code limit} messages of the room, oldest first. */
+    public record GetRoomHistory(String roomId, int limit, ActorRef<ChatRoomResponse> replyTo) implements ChatRoomCommand {}
+
+    // Internal to ChatRoomActor and its room entities
+
+    /** A room entity received nothing for the idle timeout. */
+    public record RoomIdle() implements ChatRoomCommand {}
+    /** An idle, empty room entity asks its parent to be stopped. */
+    public record Passivate(String roomId, ActorRef<ChatRoomCommand> entity) implements ChatRoomCommand {}
+    /** Sent by the parent after everything it had routed to the entity. */
+    public record StopRoom() implements ChatRoomCommand {}
+    /**
+     * The entity's last message: it hands its state back to the parent, which
+     * starts a new entity with it if the room got traffic meanwhile.
+     */
+    public record RoomStopped(String roomId, RoomState state) implements ChatRoomCommand {}
 }
@@ -3,16 +3,83 @@ package com.beepit.server.domain.command;
 import akka.actor.typed.ActorRef;
 import com.beepit.server.domain.response.ConversationManagerResponse;
 
+import java.util.List;
+
 public sealed interface ConversationManagerCommand 
     permits ConversationManagerCommand.SendPrivateMessage,
+            ConversationManagerCommand.SendPrivateMessageBatch,
             ConversationManagerCommand.GetConversation,
+            ConversationManagerCommand.GetConversationPage,
+            ConversationManagerCommand.GetMessagesSince,
             ConversationManagerCommand.GetUserConversations,
+            ConversationManagerCommand.GetInbox,
             ConversationManagerCommand.MarkMessageDelivered,
-            ConversationManagerCommand.MarkMessageRead {
+            ConversationManagerCommand.MarkMessageRead,
+            ConversationManagerCommand.MarkDeliveredUpTo,
+            ConversationManagerCommand.MarkReadUpTo,
+            ConversationManagerCommand.AdvanceDeliveredUpTo,
+            ConversationManagerCommand.GetPendingDeliveries,
+            ConversationManagerCommand.PassivateIdle {
     
-    public record SendPrivateMessage(String senderId, String recipientId, String content, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    /**
+     * @param correlationId when not 0, the reply is wrapped in a
+     *                      {@link ConversationManagerResponse.Correlated} carrying it
+     */
+    public record SendPrivateMessage(String senderId, String recipientId, String content, long correlationId, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {
+        public SendPrivateMessage(String senderId, String recipientId, String content, ActorRef<ConversationManagerResponse> replyTo) {
+            this(senderId, recipientId, content, 0, replyTo);
+        }
+
+        public void reply(ConversationManagerResponse response) {
+            replyTo.tell(correlationId == 0 ? response : new ConversationManagerResponse.Correlated(correlationId, response));
+        }
+    }
+    /**
+     * Sends applied and made durable together; each one is still acknowledged
+     * to its own {@code replyTo}, in order.
+     */
+    public record SendPrivateMessageBatch(List<SendPrivateMessage> messages) implements ConversationManagerCommand {}
     public record GetConversation(String userId1, String userId2, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    /**
+     * Page of at most {@code limit} messages older than {@code beforeCursor}
+     * (exclusive); a null cursor returns the most recent page.
+     */
+    public record GetConversationPage(String conversationId, Long beforeCursor, int limit, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    /**
+     * Messages with {@code seq} above {@code afterSeq}, for a client resuming
+     * from the last message it saw (-1 if it has none). When more than
+     * {@code limit} are missing the answer is a resync instead of a delta.
+     */
+    public record GetMessagesSince(String conversationId, long afterSeq, int limit, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
     public record GetUserConversations(String userId, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    public record GetInbox(String userId, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
     public record MarkMessageDelivered(String messageId, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
     public record MarkMessageRead(String messageId, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    /**
+     * Moves the user's watermark so every message up to {@code cursor} (its
+     * {@code seq}, inclusive) addressed to them counts as delivered / read.
+     */
+    public record MarkDeliveredUpTo(String conversationId, String userId, long cursor, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    public record MarkReadUpTo(String conversationId, String userId, long cursor, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    /**
+     * {@link MarkDeliveredUpTo} for messages the server has just pushed to a
+     * session of the user: the move is journaled but not committed on its own,
+     * the shard's next commit makes it durable.
+     *
+     * @param correlationId when not 0, the reply is wrapped in a
+     *                      {@link ConversationManagerResponse.Correlated} carrying it
+     */
+    public record AdvanceDeliveredUpTo(String conversationId, String userId, long cursor, long correlationId, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {
+        public void reply(ConversationManagerResponse response) {
+            replyTo.tell(correlationId == 0 ? response : new ConversationManagerResponse.Correlated(correlationId, response));
+        }
+    }
+    /**
+     * Up to {@code limit} messages addressed to the user and not yet delivered,
+     * from every shard. Nothing is marked: the caller moves the delivered
+     * watermarks once the messages have reached the client.
+     */
+    public record GetPendingDeliveries(String userId, int limit, ActorRef<ConversationManagerResponse> replyTo) implements ConversationManagerCommand {}
+    /** Sent by a shard to itself to passivate the conversations that went idle. */
+    public record PassivateIdle() implements ConversationManagerCommand {}
 }
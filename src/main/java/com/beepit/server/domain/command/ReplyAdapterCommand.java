@@ -0,0 +1,30 @@
+package com.beepit.server.domain.command;
+
+import akka.actor.typed.ActorRef;
+
+import java.util.function.BiConsumer;
+
+public sealed interface ReplyAdapterCommand<R>
+    permits ReplyAdapterCommand.Request,
+            ReplyAdapterCommand.Reply,
+            ReplyAdapterCommand.Tick {
+
+    /**
+     * Sends a request through {@code dispatch} and completes {@code callback}
+     * with its reply, or with a {@link java.util.concurrent.TimeoutException}.
+     */
+    public record Request<R>(Dispatch<R> dispatch, BiConsumer<R, Throwable> callback, long timeoutMillis) implements ReplyAdapterCommand<R> {}
+    /** A reply from a target, unwrapped from its correlated envelope (0 if it had none). */
+    public record Reply<R>(long correlationId, R response) implements ReplyAdapterCommand<R> {}
+    /** Sent by the adapter's own timer to advance the timeout wheel. */
+    public record Tick<R>() implements ReplyAdapterCommand<R> {}
+
+    /**
+     * Tells the target a command carrying {@code correlationId}, with
+     * {@code replyTo} as the reply address.
+     */
+    @FunctionalInterface
+    public interface Dispatch<R> {
+        void send(long correlationId, ActorRef<R> replyTo);
+    }
+}
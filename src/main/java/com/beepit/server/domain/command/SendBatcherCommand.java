@@ -0,0 +1,12 @@
+package com.beepit.server.domain.command;
+
+import com.beepit.server.domain.command.ConversationManagerCommand.SendPrivateMessage;
+
+public sealed interface SendBatcherCommand
+    permits SendBatcherCommand.Enqueue,
+            SendBatcherCommand.FlushBatch {
+
+    public record Enqueue(SendPrivateMessage message) implements SendBatcherCommand {}
+    /** Sent by the batcher's own timer when the batching window closes. */
+    public record FlushBatch() implements SendBatcherCommand {}
+}
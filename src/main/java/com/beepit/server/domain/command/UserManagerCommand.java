@@ -10,7 +10,8 @@ public sealed interface UserManagerCommand
             UserManagerCommand.GetAllUsers,
             UserManagerCommand.AddContact,
             UserManagerCommand.GetContacts,
-            UserManagerCommand.SetUserOnline {
+            UserManagerCommand.SetUserOnline,
+            UserManagerCommand.Correlated {
     
     public record RegisterUser(String username, String password, ActorRef<UserManagerResponse> replyTo) implements UserManagerCommand {}
     public record LoginUser(String username, String password, ActorRef<UserManagerResponse> replyTo) implements UserManagerCommand {}
@@ -19,4 +20,9 @@ public sealed interface UserManagerCommand
     public record AddContact(String userId, String contactId, ActorRef<UserManagerResponse> replyTo) implements UserManagerCommand {}
     public record GetContacts(String userId, ActorRef<UserManagerResponse> replyTo) implements UserManagerCommand {}
     public record SetUserOnline(String userId, boolean online) implements UserManagerCommand {}
+    /**
+     * Handles {@code command} and wraps its reply in a
+     * {@link UserManagerResponse.Correlated} carrying {@code correlationId}.
+     */
+    public record Correlated(long correlationId, UserManagerCommand command) implements UserManagerCommand {}
 }
@@ -16,7 +16,7 @@ public record AppUser(
 ) {
     public AppUser(String username, String password) {
         this(
-            java.util.UUID.randomUUID().toString(),
+            Snowflake.nextString(),
             username,
             password,
             new ArrayList<>(),
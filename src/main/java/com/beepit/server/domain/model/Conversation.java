@@ -15,4 +15,13 @@ public record Conversation(
     public Conversation(String conversationId, List<String> participants) {
         this(conversationId, participants, List.of(), Instant.now(), Instant.now());
     }
+
+    /**
+     * Conversation id shared by both participants, independent of who starts it.
+     */
+    public static String idFor(String userId1, String userId2) {
+        return userId1.compareTo(userId2) <= 0
+            ? userId1 + "_" + userId2
+            : userId2 + "_" + userId1;
+    }
 }
@@ -0,0 +1,199 @@
+package com.beepit.server.domain.model;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Mutable state of a 1-a-1 conversation, owned by the conversation actor.
+ * {@link Conversation} is the read-only snapshot handed out to callers.
+ *
+ * Delivery and read state is kept as per-participant watermarks instead of
+ * per-message flags: marking any number of messages is O(1), and the
+ * {@code delivered}/{@code read} flags are derived when a snapshot is read.
+ */
+public class ConversationState {
+    private final String conversationId;
+    private final List<String> participants;
+    // Flagged log entries = messages sent by the first participant
+    private final MessageLog messages;
+    private final Map<String, Receipts> receipts = new HashMap<>();
+    private final Instant createdAt;
+    private Instant lastMessageAt;
+
+    public ConversationState(String conversationId, List<String> participants) {
+        this(conversationId, participants, Instant.now());
+    }
+
+    public ConversationState(String conversationId, List<String> participants, Instant createdAt) {
+        this(conversationId, participants, createdAt, null);
+    }
+
+    /**
+     * @param coldTier where old message segments can be demoted; null keeps
+     *                 the whole conversation on the heap
+     */
+    public ConversationState(String conversationId, List<String> participants, Instant createdAt,
+                             MessageLog.ColdTier coldTier) {
+        this.conversationId = conversationId;
+        this.messages = new MessageLog(MessageLog.DEFAULT_SEGMENT_SIZE, coldTier);
+        this.participants = List.copyOf(participants);
+        this.createdAt = createdAt;
+        this.lastMessageAt = createdAt;
+    }
+
+    public long nextSeq() {
+        return messages.size();
+    }
+
+    public int append(PrivateMessage message) {
+        lastMessageAt = message.timestamp();
+        return messages.append(message, message.senderId().equals(participants.get(0)));
+    }
+
+    /**
+     * Marks every message up to {@code seq} (inclusive) addressed to the user
+     * as delivered. Returns false if the watermark did not move.
+     */
+    public boolean markDelivered(String userId, long seq) {
+        Receipts current = getReceipts(userId);
+        long upTo = Math.min(seq, messages.size() - 1) + 1;
+        if (upTo <= current.deliveredUpTo()) {
+            return false;
+        }
+        receipts.put(userId, new Receipts(upTo, current.readUpTo()));
+        return true;
+    }
+
+    /**
+     * Marks every message up to {@code seq} (inclusive) addressed to the user
+     * as read, which implies delivered. Returns false if the watermark did not move.
+     */
+    public boolean markRead(String userId, long seq) {
+        Receipts current = getReceipts(userId);
+        long upTo = Math.min(seq, messages.size() - 1) + 1;
+        if (upTo <= current.readUpTo()) {
+            return false;
+        }
+        receipts.put(userId, new Receipts(Math.max(upTo, current.deliveredUpTo()), upTo));
+        return true;
+    }
+
+    public Receipts getReceipts(String userId) {
+        return receipts.getOrDefault(userId, Receipts.NONE);
+    }
+
+    /** Watermarks of every participant that has any. */
+    public Map<String, Receipts> getAllReceipts() {
+        return Map.copyOf(receipts);
+    }
+
+    /**
+     * Sets the watermarks of a participant as they were persisted, used when
+     * rebuilding the state after a restart.
+     */
+    public void restoreReceipts(String userId, Receipts restored) {
+        receipts.put(userId, restored);
+    }
+
+    /** Messages addressed to the user above its delivered watermark. */
+    public int undeliveredCount(String userId) {
+        return incomingBefore(userId, messages.size())
+            - incomingBefore(userId, (int) getReceipts(userId).deliveredUpTo());
+    }
+
+    /** Messages addressed to the user that are above their read watermark. */
+    public int unreadCount(String userId) {
+        return incomingBefore(userId, messages.size())
+            - incomingBefore(userId, (int) getReceipts(userId).readUpTo());
+    }
+
+    private int incomingBefore(String userId, int count) {
+        int sentByFirst = messages.flaggedBefore(count);
+        if (!participants.contains(userId)) {
+            return 0;
+        }
+        return userId.equals(participants.get(0)) ? count - sentByFirst : sentByFirst;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public List<String> getParticipants() {
+        return participants;
+    }
+
+    public MessageLog getMessages() {
+        return messages;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    /**
+     * Read-only view of the messages in positions {@code [from, to)} with
+     * delivery flags as of now.
+     */
+    public List<PrivateMessage> range(int from, int to) {
+        List<PrivateMessage> range = messages.range(from, to);
+        return receipts.isEmpty() ? range : new ReceiptView(range, Map.copyOf(receipts));
+    }
+
+    public Conversation snapshot() {
+        return new Conversation(conversationId, participants, range(0, messages.size()), createdAt, lastMessageAt);
+    }
+
+    /**
+     * Watermarks of one participant: messages with {@code seq} below them are
+     * delivered / read.
+     */
+    public record Receipts(long deliveredUpTo, long readUpTo) {
+        public static final Receipts NONE = new Receipts(0, 0);
+    }
+
+    private static final class ReceiptView extends AbstractList<PrivateMessage> implements RandomAccess {
+
+        private final List<PrivateMessage> messages;
+        private final Map<String, Receipts> receipts;
+
+        private ReceiptView(List<PrivateMessage> messages, Map<String, Receipts> receipts) {
+            this.messages = messages;
+            this.receipts = receipts;
+        }
+
+        @Override
+        public PrivateMessage get(int index) {
+            PrivateMessage message = messages.get(index);
+            Receipts recipient = receipts.getOrDefault(message.recipientId(), Receipts.NONE);
+            boolean delivered = message.seq() < recipient.deliveredUpTo();
+            boolean read = message.seq() < recipient.readUpTo();
+            if (delivered == message.delivered() && read == message.read()) {
+                return message;
+            }
+            return new PrivateMessage(
+                message.messageId(),
+                message.seq(),
+                message.senderId(),
+                message.recipientId(),
+                message.content(),
+                message.timestamp(),
+                delivered,
+                read
+            );
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.beepit.server.domain.model;
+
+import io.micronaut.serde.annotation.Serdeable;
+import java.time.Instant;
+
+/**
+ * One conversation as seen from a user's inbox. Maintained incrementally by
+ * the conversation actor, so listing an inbox never scans messages.
+ */
+@Serdeable
+public record InboxEntry(
+    String conversationId,
+    String otherUserId,
+    int unreadCount,
+    String lastMessage,
+    Instant lastMessageAt
+) {}
@@ -2,7 +2,6 @@ package com.beepit.server.domain.model;
 
 import io.micronaut.serde.annotation.Serdeable;
 import java.time.Instant;
-import java.util.UUID;
 
 @Serdeable
 public record Message(
@@ -15,7 +14,7 @@ public record Message(
 ) {
     public Message(String sender, String content, String roomId) {
         this(
-            UUID.randomUUID().toString(),
+            Snowflake.nextString(),
             sender,
             content,
             Instant.now().toEpochMilli(),
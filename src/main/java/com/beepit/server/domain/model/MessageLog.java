@@ -0,0 +1,330 @@
+package com.beepit.server.domain.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only message log split into fixed-size segments.
+ *
+ * Appending never copies previous messages: when the tail segment is full a new
+ * one is allocated. Snapshots are read-only views over the segments that existed
+ * when they were taken, so they stay valid while the log keeps growing.
+ *
+ * Each entry can be flagged on append; the log keeps a running count of flagged
+ * entries so "how many flagged entries among the first n" is answered in O(1).
+ *
+ * With a {@link ColdTier}, the oldest full segments can be demoted: their
+ * messages leave the heap and are loaded back from the tier when read. Demotion
+ * always takes the oldest hot segment, so cold segments are a prefix of the log.
+ * {@link #passivate()} also moves the partial tail segment out, leaving no
+ * message on the heap; it has to be {@link #reactivateTail() reactivated}
+ * before the next append. The cold copy of a tail is replaced whenever the
+ * tail is passivated again with more messages, so it is stored with
+ * {@link ColdTier#demoteTail} and released once it is stale. Views never hold
+ * on to a tail handle: a view over a passivated tail loads it when it is
+ * created.
+ *
+ * The log is owned by a single actor. Snapshots are safe to read from other
+ * threads once they have been handed over through a message.
+ */
+public class MessageLog {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 256;
+
+    private static final long NO_HANDLE = -1;
+
+    private final int segmentSize;
+    private final ColdTier coldTier;
+    // Segment arrays are copied on demotion: views already handed out do not change
+    private PrivateMessage[][] segments;
+    private long[] coldHandles;
+    private int coldSegments;
+    // The (partial) tail segment is in the cold tier too: passivated log
+    private boolean tailCold;
+    // Cold copy of the tail segment and how many messages it holds
+    private long tailHandle = NO_HANDLE;
+    private int tailHandleSize;
+    // Running count of flagged entries, aligned with the segments
+    private int[][] flaggedCounts;
+    private int segmentCount;
+    private int size;
+
+    public MessageLog() {
+        this(DEFAULT_SEGMENT_SIZE, null);
+    }
+
+    public MessageLog(int segmentSize) {
+        this(segmentSize, null);
+    }
+
+    /**
+     * @param coldTier where demoted segments go; null keeps every message on the heap
+     */
+    public MessageLog(int segmentSize, ColdTier coldTier) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.coldTier = coldTier;
+        this.segments = new PrivateMessage[4][];
+        this.coldHandles = new long[4];
+        this.flaggedCounts = new int[4][];
+    }
+
+    public int append(PrivateMessage message) {
+        return append(message, false);
+    }
+
+    /**
+     * Appends a message and returns its position in the log.
+     */
+    public int append(PrivateMessage message, boolean flagged) {
+        if (tailCold) {
+            throw new IllegalStateException("The tail segment is passivated: reactivate it before appending");
+        }
+        int previousCount = flaggedBefore(size);
+        int offset = size % segmentSize;
+        if (offset == 0) {
+            if (tailHandle != NO_HANDLE) {
+                // The cold copy belonged to the previous segment, which is now full
+                coldTier.release(tailHandle);
+                tailHandle = NO_HANDLE;
+                tailHandleSize = 0;
+            }
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+                coldHandles = Arrays.copyOf(coldHandles, segmentCount * 2);
+                flaggedCounts = Arrays.copyOf(flaggedCounts, segmentCount * 2);
+            }
+            flaggedCounts[segmentCount] = new int[segmentSize];
+            segments[segmentCount++] = new PrivateMessage[segmentSize];
+        }
+        segments[segmentCount - 1][offset] = message;
+        flaggedCounts[segmentCount - 1][offset] = flagged ? previousCount + 1 : previousCount;
+        return size++;
+    }
+
+    /**
+     * Number of full segments that are still on the heap and can be demoted.
+     * The oldest of them is {@link #coldSegmentCount()}.
+     */
+    public int demotableSegments() {
+        return coldTier == null ? 0 : size / segmentSize - coldSegments;
+    }
+
+    public int coldSegmentCount() {
+        return coldSegments;
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Moves the oldest hot segment to the cold tier and returns the estimated
+     * heap bytes released.
+     */
+    public long demoteOldestSegment() {
+        if (demotableSegments() <= 0) {
+            throw new IllegalStateException("No full hot segment to demote");
+        }
+        PrivateMessage[] segment = segments[coldSegments];
+        long handle = coldTier.demote(Arrays.asList(segment));
+
+        segments = segments.clone();
+        coldHandles = coldHandles.clone();
+        segments[coldSegments] = null;
+        coldHandles[coldSegments] = handle;
+        coldSegments++;
+
+        long released = 0;
+        for (PrivateMessage message : segment) {
+            released += estimateSize(message);
+        }
+        return released;
+    }
+
+    /**
+     * Demotes every hot segment, the partial tail included, and returns the
+     * estimated heap bytes released. Reads keep working through the cold tier.
+     * The cold copy of the tail is reused if nothing was appended since the
+     * last passivation, and released and rewritten otherwise.
+     */
+    public long passivate() {
+        if (coldTier == null) {
+            throw new IllegalStateException("No cold tier to passivate to");
+        }
+        long released = 0;
+        while (demotableSegments() > 0) {
+            released += demoteOldestSegment();
+        }
+        int tailSize = size % segmentSize;
+        if (tailSize > 0 && !tailCold) {
+            PrivateMessage[] tail = segments[segmentCount - 1];
+            if (tailHandleSize != tailSize) {
+                if (tailHandle != NO_HANDLE) {
+                    coldTier.release(tailHandle);
+                }
+                tailHandle = coldTier.demoteTail(Arrays.asList(tail).subList(0, tailSize));
+                tailHandleSize = tailSize;
+            }
+
+            segments = segments.clone();
+            coldHandles = coldHandles.clone();
+            segments[segmentCount - 1] = null;
+            coldHandles[segmentCount - 1] = tailHandle;
+            tailCold = true;
+
+            for (int i = 0; i < tailSize; i++) {
+                released += estimateSize(tail[i]);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Loads a passivated tail segment back onto the heap so the log can be
+     * appended to, and returns its estimated heap bytes (0 if it was hot).
+     * The cold copy is kept until the tail changes.
+     */
+    public long reactivateTail() {
+        if (!tailCold) {
+            return 0;
+        }
+        int tailSize = size % segmentSize;
+        PrivateMessage[] tail = Arrays.copyOf(coldTier.load(tailHandle), segmentSize);
+        segments = segments.clone();
+        segments[segmentCount - 1] = tail;
+        tailCold = false;
+
+        long loaded = 0;
+        for (int i = 0; i < tailSize; i++) {
+            loaded += estimateSize(tail[i]);
+        }
+        return loaded;
+    }
+
+    /** Whether any message is still held on the heap. */
+    public boolean hasHotMessages() {
+        return !tailCold && size > coldSegments * segmentSize;
+    }
+
+    /** Rough heap footprint of a message: object headers, fields and strings. */
+    public static long estimateSize(PrivateMessage message) {
+        return 160L
+            + message.messageId().length()
+            + message.senderId().length()
+            + message.recipientId().length()
+            + 2L * message.content().length();
+    }
+
+    /**
+     * Number of flagged entries among the first {@code count} positions.
+     */
+    public int flaggedBefore(int count) {
+        if (count <= 0 || size == 0) {
+            return 0;
+        }
+        int last = Math.min(count, size) - 1;
+        return flaggedCounts[last / segmentSize][last % segmentSize];
+    }
+
+    public PrivateMessage get(int index) {
+        checkIndex(index, size);
+        return segment(segments, coldHandles, coldTier, index / segmentSize)[index % segmentSize];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public List<PrivateMessage> snapshot() {
+        return range(0, size);
+    }
+
+    /**
+     * Read-only view of the messages in positions {@code [from, to)}.
+     */
+    public List<PrivateMessage> range(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of size " + size);
+        }
+        return from == to ? List.of() : new View(this, from, to - from);
+    }
+
+    private static PrivateMessage[] segment(PrivateMessage[][] segments, long[] coldHandles,
+                                            ColdTier coldTier, int index) {
+        PrivateMessage[] segment = segments[index];
+        return segment != null ? segment : coldTier.load(coldHandles[index]);
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * Storage for demoted segments. Loads may come from any thread holding a
+     * view, so implementations must be thread-safe. Tail blocks are only
+     * stored, loaded and released by the owner of the log.
+     */
+    public interface ColdTier {
+
+        /** Stores a full segment and returns the handle to load it back. */
+        long demote(List<PrivateMessage> segment);
+
+        /** Stores a partial tail segment that will be {@link #release released} once replaced. */
+        long demoteTail(List<PrivateMessage> segment);
+
+        PrivateMessage[] load(long handle);
+
+        /** Frees a tail block; its handle is not loaded again. */
+        void release(long handle);
+    }
+
+    private static final class View extends AbstractList<PrivateMessage> implements RandomAccess {
+
+        private final PrivateMessage[][] segments;
+        private final long[] coldHandles;
+        private final ColdTier coldTier;
+        private final int from;
+        private final int size;
+        private final int segmentSize;
+
+        private View(MessageLog log, int from, int size) {
+            int last = (from + size - 1) / log.segmentSize;
+            if (log.tailCold && last == log.segmentCount - 1) {
+                // The tail handle is released once the tail changes: keep the loaded messages instead
+                PrivateMessage[][] withTail = log.segments.clone();
+                withTail[last] = log.coldTier.load(log.tailHandle);
+                this.segments = withTail;
+            } else {
+                this.segments = log.segments;
+            }
+            this.coldHandles = log.coldHandles;
+            this.coldTier = log.coldTier;
+            this.from = from;
+            this.size = size;
+            this.segmentSize = log.segmentSize;
+        }
+
+        @Override
+        public PrivateMessage get(int index) {
+            checkIndex(index, size);
+            int position = from + index;
+            return segment(segments, coldHandles, coldTier, position / segmentSize)[position % segmentSize];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.time.Instant;
 @Serdeable
 public record PrivateMessage(
     String messageId,
+    long seq,
     String senderId,
     String recipientId,
     String content,
@@ -13,9 +14,15 @@ public record PrivateMessage(
     boolean delivered,
     boolean read
 ) {
-    public PrivateMessage(String senderId, String recipientId, String content) {
+    /**
+     * Creates a message with a new time-ordered {@link Snowflake} id.
+     *
+     * @param seq position of the message inside its conversation, used as pagination cursor
+     */
+    public PrivateMessage(long seq, String senderId, String recipientId, String content) {
         this(
-            java.util.UUID.randomUUID().toString(),
+            Snowflake.nextString(),
+            seq,
             senderId,
             recipientId,
             content,
@@ -1,17 +1,85 @@
 package com.beepit.server.domain.model;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * State of one group room, owned by its room entity (not thread-safe): the
+ * sessions in it and its latest messages in a ring buffer, so a busy room
+ * holds at most {@code historySize} messages however long it lives.
+ *
+ * Participants are keyed by session, so a user with two devices in the room
+ * stays in it until both leave. The list returned by
+ * {@link #getParticipants()} is rebuilt only when someone joins or leaves;
+ * every message of the room shares it.
+ */
 public class RoomState {
-    private final Map<String, UserSession> participants = new ConcurrentHashMap<>();
-    private final List<Message> messageHistory = Collections.synchronizedList(new ArrayList<>());
-    
-    public Map<String, UserSession> getParticipants() {
-        return participants;
-    }
-    
-    public List<Message> getMessageHistory() {
-        return messageHistory;
+    private final Map<String, UserSession> participants = new LinkedHashMap<>();
+    private List<UserSession> participantList = List.of();
+    private final Message[] history;
+    private int next;
+    private int size;
+
+    public RoomState(int historySize) {
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("historySize must be positive");
+        }
+        this.history = new Message[historySize];
+    }
+
+    /** Returns false if the session was already in the room. */
+    public boolean join(UserSession session) {
+        if (participants.put(session.sessionId(), session) != null) {
+            return false;
+        }
+        participantList = List.copyOf(participants.values());
+        return true;
+    }
+
+    /** Returns false if the session was not in the room. */
+    public boolean leave(String sessionId) {
+        if (participants.remove(sessionId) == null) {
+            return false;
+        }
+        participantList = List.copyOf(participants.values());
+        return true;
+    }
+
+    /** Sessions in the room, in join order. Immutable. */
+    public List<UserSession> getParticipants() {
+        return participantList;
+    }
+
+    /** Users in the room, each once. */
+    public Set<String> getParticipantIds() {
+        Set<String> userIds = new LinkedHashSet<>();
+        for (UserSession session : participantList) {
+            userIds.add(session.userId());
+        }
+        return userIds;
+    }
+
+    public boolean isEmpty() {
+        return participants.isEmpty();
+    }
+
+    /** Appends a message, overwriting the oldest one when the buffer is full. */
+    public void append(Message message) {
+        history[next] = message;
+        next = (next + 1) % history.length;
+        size = Math.min(size + 1, history.length);
+    }
+
+    /** The latest {@code limit} messages at most, oldest first. */
+    public List<Message> getMessageHistory(int limit) {
+        int count = Math.min(Math.max(limit, 0), size);
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = count; i > 0; i--) {
+            messages.add(history[Math.floorMod(next - i, history.length)]);
+        }
+        return messages;
+    }
+
+    public int getHistorySize() {
+        return size;
     }
 }
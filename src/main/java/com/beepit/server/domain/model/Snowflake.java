@@ -0,0 +1,117 @@
+package com.beepit.server.domain.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of time-ordered 64-bit ids:
+ * 41 bits of milliseconds since 2025-01-01, 10 bits of node and 12 bits of
+ * sequence within the millisecond.
+ *
+ * Ids never go backwards: if the clock does, or more than 4096 ids are taken
+ * in one millisecond, the generator keeps counting from the last id (borrowing
+ * from the next millisecond) instead of blocking.
+ *
+ * The string form is 13 characters of Crockford base32, fixed width, so
+ * string order is the same as numeric (and time) order.
+ */
+public final class Snowflake {
+
+    public static final long EPOCH = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int STRING_LENGTH = 13;
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DIGITS[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private static final Snowflake DEFAULT = new Snowflake(Integer.getInteger("beepit.node-id", 0));
+
+    private final long node;
+    private final AtomicLong last = new AtomicLong();
+
+    public Snowflake(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE);
+        }
+        this.node = (long) node << SEQUENCE_BITS;
+    }
+
+    /** Next id of this node's generator (node from {@code -Dbeepit.node-id}, 0 by default). */
+    public static String nextString() {
+        return format(DEFAULT.nextId());
+    }
+
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long previousMillis = previous >>> TIMESTAMP_SHIFT;
+            long millis = System.currentTimeMillis() - EPOCH;
+            long next;
+            if (millis > previousMillis) {
+                next = (millis << TIMESTAMP_SHIFT) | node;
+            } else if ((previous & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = previous + 1;
+            } else {
+                next = ((previousMillis + 1) << TIMESTAMP_SHIFT) | node;
+            }
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli((id >>> TIMESTAMP_SHIFT) + EPOCH);
+    }
+
+    public static String format(long id) {
+        char[] chars = new char[STRING_LENGTH];
+        for (int i = STRING_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parses the string form. Throws {@link IllegalArgumentException} if the
+     * value is not a 13-character Crockford base32 id.
+     */
+    public static long parse(String value) {
+        if (!isValid(value)) {
+            throw new IllegalArgumentException("Not a snowflake id: " + value);
+        }
+        long id = 0;
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            id = (id << 5) | DIGITS[value.charAt(i)];
+        }
+        return id;
+    }
+
+    public static boolean isValid(String value) {
+        if (value == null || value.length() != STRING_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            char c = value.charAt(i);
+            // The first character only carries the 4 high bits
+            if (c >= DIGITS.length || DIGITS[c] < 0 || (i == 0 && DIGITS[c] > 15)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,13 +1,27 @@
 package com.beepit.server.domain.response;
 
+import com.beepit.server.domain.model.Message;
+import com.beepit.server.domain.model.UserSession;
+
+import java.util.List;
 import java.util.Set;
 
-public sealed interface ChatRoomResponse 
+public sealed interface ChatRoomResponse
     permits ChatRoomResponse.JoinedRoom,
             ChatRoomResponse.MessageSent,
+            ChatRoomResponse.RoomHistory,
             ChatRoomResponse.ErrorResponse {
-    
-    public record JoinedRoom(String roomId, Set<String> participants) implements ChatRoomResponse {}
-    public record MessageSent(String messageId) implements ChatRoomResponse {}
+
+    /**
+     * @param participants users in the room, the new one included
+     * @param history      latest messages of the room, oldest first
+     */
+    public record JoinedRoom(String roomId, Set<String> participants, List<Message> history) implements ChatRoomResponse {}
+    /**
+     * @param recipients sessions in the room when the message was appended,
+     *                   the sender's included; shared, not copied per message
+     */
+    public record MessageSent(Message message, List<UserSession> recipients) implements ChatRoomResponse {}
+    public record RoomHistory(String roomId, List<Message> messages) implements ChatRoomResponse {}
     public record ErrorResponse(String message) implements ChatRoomResponse {}
 }
@@ -1,6 +1,7 @@
 package com.beepit.server.domain.response;
 
 import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.domain.model.InboxEntry;
 import com.beepit.server.domain.model.PrivateMessage;
 
 import java.util.List;
@@ -8,13 +9,45 @@ import java.util.List;
 public sealed interface ConversationManagerResponse 
     permits ConversationManagerResponse.MessageSent,
             ConversationManagerResponse.ConversationFound,
+            ConversationManagerResponse.ConversationPage,
+            ConversationManagerResponse.MessagesSince,
+            ConversationManagerResponse.ResyncRequired,
             ConversationManagerResponse.ConversationsList,
+            ConversationManagerResponse.Inbox,
             ConversationManagerResponse.MessageUpdated,
-            ConversationManagerResponse.ErrorResponse {
+            ConversationManagerResponse.ReceiptsUpdated,
+            ConversationManagerResponse.PendingDeliveries,
+            ConversationManagerResponse.ErrorResponse,
+            ConversationManagerResponse.Correlated {
     
     public record MessageSent(PrivateMessage message) implements ConversationManagerResponse {}
     public record ConversationFound(Conversation conversation) implements ConversationManagerResponse {}
+    /**
+     * Messages in chronological order. {@code nextCursor} is the cursor for the
+     * next older page, or null when the beginning of the conversation was reached.
+     */
+    public record ConversationPage(String conversationId, List<PrivateMessage> messages, Long nextCursor) implements ConversationManagerResponse {}
+    /**
+     * Messages a resuming client missed, in order. {@code nextSeq} is the seq
+     * the next message of the conversation will get.
+     */
+    public record MessagesSince(String conversationId, List<PrivateMessage> messages, long nextSeq) implements ConversationManagerResponse {}
+    /**
+     * The client's cursor cannot be resumed from: too many messages are missing,
+     * or the cursor is ahead of the conversation (state lost on the server).
+     */
+    public record ResyncRequired(String conversationId, long nextSeq) implements ConversationManagerResponse {}
     public record ConversationsList(List<Conversation> conversations) implements ConversationManagerResponse {}
+    public record Inbox(List<InboxEntry> entries) implements ConversationManagerResponse {}
     public record MessageUpdated(String messageId) implements ConversationManagerResponse {}
+    public record ReceiptsUpdated(String conversationId, String userId, long deliveredUpTo, long readUpTo) implements ConversationManagerResponse {}
+    /**
+     * Messages waiting for the user, grouped by conversation and in order
+     * within each. They are not marked delivered yet. {@code more} is set when
+     * some did not fit.
+     */
+    public record PendingDeliveries(List<PrivateMessage> messages, boolean more) implements ConversationManagerResponse {}
     public record ErrorResponse(String message) implements ConversationManagerResponse {}
+    /** A reply to a request that carried a correlation id. */
+    public record Correlated(long correlationId, ConversationManagerResponse response) implements ConversationManagerResponse, CorrelatedReply<ConversationManagerResponse> {}
 }
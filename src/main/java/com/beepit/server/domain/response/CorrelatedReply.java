@@ -0,0 +1,12 @@
+package com.beepit.server.domain.response;
+
+/**
+ * A reply tagged with the correlation id of the request it answers, so a
+ * single long-lived actor can receive replies for many in-flight requests.
+ */
+public interface CorrelatedReply<R> {
+
+    long correlationId();
+
+    R response();
+}
@@ -12,7 +12,8 @@ public sealed interface UserManagerResponse
             UserManagerResponse.AllUsers,
             UserManagerResponse.ContactAdded,
             UserManagerResponse.ContactList,
-            UserManagerResponse.ErrorResponse {
+            UserManagerResponse.ErrorResponse,
+            UserManagerResponse.Correlated {
     
     public record UserRegistered(AppUser user) implements UserManagerResponse {}
     public record UserLoggedIn(AppUser user) implements UserManagerResponse {}
@@ -21,4 +22,6 @@ public sealed interface UserManagerResponse
     public record ContactAdded(String userId, String contactId) implements UserManagerResponse {}
     public record ContactList(List<Contact> contacts) implements UserManagerResponse {}
     public record ErrorResponse(String message) implements UserManagerResponse {}
+    /** A reply to a {@code UserManagerCommand.Correlated} request. */
+    public record Correlated(long correlationId, UserManagerResponse response) implements UserManagerResponse, CorrelatedReply<UserManagerResponse> {}
 }
@@ -0,0 +1,149 @@
+package com.beepit.server.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Durability of one conversation shard: a {@link Journal} of events plus
+ * periodic {@link SnapshotStore snapshots} that bound recovery time.
+ *
+ * Snapshots are taken on the shard thread (cheap views over the message logs)
+ * and written in the background; once written, the journal segments they
+ * cover are deleted. When persistence is disabled every method is a no-op.
+ */
+public class ConversationJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConversationJournal.class);
+
+    private static final String LAYOUT_FILE = "layout";
+
+    private static final ExecutorService SNAPSHOT_WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Journal journal;
+    private final SnapshotStore snapshots;
+    private final int snapshotEvery;
+    private final AtomicBoolean snapshotInProgress = new AtomicBoolean();
+    private int eventsSinceSnapshot;
+
+    private ConversationJournal(Journal journal, SnapshotStore snapshots, int snapshotEvery) {
+        this.journal = journal;
+        this.snapshots = snapshots;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    public static ConversationJournal disabled() {
+        return new ConversationJournal(null, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Opens the journal of a shard under {@code <directory>/<name>} and
+     * recovers its state: the latest snapshot first, then every event
+     * journaled after it.
+     */
+    public static ConversationJournal open(JournalConfiguration config, String name,
+                                           Consumer<ConversationSnapshot> onSnapshot,
+                                           Consumer<JournalEvent> onEvent) throws IOException {
+        Path directory = config.getDirectory().resolve(name);
+        Files.createDirectories(directory);
+
+        SnapshotStore snapshots = new SnapshotStore(directory);
+        long position = snapshots.loadLatest(onSnapshot);
+        int[] replayed = {0};
+        Journal journal = Journal.open(directory, config, position, event -> {
+            replayed[0]++;
+            onEvent.accept(event);
+        });
+
+        ConversationJournal conversationJournal = new ConversationJournal(journal, snapshots, config.getSnapshotEvery());
+        conversationJournal.eventsSinceSnapshot = replayed[0];
+        return conversationJournal;
+    }
+
+    /**
+     * Records the shard count the journal directory was written with and fails
+     * if it changed: conversations are assigned to shards by hash, so a
+     * different count would recover them into the wrong shard.
+     */
+    public static void checkLayout(JournalConfiguration config, int shardCount) throws IOException {
+        Path layout = config.getDirectory().resolve(LAYOUT_FILE);
+        String expected = "shards=" + shardCount;
+        if (Files.exists(layout)) {
+            String actual = Files.readString(layout, StandardCharsets.UTF_8).trim();
+            if (!actual.equals(expected)) {
+                throw new IllegalStateException("Journal at " + config.getDirectory()
+                    + " was written with " + actual + ", configured " + expected);
+            }
+        } else {
+            Files.createDirectories(config.getDirectory());
+            Files.writeString(layout, expected, StandardCharsets.UTF_8);
+        }
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    public void append(JournalEvent event) {
+        if (journal != null) {
+            journal.append(event);
+            eventsSinceSnapshot++;
+        }
+    }
+
+    /** Makes the events appended so far durable under the group policy. */
+    public void commit() {
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    public boolean isSnapshotDue() {
+        return journal != null && eventsSinceSnapshot >= snapshotEvery && !snapshotInProgress.get();
+    }
+
+    /**
+     * Writes a snapshot covering everything journaled so far. The list must be
+     * immutable (or a stable view): it is serialized on another thread.
+     */
+    public void snapshot(List<ConversationSnapshot> conversations) {
+        if (journal == null || !snapshotInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        long position = journal.position();
+        eventsSinceSnapshot = 0;
+        SNAPSHOT_WRITER.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                snapshots.write(position, conversations);
+                journal.deleteSegmentsBefore(position);
+                LOG.info("Snapshot of {} conversations written in {} ms",
+                    conversations.size(), (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not write the snapshot at position {}", position, e);
+            } finally {
+                snapshotInProgress.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
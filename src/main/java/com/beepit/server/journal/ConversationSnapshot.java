@@ -0,0 +1,20 @@
+package com.beepit.server.journal;
+
+import com.beepit.server.domain.model.ConversationState.Receipts;
+import com.beepit.server.domain.model.PrivateMessage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persisted form of one conversation. {@code messages} is usually a view
+ * over the live log, taken on the shard thread and written from another.
+ */
+public record ConversationSnapshot(
+    String conversationId,
+    List<String> participants,
+    Instant createdAt,
+    Map<String, Receipts> receipts,
+    List<PrivateMessage> messages
+) {}
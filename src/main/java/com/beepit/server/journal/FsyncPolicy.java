@@ -0,0 +1,17 @@
+package com.beepit.server.journal;
+
+/**
+ * When journal writes are forced to the storage device.
+ */
+public enum FsyncPolicy {
+    /** Force after every event; nothing acknowledged can be lost. */
+    PER_WRITE,
+    /**
+     * Force when the owner commits, before it acknowledges a command or a
+     * batch, and every {@code fsync-group-size} events inside a large batch.
+     * Nothing acknowledged can be lost; a batch costs one force.
+     */
+    GROUP,
+    /** Force from a background timer; a crash may lose the last interval. */
+    INTERVAL
+}
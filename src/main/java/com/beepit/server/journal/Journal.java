@@ -0,0 +1,268 @@
+package com.beepit.server.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal stored in fixed-size memory-mapped segment files.
+ *
+ * Each record is {@code [length:int][crc32:int][payload]}. A zero length marks
+ * the end of the written part of a segment (files are zero-filled when they
+ * are created), and a bad checksum marks a torn write at the tail.
+ *
+ * Positions are global: a segment file is named after the position of its
+ * first byte, and the next segment starts where the previous one ends.
+ *
+ * Appends come from a single owner (a shard actor). Only {@link #deleteSegmentsBefore}
+ * and the interval flusher run on other threads.
+ */
+public class Journal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Journal.class);
+
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final int groupSize;
+    private ScheduledFuture<?> intervalFlush;
+
+    private volatile MappedByteBuffer segment;
+    private volatile long segmentBase;
+    private int writeOffset;
+    private int unflushed;
+
+    private Journal(Path directory, JournalConfiguration config) {
+        this.directory = directory;
+        this.segmentSize = config.getSegmentSize();
+        this.fsyncPolicy = config.getFsyncPolicy();
+        this.groupSize = Math.max(1, config.getFsyncGroupSize());
+    }
+
+    /**
+     * Opens the journal in {@code directory}, replaying every valid event at or
+     * after {@code fromPosition}, and positions the writer after the last one.
+     */
+    public static Journal open(Path directory, JournalConfiguration config,
+                               long fromPosition, Consumer<JournalEvent> replay) throws IOException {
+        Files.createDirectories(directory);
+        Journal journal = new Journal(directory, config);
+        journal.recover(fromPosition, replay);
+        if (config.getFsyncPolicy() == FsyncPolicy.INTERVAL) {
+            long interval = config.getFsyncInterval().toMillis();
+            journal.intervalFlush = FLUSHER.scheduleAtFixedRate(
+                journal::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return journal;
+    }
+
+    private void recover(long fromPosition, Consumer<JournalEvent> replay) throws IOException {
+        List<Long> bases = segmentBases();
+        if (bases.isEmpty()) {
+            openSegment(Math.max(0, fromPosition));
+            return;
+        }
+
+        for (int i = 0; i < bases.size(); i++) {
+            long base = bases.get(i);
+            boolean last = i == bases.size() - 1;
+            long capacity = Files.size(segmentPath(base));
+            if (!last && base + capacity <= fromPosition) {
+                continue;
+            }
+
+            MappedByteBuffer buffer = map(segmentPath(base), (int) capacity);
+            int offset = 0;
+            boolean torn = false;
+            while (offset + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length == 0) {
+                    break;
+                }
+                byte[] payload = readPayload(buffer, offset, length);
+                if (payload == null) {
+                    torn = true;
+                    break;
+                }
+                if (base + offset >= fromPosition) {
+                    replay.accept(JournalCodec.decode(payload));
+                }
+                offset += HEADER_SIZE + length;
+            }
+
+            if (torn || last) {
+                if (torn) {
+                    LOG.warn("Journal {}: incomplete record at position {}, truncating the tail",
+                        directory, base + offset);
+                    for (long later : bases.subList(i + 1, bases.size())) {
+                        Files.deleteIfExists(segmentPath(later));
+                    }
+                }
+                // Clears leftovers of incomplete writes behind the last valid record
+                for (int zero = offset; zero < buffer.capacity(); zero++) {
+                    buffer.put(zero, (byte) 0);
+                }
+                segment = buffer;
+                segmentBase = base;
+                writeOffset = offset;
+                return;
+            }
+        }
+    }
+
+    private static byte[] readPayload(MappedByteBuffer buffer, int offset, int length) {
+        if (length < 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        int expectedCrc = buffer.getInt(offset + 4);
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == expectedCrc ? payload : null;
+    }
+
+    /**
+     * Appends an event and returns the journal position right after it.
+     */
+    public long append(JournalEvent event) {
+        byte[] payload = JournalCodec.encode(event);
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + recordSize + " bytes exceeds segment size");
+        }
+        if (writeOffset + recordSize > segment.capacity()) {
+            roll();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        segment.put(writeOffset + HEADER_SIZE, payload);
+        segment.putInt(writeOffset + 4, (int) crc.getValue());
+        // The length is written last: a record without a length does not exist
+        segment.putInt(writeOffset, payload.length);
+        writeOffset += recordSize;
+        unflushed++;
+
+        if (fsyncPolicy == FsyncPolicy.PER_WRITE
+                || (fsyncPolicy == FsyncPolicy.GROUP && unflushed >= groupSize)) {
+            flush();
+        }
+        return position();
+    }
+
+    /**
+     * Ends a group of appends. Under {@link FsyncPolicy#GROUP} pending writes
+     * are forced, so a batch becomes durable as a unit.
+     */
+    public void commit() {
+        if (fsyncPolicy == FsyncPolicy.GROUP && unflushed > 0) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        segment.force();
+        unflushed = 0;
+    }
+
+    public long position() {
+        return segmentBase + writeOffset;
+    }
+
+    /**
+     * Deletes segments that only contain records before {@code position}.
+     * The segment being written is always kept.
+     */
+    public void deleteSegmentsBefore(long position) {
+        try {
+            long current = segmentBase;
+            for (long base : segmentBases()) {
+                Path path = segmentPath(base);
+                if (base != current && base + Files.size(path) <= position) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Journal {}: could not delete old segments", directory, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (intervalFlush != null) {
+            intervalFlush.cancel(false);
+        }
+        flush();
+    }
+
+    private void roll() {
+        flush();
+        try {
+            openSegment(segmentBase + segment.capacity());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openSegment(long base) throws IOException {
+        segment = map(segmentPath(base), segmentSize);
+        segmentBase = base;
+        writeOffset = 0;
+    }
+
+    private void flushQuietly() {
+        try {
+            segment.force();
+        } catch (RuntimeException e) {
+            LOG.warn("Journal {}: periodic fsync failed", directory, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private List<Long> segmentBases() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+    }
+}
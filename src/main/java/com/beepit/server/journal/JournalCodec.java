@@ -0,0 +1,125 @@
+package com.beepit.server.journal;
+
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.domain.model.Snowflake;
+import com.beepit.server.journal.JournalEvent.MessageAppended;
+import com.beepit.server.journal.JournalEvent.ReceiptsMoved;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Compact binary encoding of journal events and messages, shared by the
+ * journal and the snapshot files.
+ *
+ * Delivery flags are not stored: they are derived from the watermarks.
+ */
+public final class JournalCodec {
+
+    private static final byte MESSAGE_APPENDED = 1;
+    private static final byte RECEIPTS_MOVED = 2;
+
+    private static final byte SNOWFLAKE_ID = 0;
+    private static final byte STRING_ID = 1;
+
+    private JournalCodec() {
+    }
+
+    public static byte[] encode(JournalEvent event) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            switch (event) {
+                case MessageAppended appended -> {
+                    out.writeByte(MESSAGE_APPENDED);
+                    out.writeUTF(appended.conversationId());
+                    writeMessage(out, appended.message());
+                }
+                case ReceiptsMoved moved -> {
+                    out.writeByte(RECEIPTS_MOVED);
+                    out.writeUTF(moved.conversationId());
+                    out.writeUTF(moved.userId());
+                    out.writeLong(moved.deliveredUpTo());
+                    out.writeLong(moved.readUpTo());
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static JournalEvent decode(byte[] payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte type = in.readByte();
+            return switch (type) {
+                case MESSAGE_APPENDED -> new MessageAppended(in.readUTF(), readMessage(in));
+                case RECEIPTS_MOVED -> new ReceiptsMoved(in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+                default -> throw new IOException("Unknown journal event type: " + type);
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void writeMessage(DataOutput out, PrivateMessage message) throws IOException {
+        writeId(out, message.messageId());
+        out.writeLong(message.seq());
+        out.writeUTF(message.senderId());
+        out.writeUTF(message.recipientId());
+        writeString(out, message.content());
+        writeInstant(out, message.timestamp());
+    }
+
+    public static PrivateMessage readMessage(DataInput in) throws IOException {
+        return new PrivateMessage(
+            readId(in),
+            in.readLong(),
+            in.readUTF(),
+            in.readUTF(),
+            readString(in),
+            readInstant(in),
+            false,
+            false
+        );
+    }
+
+    public static void writeInstant(DataOutput out, Instant instant) throws IOException {
+        out.writeLong(instant.getEpochSecond());
+        out.writeInt(instant.getNano());
+    }
+
+    public static Instant readInstant(DataInput in) throws IOException {
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    /** Snowflake ids take 8 bytes; any other id is kept as a string. */
+    private static void writeId(DataOutput out, String id) throws IOException {
+        if (Snowflake.isValid(id)) {
+            out.writeByte(SNOWFLAKE_ID);
+            out.writeLong(Snowflake.parse(id));
+        } else {
+            out.writeByte(STRING_ID);
+            out.writeUTF(id);
+        }
+    }
+
+    private static String readId(DataInput in) throws IOException {
+        return in.readByte() == SNOWFLAKE_ID ? Snowflake.format(in.readLong()) : in.readUTF();
+    }
+
+    /** Unlike {@link DataOutput#writeUTF}, not limited to 64 KiB. */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package com.beepit.server.journal;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Persistence settings of the conversation shards ({@code beepit.journal.*}).
+ * Disabled by default, so actors created without configuration (tests,
+ * benchmarks) stay purely in memory.
+ */
+@ConfigurationProperties("beepit.journal")
+public class JournalConfiguration {
+
+    private boolean enabled = false;
+    private Path directory = Path.of("data", "journal");
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.GROUP;
+    private int fsyncGroupSize = 64;
+    private Duration fsyncInterval = Duration.ofMillis(200);
+    private int segmentSize = 64 * 1024 * 1024;
+    private int snapshotEvery = 100_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public int getFsyncGroupSize() {
+        return fsyncGroupSize;
+    }
+
+    public void setFsyncGroupSize(int fsyncGroupSize) {
+        this.fsyncGroupSize = fsyncGroupSize;
+    }
+
+    public Duration getFsyncInterval() {
+        return fsyncInterval;
+    }
+
+    public void setFsyncInterval(Duration fsyncInterval) {
+        this.fsyncInterval = fsyncInterval;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getSnapshotEvery() {
+        return snapshotEvery;
+    }
+
+    public void setSnapshotEvery(int snapshotEvery) {
+        this.snapshotEvery = snapshotEvery;
+    }
+}
@@ -0,0 +1,19 @@
+package com.beepit.server.journal;
+
+import com.beepit.server.domain.model.PrivateMessage;
+
+/**
+ * Events persisted by a conversation shard. Replaying them in order on top
+ * of the latest snapshot rebuilds the shard state.
+ */
+public sealed interface JournalEvent
+    permits JournalEvent.MessageAppended,
+            JournalEvent.ReceiptsMoved {
+
+    String conversationId();
+
+    public record MessageAppended(String conversationId, PrivateMessage message) implements JournalEvent {}
+
+    /** Absolute watermarks of a participant, so replaying is idempotent. */
+    public record ReceiptsMoved(String conversationId, String userId, long deliveredUpTo, long readUpTo) implements JournalEvent {}
+}
@@ -0,0 +1,140 @@
+package com.beepit.server.journal;
+
+import com.beepit.server.domain.model.ConversationState.Receipts;
+import com.beepit.server.domain.model.PrivateMessage;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot files of a shard, named after the journal position they cover:
+ * recovery loads the latest one and replays the journal from that position.
+ *
+ * A snapshot is written to a temporary file, forced and then atomically
+ * renamed, so a crash while writing leaves the previous snapshot in place.
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x42505331; // "BPS1"
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public void write(long journalPosition, List<ConversationSnapshot> conversations) throws IOException {
+        Path target = pathFor(journalPosition);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(journalPosition);
+            out.writeInt(conversations.size());
+            for (ConversationSnapshot conversation : conversations) {
+                writeConversation(out, conversation);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long position : positions()) {
+            if (position < journalPosition) {
+                Files.deleteIfExists(pathFor(position));
+            }
+        }
+    }
+
+    /**
+     * Streams the conversations of the latest snapshot and returns the journal
+     * position it covers, or 0 if there is none.
+     */
+    public long loadLatest(Consumer<ConversationSnapshot> consumer) throws IOException {
+        Optional<Long> latest = positions().stream().max(Long::compare);
+        if (latest.isEmpty()) {
+            return 0;
+        }
+        Path path = pathFor(latest.get());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            long position = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(readConversation(in));
+            }
+            return position;
+        }
+    }
+
+    private static void writeConversation(DataOutput out, ConversationSnapshot conversation) throws IOException {
+        out.writeUTF(conversation.conversationId());
+        out.writeInt(conversation.participants().size());
+        for (String participant : conversation.participants()) {
+            out.writeUTF(participant);
+        }
+        JournalCodec.writeInstant(out, conversation.createdAt());
+        out.writeInt(conversation.receipts().size());
+        for (Map.Entry<String, Receipts> entry : conversation.receipts().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().deliveredUpTo());
+            out.writeLong(entry.getValue().readUpTo());
+        }
+        out.writeInt(conversation.messages().size());
+        for (PrivateMessage message : conversation.messages()) {
+            JournalCodec.writeMessage(out, message);
+        }
+    }
+
+    private static ConversationSnapshot readConversation(DataInput in) throws IOException {
+        String conversationId = in.readUTF();
+        List<String> participants = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            participants.add(in.readUTF());
+        }
+        Instant createdAt = JournalCodec.readInstant(in);
+        Map<String, Receipts> receipts = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            receipts.put(in.readUTF(), new Receipts(in.readLong(), in.readLong()));
+        }
+        int messageCount = in.readInt();
+        List<PrivateMessage> messages = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            messages.add(JournalCodec.readMessage(in));
+        }
+        return new ConversationSnapshot(conversationId, participants, createdAt, receipts, messages);
+    }
+
+    private List<Long> positions() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && !name.endsWith(".tmp"))
+                .map(name -> Long.parseLong(name.substring(SNAPSHOT_PREFIX.length())))
+                .toList();
+        }
+    }
+
+    private Path pathFor(long journalPosition) {
+        return directory.resolve(String.format("%s%020d", SNAPSHOT_PREFIX, journalPosition));
+    }
+}
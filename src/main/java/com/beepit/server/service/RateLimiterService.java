@@ -2,6 +2,7 @@ package com.beepit.server.service;
 
 import io.github.resilience4j.ratelimiter.RateLimiter;
 import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.micronaut.scheduling.annotation.Scheduled;
 import jakarta.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,35 +11,93 @@ import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Per-user rate limits, shared by all the sessions of the user: closing a
+ * session and opening another does not reset them. The limiters of a user
+ * are dropped once idle for {@link #IDLE_EVICTION}, the longest refresh
+ * period, after which a new limiter grants exactly what the old one would.
+ */
 @Singleton
 public class RateLimiterService {
     
     private static final Logger LOG = LoggerFactory.getLogger(RateLimiterService.class);
+    static final Duration IDLE_EVICTION = Duration.ofSeconds(10);
     
-    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    private final Map<String, UserLimits> limits = new ConcurrentHashMap<>();
     private final RateLimiterConfig config;
+    private final RateLimiterConfig batchConfig;
     
     public RateLimiterService() {
-        // Permitir 10 mensajes por segundo por usuario
+        // Allow 10 messages per second per user
         this.config = RateLimiterConfig.custom()
             .limitRefreshPeriod(Duration.ofSeconds(1))
             .limitForPeriod(10)
             .timeoutDuration(Duration.ofMillis(100))
             .build();
+        // Batch messages: the same average rate, in bursts that fit two full
+        // batches, and never waiting (it is asked from the Netty event loop)
+        this.batchConfig = RateLimiterConfig.custom()
+            .limitRefreshPeriod(Duration.ofSeconds(10))
+            .limitForPeriod(100)
+            .timeoutDuration(Duration.ZERO)
+            .build();
     }
     
     public boolean tryAcquire(String userId) {
-        RateLimiter rateLimiter = rateLimiters.computeIfAbsent(userId, 
-            id -> RateLimiter.of("user-" + id, config));
-        
-        boolean acquired = rateLimiter.acquirePermission();
+        boolean acquired = limitsOf(userId).messages.acquirePermission();
         if (!acquired) {
             LOG.warn("Rate limit exceeded for user: {}", userId);
         }
         return acquired;
     }
     
-    public void cleanup(String userId) {
-        rateLimiters.remove(userId);
+    /**
+     * Takes up to {@code permits} permits for the messages of a batch, one by
+     * one, and returns how many it got. Batches draw on their own allowance
+     * (100 messages per 10 seconds), so a full batch gets through, and a
+     * refusal never blocks the caller.
+     */
+    public int tryAcquireBatch(String userId, int permits) {
+        RateLimiter rateLimiter = limitsOf(userId).batches;
+        int acquired = 0;
+        while (acquired < permits && rateLimiter.acquirePermission()) {
+            acquired++;
+        }
+        if (acquired < permits) {
+            LOG.warn("Rate limit exceeded for user: {} ({} of {} permits)", userId, acquired, permits);
+        }
+        return acquired;
+    }
+    
+    /** Drops the limiters of users that asked for no permit in the last {@link #IDLE_EVICTION}. */
+    @Scheduled(fixedDelay = "30s")
+    public void evictIdle() {
+        evictIdle(System.nanoTime());
+    }
+    
+    int evictIdle(long now) {
+        int before = limits.size();
+        limits.values().removeIf(user -> now - user.lastUsed >= IDLE_EVICTION.toNanos());
+        return before - limits.size();
+    }
+    
+    private UserLimits limitsOf(String userId) {
+        UserLimits user = limits.computeIfAbsent(userId, id -> new UserLimits(
+            RateLimiter.of("user-" + id, config),
+            RateLimiter.of("user-batch-" + id, batchConfig)));
+        user.lastUsed = System.nanoTime();
+        return user;
+    }
+    
+    private static final class UserLimits {
+        
+        private final RateLimiter messages;
+        private final RateLimiter batches;
+        private volatile long lastUsed;
+        
+        private UserLimits(RateLimiter messages, RateLimiter batches) {
+            this.messages = messages;
+            this.batches = batches;
+        }
     }
 }
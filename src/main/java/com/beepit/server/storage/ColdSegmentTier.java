@@ -0,0 +1,94 @@
+package com.beepit.server.storage;
+
+import com.beepit.server.domain.model.MessageLog;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.journal.JournalCodec;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold tier of one shard: demoted segments are encoded with the journal
+ * message codec, deflated and appended to a {@link ColdStore}; reads go
+ * through a {@link SegmentCache}. Tail segments go to reusable blocks, so a
+ * conversation passivated over and over does not grow the store.
+ */
+public class ColdSegmentTier implements MessageLog.ColdTier, AutoCloseable {
+
+    private final ColdStore store;
+    private final SegmentCache cache;
+
+    private ColdSegmentTier(ColdStore store, SegmentCache cache) {
+        this.store = store;
+        this.cache = cache;
+    }
+
+    public static ColdSegmentTier open(TieringConfiguration config, String name) throws IOException {
+        return new ColdSegmentTier(
+            ColdStore.open(config.getDirectory().resolve(name), config.getFileSize()),
+            new SegmentCache(config.getCacheSegments())
+        );
+    }
+
+    @Override
+    public long demote(List<PrivateMessage> segment) {
+        return store.write(encode(segment));
+    }
+
+    @Override
+    public long demoteTail(List<PrivateMessage> segment) {
+        return store.writeReusable(encode(segment));
+    }
+
+    @Override
+    public PrivateMessage[] load(long handle) {
+        return cache.get(handle, this::decode);
+    }
+
+    @Override
+    public void release(long handle) {
+        // The block is about to be reused: a cached copy would outlive it
+        cache.invalidate(handle);
+        store.free(handle);
+    }
+
+    private static byte[] encode(List<PrivateMessage> segment) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(segment.size() * 64);
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+                out.writeInt(segment.size());
+                for (PrivateMessage message : segment) {
+                    JournalCodec.writeMessage(out, message);
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private PrivateMessage[] decode(long handle) {
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(store.read(handle))))) {
+            PrivateMessage[] segment = new PrivateMessage[in.readInt()];
+            for (int i = 0; i < segment.length; i++) {
+                segment[i] = JournalCodec.readMessage(in);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
@@ -0,0 +1,184 @@
+package com.beepit.server.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store of byte blocks in memory-mapped files of a fixed size.
+ * A block is addressed by its global position; files are named after the
+ * position of their first byte.
+ *
+ * Blocks that get replaced ({@link #writeReusable}) take a power-of-two slot
+ * instead of their exact size. A {@link #free freed} slot goes to a free list
+ * and the next reusable block of the same class is written over it, so a
+ * block rewritten with a few more bytes each time keeps landing in the same
+ * slots instead of growing the files.
+ *
+ * Only the owner thread writes. Reads of blocks that have been handed out
+ * are safe from any thread.
+ *
+ * The cold tier is a cache of data that the journal already holds, so files
+ * left by a previous run are deleted when the store is opened, and the files
+ * of a closed store are deleted at once. Their mappings stay valid after the
+ * files are gone: views handed out before the close keep reading their blocks
+ * until they are unreachable, and the mappings are released with them.
+ */
+public class ColdStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColdStore.class);
+
+    private static final String FILE_PREFIX = "cold-";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final int MIN_SLOT_SIZE = 256;
+
+    private final Path directory;
+    private final int fileSize;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> files = new ConcurrentSkipListMap<>();
+    // Freed slots of reusable blocks, by slot size
+    private final Map<Integer, ArrayDeque<Long>> freeSlots = new HashMap<>();
+    private MappedByteBuffer current;
+    private long currentBase;
+    private int writeOffset;
+    private boolean closed;
+
+    private ColdStore(Path directory, int fileSize) {
+        this.directory = directory;
+        this.fileSize = fileSize;
+    }
+
+    public static ColdStore open(Path directory, int fileSize) throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> stale = Files.list(directory)) {
+            for (Path path : stale.filter(ColdStore::isColdFile).toList()) {
+                Files.delete(path);
+            }
+        }
+        ColdStore store = new ColdStore(directory, fileSize);
+        store.openFile(0);
+        return store;
+    }
+
+    /** Appends a block and returns its handle. */
+    public long write(byte[] block) {
+        return append(block, Integer.BYTES + block.length);
+    }
+
+    /**
+     * Writes a block that will be {@link #free freed} once replaced, in a
+     * freed slot of its size class if there is one, and returns its handle.
+     */
+    public long writeReusable(byte[] block) {
+        int slotSize = slotSize(block.length);
+        ArrayDeque<Long> free = freeSlots.get(slotSize);
+        if (free == null || free.isEmpty()) {
+            return append(block, slotSize);
+        }
+        if (closed) {
+            throw new IllegalStateException("Cold store " + directory + " is closed");
+        }
+        long handle = free.pop();
+        Map.Entry<Long, MappedByteBuffer> file = files.floorEntry(handle);
+        int offset = (int) (handle - file.getKey());
+        file.getValue().putInt(offset, block.length);
+        file.getValue().put(offset + Integer.BYTES, block);
+        return handle;
+    }
+
+    /**
+     * Returns the slot of a block written with {@link #writeReusable} to the
+     * free list. The handle must not be read again.
+     */
+    public void free(long handle) {
+        Map.Entry<Long, MappedByteBuffer> file = files.floorEntry(handle);
+        int slotSize = slotSize(file.getValue().getInt((int) (handle - file.getKey())));
+        freeSlots.computeIfAbsent(slotSize, size -> new ArrayDeque<>()).push(handle);
+    }
+
+    private long append(byte[] block, int recordSize) {
+        if (closed) {
+            throw new IllegalStateException("Cold store " + directory + " is closed");
+        }
+        if (Integer.BYTES + block.length > fileSize) {
+            throw new IllegalArgumentException("Cold block of " + block.length + " bytes exceeds file size");
+        }
+        if (writeOffset + recordSize > fileSize) {
+            try {
+                openFile(currentBase + fileSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        long handle = currentBase + writeOffset;
+        current.putInt(writeOffset, block.length);
+        current.put(writeOffset + Integer.BYTES, block);
+        writeOffset += recordSize;
+        return handle;
+    }
+
+    /**
+     * Slot of a reusable block: the next power of two that holds its record,
+     * capped at the file size. It only depends on the block length, so the
+     * slot of a block can be worked out again when it is freed.
+     */
+    private int slotSize(int blockLength) {
+        int recordSize = Integer.BYTES + blockLength;
+        long slotSize = Math.max(MIN_SLOT_SIZE, Long.highestOneBit(recordSize - 1L) << 1);
+        return (int) Math.min(slotSize, Math.max(recordSize, fileSize));
+    }
+
+    public byte[] read(long handle) {
+        Map.Entry<Long, MappedByteBuffer> file = files.floorEntry(handle);
+        if (file == null) {
+            throw new IllegalArgumentException("Unknown cold handle: " + handle);
+        }
+        int offset = (int) (handle - file.getKey());
+        byte[] block = new byte[file.getValue().getInt(offset)];
+        file.getValue().get(offset + Integer.BYTES, block);
+        return block;
+    }
+
+    /**
+     * Stops writes and deletes the files. Blocks already written can still be
+     * read (see the class comment).
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try (Stream<Path> stale = Files.list(directory)) {
+            for (Path path : stale.filter(ColdStore::isColdFile).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            LOG.warn("Cold tier {}: could not delete the files on close", directory, e);
+        }
+    }
+
+    private void openFile(long base) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", FILE_PREFIX, base, FILE_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            current = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        currentBase = base;
+        writeOffset = 0;
+        files.put(base, current);
+    }
+
+    private static boolean isColdFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+}
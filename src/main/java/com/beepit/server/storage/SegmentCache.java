@@ -0,0 +1,47 @@
+package com.beepit.server.storage;
+
+import com.beepit.server.domain.model.PrivateMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Bounded LRU cache of decoded cold segments, so paging through old history
+ * decompresses each segment once. Shared by the shard and the threads that
+ * read views of its conversations.
+ */
+public class SegmentCache {
+
+    private final Map<Long, PrivateMessage[]> segments;
+
+    public SegmentCache(int capacity) {
+        this.segments = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PrivateMessage[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public PrivateMessage[] get(long handle, LongFunction<PrivateMessage[]> loader) {
+        synchronized (segments) {
+            PrivateMessage[] cached = segments.get(handle);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Decompressed outside the lock; two concurrent reads of the same segment are harmless
+        PrivateMessage[] loaded = loader.apply(handle);
+        synchronized (segments) {
+            segments.put(handle, loaded);
+        }
+        return loaded;
+    }
+
+    public void invalidate(long handle) {
+        synchronized (segments) {
+            segments.remove(handle);
+        }
+    }
+}
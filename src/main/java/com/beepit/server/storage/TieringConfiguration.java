@@ -0,0 +1,96 @@
+package com.beepit.server.storage;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Hot/cold message storage settings ({@code beepit.storage.*}). Disabled by
+ * default, so actors created without configuration keep every message on
+ * the heap.
+ *
+ * A message stays hot while it is among the last {@code hotMessages} of its
+ * conversation or younger than {@code hotWindow}. Older segments are only
+ * demoted when a shard goes over its share of {@code heapBudget}.
+ * A conversation without messages for {@code passivateAfter} is passivated
+ * whatever the budget: all of its messages leave the heap (zero disables it).
+ */
+@ConfigurationProperties("beepit.storage")
+public class TieringConfiguration {
+
+    private boolean enabled = false;
+    private Path directory = Path.of("data", "cold");
+    private int hotMessages = 512;
+    private Duration hotWindow = Duration.ofMinutes(30);
+    private long heapBudget = 256L * 1024 * 1024;
+    private int cacheSegments = 512;
+    private int fileSize = 64 * 1024 * 1024;
+    private Duration passivateAfter = Duration.ofMinutes(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public int getHotMessages() {
+        return hotMessages;
+    }
+
+    public void setHotMessages(int hotMessages) {
+        this.hotMessages = hotMessages;
+    }
+
+    public Duration getHotWindow() {
+        return hotWindow;
+    }
+
+    public void setHotWindow(Duration hotWindow) {
+        this.hotWindow = hotWindow;
+    }
+
+    /** Estimated heap bytes of hot messages for the whole node, split evenly between shards. */
+    public long getHeapBudget() {
+        return heapBudget;
+    }
+
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    /** Decoded cold segments kept in memory per shard. */
+    public int getCacheSegments() {
+        return cacheSegments;
+    }
+
+    public void setCacheSegments(int cacheSegments) {
+        this.cacheSegments = cacheSegments;
+    }
+
+    public int getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(int fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public Duration getPassivateAfter() {
+        return passivateAfter;
+    }
+
+    public void setPassivateAfter(Duration passivateAfter) {
+        this.passivateAfter = passivateAfter;
+    }
+}
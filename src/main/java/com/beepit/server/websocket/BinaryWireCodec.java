@@ -0,0 +1,599 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.MessageType;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.domain.model.Snowflake;
+import com.beepit.server.websocket.WireCommand.BatchItem;
+import com.beepit.server.websocket.WireCommand.LoadMore;
+import com.beepit.server.websocket.WireCommand.MarkDelivered;
+import com.beepit.server.websocket.WireCommand.MarkRead;
+import com.beepit.server.websocket.WireCommand.Resume;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireCommand.SendBatch;
+import com.beepit.server.websocket.WireCommand.Subscribe;
+import com.beepit.server.websocket.WireCommand.Unsubscribe;
+import com.beepit.server.websocket.WireEvent.BatchAck;
+import com.beepit.server.websocket.WireEvent.BatchResult;
+import com.beepit.server.websocket.WireEvent.Delta;
+import com.beepit.server.websocket.WireEvent.ErrorMessage;
+import com.beepit.server.websocket.WireEvent.History;
+import com.beepit.server.websocket.WireEvent.Message;
+import com.beepit.server.websocket.WireEvent.MessageSent;
+import com.beepit.server.websocket.WireEvent.Pending;
+import com.beepit.server.websocket.WireEvent.Presence;
+import com.beepit.server.websocket.WireEvent.Receipts;
+import com.beepit.server.websocket.WireEvent.ResyncRequired;
+import com.beepit.server.websocket.WireEvent.RoomJoined;
+import com.beepit.server.websocket.WireEvent.RoomMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary protocol ({@value #SUBPROTOCOL}), negotiated through
+ * {@code Sec-WebSocket-Protocol}.
+ *
+ * A frame is an opcode byte followed by its fields. Integers are unsigned
+ * LEB128 varints; message ids travel as their Snowflake long and timestamps as
+ * the difference to the time embedded in the id, usually a single byte.
+ *
+ * On the multiplexed socket, replies about one conversation are wrapped in a
+ * SCOPED frame (conversation id, then the inner frame) and conversation
+ * commands in a SCOPED command.
+ *
+ * User and conversation ids are interned per connection: the first time one is sent it goes as
+ * a literal that both ends append to their string table, later frames carry
+ * only its index. Only essential frames (written in order, never dropped) add
+ * entries, so both tables always agree.
+ *
+ * An instance belongs to one connection and is not thread-safe: the server
+ * encodes under the session's {@link OutboundQueue} lock, as frames are
+ * written. The decoding side of
+ * events ({@link #decodeEvent}) and the encoding side of commands
+ * ({@link #encodeCommand}) are what a client does.
+ */
+public class BinaryWireCodec implements WireCodec {
+
+    public static final String SUBPROTOCOL = "beepit.binary.v1";
+    static final int MAX_INTERNED = 4096;
+
+    // Server -> client
+    static final byte MESSAGE = 0x01;
+    static final byte HISTORY = 0x02;
+    static final byte HISTORY_PAGE = 0x03;
+    static final byte MESSAGE_SENT = 0x04;
+    static final byte ERROR = 0x05;
+    static final byte BATCH_ACK = 0x06;
+    static final byte DELTA = 0x07;
+    static final byte RESYNC_REQUIRED = 0x08;
+    static final byte SCOPED = 0x09;
+    static final byte RECEIPTS = 0x0A;
+    static final byte PRESENCE = 0x0B;
+    static final byte PENDING = 0x0C;
+    static final byte ROOM_MESSAGE = 0x0D;
+    static final byte ROOM_JOINED = 0x0E;
+    // Client -> server
+    static final byte SEND = 0x41;
+    static final byte LOAD_MORE = 0x42;
+    static final byte SEND_BATCH = 0x43;
+    static final byte RESUME = 0x44;
+    static final byte SUBSCRIBE = 0x45;
+    static final byte UNSUBSCRIBE = 0x46;
+    static final byte MARK_DELIVERED = 0x47;
+    static final byte MARK_READ = 0x48;
+    static final byte SCOPED_COMMAND = 0x49;
+
+    // String references: 0 interned literal, 1 plain literal, n >= 2 entry n - 2
+    private static final int INTERNED_LITERAL = 0;
+    private static final int PLAIN_LITERAL = 1;
+    private static final int TABLE_OFFSET = 2;
+
+    private static final int DELIVERED = 1;
+    private static final int READ = 2;
+
+    private static final int RESULT_SENT = 0;
+    private static final int RESULT_ERROR = 1;
+
+    private final Map<String, Integer> encodeTable = new HashMap<>();
+    private final List<String> decodeTable = new ArrayList<>();
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionScoped() {
+        return true;
+    }
+
+    @Override
+    public ByteBuf encode(WireEvent event, ByteBufAllocator allocator, FrameKind kind) {
+        boolean intern = kind == FrameKind.ESSENTIAL;
+        ByteBuf out = allocator.buffer();
+        try {
+            writeEvent(out, event, intern);
+            return out;
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public FragmentedEvent fragment(WireEvent event, FrameKind kind, int fragmentSize) {
+        boolean intern = kind == FrameKind.ESSENTIAL;
+        String scope = event instanceof WireEvent.Scoped scoped ? scoped.conversationId() : null;
+        WireEvent inner = event instanceof WireEvent.Scoped scoped ? scoped.event() : event;
+        return switch (inner) {
+            case History history -> new FragmentedEvent(
+                out -> {
+                    writeScope(out, scope, intern);
+                    out.writeByte(history.page() ? HISTORY_PAGE : HISTORY);
+                    writeVarLong(out, history.messages().size());
+                },
+                history.messages(),
+                (out, message, index) -> writeMessage(out, message, intern),
+                out -> writeVarLong(out, history.nextCursor() == null ? 0 : history.nextCursor() + 1),
+                fragmentSize);
+            case Delta delta -> new FragmentedEvent(
+                out -> {
+                    writeScope(out, scope, intern);
+                    out.writeByte(DELTA);
+                    writeVarLong(out, delta.messages().size());
+                },
+                delta.messages(),
+                (out, message, index) -> writeMessage(out, message, intern),
+                out -> writeVarLong(out, delta.nextSeq()),
+                fragmentSize);
+            case Pending pending -> new FragmentedEvent(
+                out -> {
+                    writeScope(out, scope, intern);
+                    out.writeByte(PENDING);
+                    writeVarLong(out, pending.messages().size());
+                },
+                pending.messages(),
+                (out, message, index) -> writeMessage(out, message, intern),
+                out -> { },
+                fragmentSize);
+            default -> null;
+        };
+    }
+
+    private void writeScope(ByteBuf out, String conversationId, boolean intern) {
+        if (conversationId != null) {
+            out.writeByte(SCOPED);
+            writeInterned(out, conversationId, intern);
+        }
+    }
+
+    private void writeEvent(ByteBuf out, WireEvent event, boolean intern) {
+        switch (event) {
+            case Message message -> {
+                out.writeByte(MESSAGE);
+                writeMessage(out, message.message(), intern);
+            }
+            case History history -> {
+                out.writeByte(history.page() ? HISTORY_PAGE : HISTORY);
+                writeVarLong(out, history.messages().size());
+                for (PrivateMessage message : history.messages()) {
+                    writeMessage(out, message, intern);
+                }
+                writeVarLong(out, history.nextCursor() == null ? 0 : history.nextCursor() + 1);
+            }
+            case Delta delta -> {
+                out.writeByte(DELTA);
+                writeVarLong(out, delta.messages().size());
+                for (PrivateMessage message : delta.messages()) {
+                    writeMessage(out, message, intern);
+                }
+                writeVarLong(out, delta.nextSeq());
+            }
+            case Pending pending -> {
+                out.writeByte(PENDING);
+                writeVarLong(out, pending.messages().size());
+                for (PrivateMessage message : pending.messages()) {
+                    writeMessage(out, message, intern);
+                }
+            }
+            case ResyncRequired resync -> {
+                out.writeByte(RESYNC_REQUIRED);
+                writeVarLong(out, resync.nextSeq());
+            }
+            case Receipts receipts -> {
+                out.writeByte(RECEIPTS);
+                writeInterned(out, receipts.conversationId(), intern);
+                writeInterned(out, receipts.userId(), intern);
+                writeVarLong(out, receipts.deliveredUpTo());
+                writeVarLong(out, receipts.readUpTo());
+            }
+            case Presence presence -> {
+                out.writeByte(PRESENCE);
+                writeInterned(out, presence.userId(), intern);
+                out.writeBoolean(presence.online());
+            }
+            case WireEvent.Scoped scoped -> {
+                out.writeByte(SCOPED);
+                writeInterned(out, scoped.conversationId(), intern);
+                writeEvent(out, scoped.event(), intern);
+            }
+            case RoomMessage message -> {
+                out.writeByte(ROOM_MESSAGE);
+                writeRoomMessage(out, message.message(), intern);
+            }
+            case RoomJoined joined -> {
+                out.writeByte(ROOM_JOINED);
+                writeInterned(out, joined.roomId(), intern);
+                writeVarLong(out, joined.participants().size());
+                for (String userId : joined.participants()) {
+                    writeInterned(out, userId, intern);
+                }
+                writeVarLong(out, joined.messages().size());
+                for (com.beepit.server.domain.model.Message message : joined.messages()) {
+                    writeRoomMessage(out, message, intern);
+                }
+            }
+            case MessageSent sent -> {
+                out.writeByte(MESSAGE_SENT);
+                writeId(out, sent.messageId());
+            }
+            case ErrorMessage error -> {
+                out.writeByte(ERROR);
+                writeString(out, error.error());
+            }
+            case BatchAck ack -> {
+                out.writeByte(BATCH_ACK);
+                writeVarLong(out, ack.results().size());
+                for (BatchResult result : ack.results()) {
+                    writeString(out, result.correlationId());
+                    if (result.isSent()) {
+                        out.writeByte(RESULT_SENT);
+                        writeId(out, result.messageId());
+                    } else {
+                        out.writeByte(RESULT_ERROR);
+                        writeString(out, result.error());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public WireCommand decode(byte[] frame) {
+        ByteBuf in = Unpooled.wrappedBuffer(frame);
+        try {
+            return readCommand(in);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated binary frame", e);
+        }
+    }
+
+    private static WireCommand readCommand(ByteBuf in) {
+        byte opcode = in.readByte();
+        return switch (opcode) {
+            case SEND -> new Send(readString(in));
+            case LOAD_MORE -> new LoadMore(readVarLong(in));
+            // lastSeq + 1: -1 (no messages) travels as 0
+            case RESUME -> new Resume(readVarLong(in) - 1);
+            case SEND_BATCH -> {
+                // Each item takes at least two bytes: the count cannot exceed the frame
+                int count = readCount(in, 2);
+                List<BatchItem> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(new BatchItem(readString(in), readString(in)));
+                }
+                yield new SendBatch(items);
+            }
+            case SUBSCRIBE -> {
+                String conversationId = readString(in);
+                // 0 without cursor (history), lastSeq + 2 otherwise
+                long lastSeq = readVarLong(in);
+                yield new Subscribe(conversationId, lastSeq == 0 ? null : lastSeq - 2);
+            }
+            case UNSUBSCRIBE -> new Unsubscribe(readString(in));
+            case MARK_DELIVERED -> new MarkDelivered(readString(in), readVarLong(in));
+            case MARK_READ -> new MarkRead(readString(in), readVarLong(in));
+            case SCOPED_COMMAND -> {
+                String conversationId = readString(in);
+                // Checked before reading it: a frame cannot nest SCOPED indefinitely
+                byte inner = in.getByte(in.readerIndex());
+                if (inner != SEND && inner != LOAD_MORE && inner != RESUME && inner != SEND_BATCH) {
+                    throw new IllegalArgumentException("Not a conversation command: " + inner);
+                }
+                yield new WireCommand.Scoped(conversationId, readCommand(in));
+            }
+            default -> throw new IllegalArgumentException("Unknown binary command: " + opcode);
+        };
+    }
+
+    /** Client side: encodes a command. */
+    public ByteBuf encodeCommand(WireCommand command, ByteBufAllocator allocator) {
+        ByteBuf out = allocator.buffer();
+        writeCommand(out, command);
+        return out;
+    }
+
+    private static void writeCommand(ByteBuf out, WireCommand command) {
+        switch (command) {
+            case Send send -> {
+                out.writeByte(SEND);
+                writeString(out, send.content());
+            }
+            case LoadMore loadMore -> {
+                out.writeByte(LOAD_MORE);
+                writeVarLong(out, loadMore.before());
+            }
+            case Resume resume -> {
+                out.writeByte(RESUME);
+                writeVarLong(out, resume.lastSeq() + 1);
+            }
+            case Subscribe subscribe -> {
+                out.writeByte(SUBSCRIBE);
+                writeString(out, subscribe.conversationId());
+                writeVarLong(out, subscribe.lastSeq() == null ? 0 : subscribe.lastSeq() + 2);
+            }
+            case Unsubscribe unsubscribe -> {
+                out.writeByte(UNSUBSCRIBE);
+                writeString(out, unsubscribe.conversationId());
+            }
+            case MarkDelivered delivered -> {
+                out.writeByte(MARK_DELIVERED);
+                writeString(out, delivered.conversationId());
+                writeVarLong(out, delivered.seq());
+            }
+            case MarkRead read -> {
+                out.writeByte(MARK_READ);
+                writeString(out, read.conversationId());
+                writeVarLong(out, read.seq());
+            }
+            case WireCommand.Scoped scoped -> {
+                out.writeByte(SCOPED_COMMAND);
+                writeString(out, scoped.conversationId());
+                writeCommand(out, scoped.command());
+            }
+            case SendBatch batch -> {
+                out.writeByte(SEND_BATCH);
+                writeVarLong(out, batch.items().size());
+                for (BatchItem item : batch.items()) {
+                    writeString(out, item.correlationId());
+                    writeString(out, item.content());
+                }
+            }
+        }
+    }
+
+    /** Client side: decodes an event, updating this connection's string table. */
+    public WireEvent decodeEvent(ByteBuf in) {
+        byte opcode = in.readByte();
+        return switch (opcode) {
+            case MESSAGE -> new Message(readMessage(in));
+            case HISTORY, HISTORY_PAGE -> {
+                int count = (int) readVarLong(in);
+                List<PrivateMessage> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    messages.add(readMessage(in));
+                }
+                long cursor = readVarLong(in);
+                yield new History(opcode == HISTORY_PAGE, messages, cursor == 0 ? null : cursor - 1);
+            }
+            case DELTA -> {
+                int count = (int) readVarLong(in);
+                List<PrivateMessage> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    messages.add(readMessage(in));
+                }
+                yield new Delta(messages, readVarLong(in));
+            }
+            case PENDING -> {
+                int count = (int) readVarLong(in);
+                List<PrivateMessage> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    messages.add(readMessage(in));
+                }
+                yield new Pending(messages);
+            }
+            case RESYNC_REQUIRED -> new ResyncRequired(readVarLong(in));
+            case RECEIPTS -> new Receipts(readInterned(in), readInterned(in), readVarLong(in), readVarLong(in));
+            case PRESENCE -> new Presence(readInterned(in), in.readBoolean());
+            case SCOPED -> new WireEvent.Scoped(readInterned(in), decodeEvent(in));
+            case ROOM_MESSAGE -> new RoomMessage(readRoomMessage(in));
+            case ROOM_JOINED -> {
+                String roomId = readInterned(in);
+                int participantCount = (int) readVarLong(in);
+                Set<String> participants = new LinkedHashSet<>();
+                for (int i = 0; i < participantCount; i++) {
+                    participants.add(readInterned(in));
+                }
+                int count = (int) readVarLong(in);
+                List<com.beepit.server.domain.model.Message> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    messages.add(readRoomMessage(in));
+                }
+                yield new RoomJoined(roomId, participants, messages);
+            }
+            case MESSAGE_SENT -> new MessageSent(readId(in));
+            case ERROR -> new ErrorMessage(readString(in));
+            case BATCH_ACK -> {
+                int count = (int) readVarLong(in);
+                List<BatchResult> results = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String correlationId = readString(in);
+                    results.add(in.readByte() == RESULT_SENT
+                        ? BatchResult.sent(correlationId, readId(in))
+                        : BatchResult.failed(correlationId, readString(in)));
+                }
+                yield new BatchAck(results);
+            }
+            default -> throw new IllegalArgumentException("Unknown binary event: " + opcode);
+        };
+    }
+
+    private void writeMessage(ByteBuf out, PrivateMessage message, boolean intern) {
+        long baseMillis = writeId(out, message.messageId());
+        writeVarLong(out, message.seq());
+        writeInterned(out, message.senderId(), intern);
+        writeInterned(out, message.recipientId(), intern);
+        writeString(out, message.content());
+        writeVarLong(out, zigzag(message.timestamp().toEpochMilli() - baseMillis));
+        out.writeByte((message.delivered() ? DELIVERED : 0) | (message.read() ? READ : 0));
+    }
+
+    private PrivateMessage readMessage(ByteBuf in) {
+        long idValue = readVarLong(in);
+        String messageId;
+        long baseMillis;
+        if ((idValue & 1) == 0) {
+            long id = idValue >>> 1;
+            messageId = Snowflake.format(id);
+            baseMillis = Snowflake.timestampOf(id).toEpochMilli();
+        } else {
+            messageId = readString(in);
+            baseMillis = 0;
+        }
+        long seq = readVarLong(in);
+        String senderId = readInterned(in);
+        String recipientId = readInterned(in);
+        String content = readString(in);
+        Instant timestamp = Instant.ofEpochMilli(baseMillis + unzigzag(readVarLong(in)));
+        int flags = in.readByte();
+        return new PrivateMessage(messageId, seq, senderId, recipientId, content, timestamp,
+            (flags & DELIVERED) != 0, (flags & READ) != 0);
+    }
+
+    // Room message: id, room, sender, content, timestamp relative to the id and type
+    private void writeRoomMessage(ByteBuf out, com.beepit.server.domain.model.Message message, boolean intern) {
+        long baseMillis = writeId(out, message.id());
+        writeInterned(out, message.roomId(), intern);
+        writeInterned(out, message.sender(), intern);
+        writeString(out, message.content());
+        writeVarLong(out, zigzag(message.timestamp() - baseMillis));
+        out.writeByte(message.type() == null ? MessageType.TEXT.ordinal() : message.type().ordinal());
+    }
+
+    private com.beepit.server.domain.model.Message readRoomMessage(ByteBuf in) {
+        long idValue = readVarLong(in);
+        String messageId;
+        long baseMillis;
+        if ((idValue & 1) == 0) {
+            long id = idValue >>> 1;
+            messageId = Snowflake.format(id);
+            baseMillis = Snowflake.timestampOf(id).toEpochMilli();
+        } else {
+            messageId = readString(in);
+            baseMillis = 0;
+        }
+        String roomId = readInterned(in);
+        String sender = readInterned(in);
+        String content = readString(in);
+        long timestamp = baseMillis + unzigzag(readVarLong(in));
+        MessageType type = MessageType.values()[in.readByte()];
+        return new com.beepit.server.domain.model.Message(messageId, sender, content, timestamp, roomId, type);
+    }
+
+    /**
+     * Snowflake ids go as {@code id << 1} (they use 63 bits), anything else as
+     * {@code 1} followed by the string. Returns the epoch millis the timestamp
+     * is relative to.
+     */
+    private static long writeId(ByteBuf out, String messageId) {
+        if (Snowflake.isValid(messageId)) {
+            long id = Snowflake.parse(messageId);
+            writeVarLong(out, id << 1);
+            return Snowflake.timestampOf(id).toEpochMilli();
+        }
+        writeVarLong(out, 1);
+        writeString(out, messageId);
+        return 0;
+    }
+
+    private static String readId(ByteBuf in) {
+        long idValue = readVarLong(in);
+        return (idValue & 1) == 0 ? Snowflake.format(idValue >>> 1) : readString(in);
+    }
+
+    private void writeInterned(ByteBuf out, String value, boolean intern) {
+        Integer index = encodeTable.get(value);
+        if (index != null) {
+            writeVarLong(out, index + TABLE_OFFSET);
+        } else if (intern && encodeTable.size() < MAX_INTERNED) {
+            encodeTable.put(value, encodeTable.size());
+            writeVarLong(out, INTERNED_LITERAL);
+            writeString(out, value);
+        } else {
+            writeVarLong(out, PLAIN_LITERAL);
+            writeString(out, value);
+        }
+    }
+
+    private String readInterned(ByteBuf in) {
+        int reference = (int) readVarLong(in);
+        if (reference >= TABLE_OFFSET) {
+            return decodeTable.get(reference - TABLE_OFFSET);
+        }
+        String value = readString(in);
+        if (reference == INTERNED_LITERAL) {
+            decodeTable.add(value);
+        }
+        return value;
+    }
+
+    private static void writeString(ByteBuf out, String value) {
+        int length = ByteBufUtil.utf8Bytes(value);
+        writeVarLong(out, length);
+        ByteBufUtil.reserveAndWriteUtf8(out, value, length);
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = (int) readVarLong(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new IllegalArgumentException("String length " + length + " exceeds frame");
+        }
+        return in.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+
+    private static int readCount(ByteBuf in, int minElementSize) {
+        long count = readVarLong(in);
+        if (count < 0 || count > in.readableBytes() / minElementSize) {
+            throw new IllegalArgumentException("Element count " + count + " exceeds frame");
+        }
+        return (int) count;
+    }
+
+    static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
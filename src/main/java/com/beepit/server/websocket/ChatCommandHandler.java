@@ -0,0 +1,551 @@
+package com.beepit.server.websocket;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.AskPattern;
+import com.beepit.server.actor.ActorSystemProvider;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.*;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Dispatch;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Request;
+import com.beepit.server.domain.command.SendBatcherCommand.Enqueue;
+import com.beepit.server.domain.command.UserManagerCommand.SetUserOnline;
+import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import com.beepit.server.domain.response.ConversationManagerResponse.*;
+import com.beepit.server.service.RateLimiterService;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import com.beepit.server.websocket.WireCommand.BatchItem;
+import com.beepit.server.websocket.WireCommand.LoadMore;
+import com.beepit.server.websocket.WireCommand.Resume;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireCommand.SendBatch;
+import com.beepit.server.websocket.WireEvent.BatchAck;
+import com.beepit.server.websocket.WireEvent.BatchResult;
+import com.beepit.server.websocket.WireEvent.Delta;
+import com.beepit.server.websocket.WireEvent.ErrorMessage;
+import com.beepit.server.websocket.WireEvent.History;
+import com.beepit.server.websocket.WireEvent.Presence;
+import com.beepit.server.websocket.WireEvent.Receipts;
+import io.netty.buffer.ByteBuf;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Conversation commands shared by the per-conversation socket
+ * ({@code /ws/chat/{roomId}}) and the multiplexed one ({@code /ws/user}):
+ * history, resume, sends, receipts and presence. The endpoints decode frames,
+ * rate limit and resolve which conversation a command is about; replies and
+ * broadcasts go out through {@link FrameBroadcaster}.
+ */
+@Singleton
+public class ChatCommandHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChatCommandHandler.class);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(3);
+    private static final Duration FAST_TIMEOUT = Duration.ofSeconds(2);
+    private static final int HISTORY_PAGE_SIZE = 50;
+    // More missed messages than this: resync_required and the recent history
+    private static final int MAX_RESUME_GAP = 500;
+    // Messages in each "pending" frame
+    private static final int PENDING_FLUSH_LIMIT = 200;
+    // Automatic delivered watermarks are grouped during this interval
+    private static final Duration DELIVERED_TICK = Duration.ofMillis(50);
+
+    private final SessionRegistry sessionRegistry;
+    private final FrameBroadcaster frameBroadcaster;
+    private final ActorSystemProvider actorSystemProvider;
+    private final HistoryCache historyCache;
+    private final RateLimiterService rateLimiterService;
+    // Highest seq delivered per (conversation, recipient) not yet sent to the shard
+    private final Map<DeliveredKey, Long> deliveredPending = new ConcurrentHashMap<>();
+    // Serial lanes for the work that follows a reply, picked by conversation
+    private final Scheduler[] replyLanes = new Scheduler[Schedulers.DEFAULT_POOL_SIZE];
+
+    public ChatCommandHandler(SessionRegistry sessionRegistry, FrameBroadcaster frameBroadcaster,
+                              ActorSystemProvider actorSystemProvider, HistoryCache historyCache,
+                              RateLimiterService rateLimiterService) {
+        this.sessionRegistry = sessionRegistry;
+        this.frameBroadcaster = frameBroadcaster;
+        this.actorSystemProvider = actorSystemProvider;
+        this.historyCache = historyCache;
+        this.rateLimiterService = rateLimiterService;
+        for (int i = 0; i < replyLanes.length; i++) {
+            Scheduler.Worker worker = Schedulers.parallel().createWorker();
+            replyLanes[i] = Schedulers.fromExecutor(task -> worker.schedule(task));
+        }
+    }
+
+    /**
+     * Runs a conversation command ({@link Send}, {@link LoadMore},
+     * {@link Resume}, {@link SendBatch}) for the target.
+     *
+     * @throws IllegalArgumentException if the command is invalid or not a conversation command
+     */
+    public Mono<Void> execute(Target target, WireCommand command) {
+        return switch (command) {
+            case LoadMore loadMore -> loadMore(target, loadMore.before());
+            case Resume resume -> resume(target, resume.lastSeq());
+            case Send send -> {
+                String content = validateContent(send.content());
+                LOG.debug("Processing message from {} to {}: {}", target.userId(), target.otherUserId(), content);
+                yield sendPrivateMessage(target, content);
+            }
+            case SendBatch batch -> sendBatch(target, batch.items());
+            default -> throw new IllegalArgumentException(
+                "Unsupported command on this socket: " + command.getClass().getSimpleName());
+        };
+    }
+
+    /**
+     * Sends the most recent history page, from the {@link HistoryCache} when
+     * it has it. What the page carries counts as delivered to the user.
+     */
+    public Mono<Void> loadAndSendHistory(Target target) {
+        HistoryCache.Page cached = historyCache.get(target.conversationId());
+        if (cached != null) {
+            sendHistory(target, cached);
+            return Mono.empty();
+        }
+        long stamp = historyCache.stamp(target.conversationId());
+        return requestPage(target, null).doOnNext(response -> handleHistoryResponse(response, target, stamp)).then();
+    }
+
+    /**
+     * Resumes from the last seq the client has (-1 if none): sends only the
+     * later messages in a "delta" frame. If more than MAX_RESUME_GAP are
+     * missing or the cursor does not exist on the server, sends
+     * "resync_required" followed by the recent history, as on a new
+     * connection. Either way the client is up to date: the user's delivered
+     * watermark moves up to the last message.
+     */
+    public Mono<Void> resume(Target target, long lastSeq) {
+        HistoryCache.Page cached = historyCache.get(target.conversationId());
+        List<PrivateMessage> missed = cached != null ? cached.since(lastSeq) : null;
+        if (missed != null) {
+            // What was missed fits in the cached page: no ask
+            reply(target, new Delta(missed, cached.lastSeq() + 1));
+            delivered(target.conversationId(), target.userId(), cached.lastSeq());
+            return Mono.empty();
+        }
+        return askConversations(replyTo ->
+                new GetMessagesSince(target.conversationId(), lastSeq, MAX_RESUME_GAP, replyTo))
+            .flatMap(response -> {
+                if (response instanceof MessagesSince delta) {
+                    LOG.debug("Resuming from seq {}: {} messages", lastSeq, delta.messages().size());
+                    reply(target, new Delta(delta.messages(), delta.nextSeq()));
+                    delivered(target.conversationId(), target.userId(), delta.nextSeq() - 1);
+                    return Mono.<Void>empty();
+                }
+                if (response instanceof ResyncRequired resync) {
+                    LOG.debug("Cannot resume from seq {} (next seq {})", lastSeq, resync.nextSeq());
+                    reply(target, new WireEvent.ResyncRequired(resync.nextSeq()));
+                    return loadAndSendHistory(target);
+                }
+                reply(target, new ErrorMessage("Failed to resume"));
+                return Mono.<Void>empty();
+            });
+    }
+
+    /**
+     * Moves the user's delivered or read watermark up to {@code seq} and
+     * broadcasts the new watermarks to the conversation's sessions.
+     */
+    public Mono<Void> markReceipts(Target target, long seq, boolean read) {
+        return moveReceipts(target.conversationId(), target.userId(), seq, read)
+            .doOnNext(response -> {
+                if (!(response instanceof ReceiptsUpdated)) {
+                    reply(target, new ErrorMessage(
+                        response instanceof ErrorResponse error ? error.message() : "Failed to update receipts"));
+                }
+            })
+            .then();
+    }
+
+    /**
+     * On connect, sends in one "pending" frame the messages that reached the
+     * user while none of their sessions had the conversation open. They are
+     * marked delivered (one watermark per conversation) only once the frame
+     * has been written; a frame that is dropped or fails leaves them pending
+     * for the next connection. If more are left, repeats with the next batch.
+     */
+    public Mono<Void> flushPending(LiveSession live, String userId) {
+        return askConversations(replyTo -> new GetPendingDeliveries(userId, PENDING_FLUSH_LIMIT, replyTo))
+            .flatMap(response -> {
+                if (!(response instanceof PendingDeliveries pending)) {
+                    LOG.warn("Could not get the pending messages of {}: {}", userId, response);
+                    return Mono.<Void>empty();
+                }
+                if (pending.messages().isEmpty()) {
+                    return Mono.<Void>empty();
+                }
+                LOG.debug("Delivering {} pending messages to {}", pending.messages().size(), userId);
+                return Mono.<Boolean>create(sink ->
+                        frameBroadcaster.send(live, new WireEvent.Pending(pending.messages()), sink::success))
+                    .flatMap(written -> {
+                        if (!written) {
+                            LOG.debug("Pending frame to {} not written: the messages stay pending", userId);
+                            return Mono.<Void>empty();
+                        }
+                        return markPendingDelivered(userId, pending.messages())
+                            .then(Mono.defer(() -> pending.more() && live.session().isOpen()
+                                ? flushPending(live, userId)
+                                : Mono.<Void>empty()));
+                    });
+            });
+    }
+
+    /**
+     * Presence: only changes with the user's first session and with the
+     * close of the last one. The multiplexed sessions that have a conversation
+     * with them subscribed are notified.
+     */
+    public void presenceChanged(String userId, boolean online) {
+        actorSystemProvider.getUserManagerActor().tell(new SetUserOnline(userId, online));
+        try {
+            frameBroadcaster.broadcast(sessionRegistry.watchersOf(userId), new Presence(userId, online),
+                FrameKind.COALESCABLE, "presence:" + userId);
+        } catch (Exception e) {
+            LOG.error("Error broadcasting presence of {}", userId, e);
+        }
+    }
+
+    /** Whether the user has a session open on this node. */
+    public boolean isOnline(String userId) {
+        return !sessionRegistry.sessionsOf(userId).isEmpty();
+    }
+
+    public void reply(Target target, WireEvent event) {
+        try {
+            frameBroadcaster.send(target.live(), target.scoped()
+                ? new WireEvent.Scoped(target.conversationId(), event)
+                : event);
+        } catch (Exception e) {
+            LOG.error("Error sending reply to {}", target.userId(), e);
+        }
+    }
+
+    private Mono<ConversationManagerResponse> requestPage(Target target, Long beforeCursor) {
+        return askConversations(replyTo ->
+            new GetConversationPage(target.conversationId(), beforeCursor, HISTORY_PAGE_SIZE, replyTo));
+    }
+
+    private Mono<ConversationManagerResponse> askConversations(
+            Function<ActorRef<ConversationManagerResponse>, ConversationManagerCommand> command) {
+        return Mono.fromCompletionStage(
+            AskPattern.ask(
+                actorSystemProvider.getConversationManagerActor(),
+                command::apply,
+                FAST_TIMEOUT,
+                actorSystemProvider.getScheduler()
+            )
+        ).publishOn(Schedulers.parallel());
+    }
+
+    private void handleHistoryResponse(ConversationManagerResponse response, Target target, long stamp) {
+        if (response instanceof ConversationPage page) {
+            LOG.debug("History found: {} messages", page.messages().size());
+            sendHistory(target, historyCache.put(target.conversationId(), page.messages(), page.nextCursor(),
+                HISTORY_PAGE_SIZE, stamp));
+        } else {
+            LOG.debug("No previous history between {} and {}", target.userId(), target.otherUserId());
+            reply(target, new History(false, List.of(), null));
+        }
+    }
+
+    /**
+     * JSON sessions get the already encoded frame from the cache; binary
+     * ones (or any session once the page has left the cache) encode it in their queue.
+     */
+    private void sendHistory(Target target, HistoryCache.Page page) {
+        delivered(target.conversationId(), target.userId(), page.lastSeq());
+        if (!target.live().codec().isConnectionScoped()) {
+            try {
+                ByteBuf frame = historyCache.jsonFrame(target.conversationId(), page, target.scoped());
+                if (frame != null) {
+                    frameBroadcaster.send(target.live(), frame);
+                    return;
+                }
+            } catch (Exception e) {
+                LOG.error("Error encoding history of {}", target.conversationId(), e);
+            }
+        }
+        reply(target, new History(false, page.messages(), page.nextCursor()));
+    }
+
+    /**
+     * Pages backwards: {"type":"load_more","before":cursor} replies with the
+     * messages before the cursor in a "history_page" frame.
+     */
+    private Mono<Void> loadMore(Target target, long before) {
+        return requestPage(target, before).doOnNext(response -> {
+            if (response instanceof ConversationPage page) {
+                reply(target, new History(true, page.messages(), page.nextCursor()));
+            } else {
+                reply(target, new ErrorMessage("Failed to load history"));
+            }
+        }).then();
+    }
+
+    static String validateContent(String content) {
+        if (content == null || content.trim().isEmpty()) {
+            throw new IllegalArgumentException("Message content cannot be empty");
+        }
+        if (content.length() > WireCodec.MAX_CONTENT_LENGTH) {
+            throw new IllegalArgumentException("Message too long (max " + WireCodec.MAX_CONTENT_LENGTH + " characters)");
+        }
+        return content;
+    }
+
+    private Mono<Void> sendPrivateMessage(Target target, String content) {
+        return requestSend(target, content)
+            .doOnNext(response -> {
+                if (response instanceof MessageSent sent) {
+                    LOG.debug("Message saved: {}", sent.message().messageId());
+                    broadcastToConversation(target.conversationId(), sent.message());
+                    deliveredIfViewing(target.conversationId(), sent.message());
+                    reply(target, new WireEvent.MessageSent(sent.message().messageId()));
+                } else {
+                    reply(target, new ErrorMessage("Failed to send message"));
+                }
+            })
+            .then();
+    }
+
+    /**
+     * Sends the messages of a batch pipelined: every request goes out at once
+     * (and the SendBatcher groups them), but the results are handled in batch
+     * order, broadcast in that order and acknowledged with a single
+     * "batch_ack" frame. An invalid or failed item does not stop the rest.
+     * The recipient's delivered watermark moves once, with the last message
+     * sent in the batch.
+     *
+     * Each message takes a permit from the user's rate limit: the frame's own
+     * (already taken by the endpoint) covers the first and the rest come from
+     * the batch quota, which admits a full batch without waiting. Those that
+     * do not get theirs fail with "Rate limit exceeded" without being sent.
+     */
+    private Mono<Void> sendBatch(Target target, List<BatchItem> items) {
+        if (items.isEmpty() || items.size() > WireCodec.MAX_BATCH_SIZE) {
+            reply(target, new ErrorMessage("A batch must carry between 1 and " + WireCodec.MAX_BATCH_SIZE + " messages"));
+            return Mono.empty();
+        }
+        int permitted = 1 + rateLimiterService.tryAcquireBatch(target.userId(), items.size() - 1);
+        List<Mono<ConversationManagerResponse>> sends = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            sends.add(i < permitted
+                ? sendBatchItem(target, items.get(i))
+                : Mono.just(new ErrorResponse("Rate limit exceeded")));
+        }
+        PrivateMessage[] lastSent = new PrivateMessage[1];
+        return Flux.zip(Flux.fromIterable(items), Flux.mergeSequential(sends))
+            .map(sent -> {
+                if (sent.getT2() instanceof MessageSent messageSent) {
+                    lastSent[0] = messageSent.message();
+                }
+                return batchResult(target, sent.getT1(), sent.getT2());
+            })
+            .collectList()
+            .doOnNext(results -> {
+                reply(target, new BatchAck(results));
+                if (lastSent[0] != null) {
+                    deliveredIfViewing(target.conversationId(), lastSent[0]);
+                }
+            })
+            .then();
+    }
+
+    private Mono<ConversationManagerResponse> sendBatchItem(Target target, BatchItem item) {
+        if (item.correlationId().length() > WireCodec.MAX_CORRELATION_ID_LENGTH) {
+            return Mono.just(new ErrorResponse(
+                "Correlation id too long (max " + WireCodec.MAX_CORRELATION_ID_LENGTH + " characters)"));
+        }
+        try {
+            String content = validateContent(item.content());
+            return requestSend(target, content)
+                .onErrorReturn(new ErrorResponse("Failed to send message"));
+        } catch (IllegalArgumentException e) {
+            return Mono.just(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    private BatchResult batchResult(Target target, BatchItem item, ConversationManagerResponse response) {
+        if (response instanceof MessageSent sent) {
+            broadcastToConversation(target.conversationId(), sent.message());
+            return BatchResult.sent(item.correlationId(), sent.message().messageId());
+        }
+        return BatchResult.failed(item.correlationId(),
+            response instanceof ErrorResponse error ? error.message() : "Failed to send message");
+    }
+
+    /**
+     * No ask: the send carries a correlation id and the reply comes back to the
+     * node's reply adapter, which completes the Mono.
+     */
+    private Mono<ConversationManagerResponse> requestSend(Target target, String content) {
+        return request(target.conversationId(), (correlationId, replyTo) -> actorSystemProvider.getSendBatcher(target.conversationId()).tell(
+            new Enqueue(new SendPrivateMessage(
+                target.userId(),
+                target.otherUserId(),
+                content,
+                correlationId,
+                replyTo
+            ))));
+    }
+
+    /**
+     * Sends a correlated command through the reply adapter of the
+     * conversation's shard. Replies complete on the adapter's thread in the
+     * order the shard sent them, and what follows them (history cache,
+     * broadcasts) runs on the lane of the conversation: a single worker, so
+     * the messages of one conversation are cached and broadcast in seq order.
+     */
+    private Mono<ConversationManagerResponse> request(String conversationId, Dispatch<ConversationManagerResponse> dispatch) {
+        return Mono.<ConversationManagerResponse>create(sink ->
+            actorSystemProvider.getConversationReplies(conversationId).tell(new Request<>(
+                dispatch,
+                (response, error) -> {
+                    if (error == null) {
+                        sink.success(response);
+                    } else {
+                        sink.error(error);
+                    }
+                },
+                DEFAULT_TIMEOUT.toMillis()
+            ))
+        )
+        .publishOn(replyLanes[Math.floorMod(conversationId.hashCode(), replyLanes.length)]);
+    }
+
+    /** Broadcasts the message to the conversation's sessions. */
+    private void broadcastToConversation(String conversationId, PrivateMessage message) {
+        historyCache.append(conversationId, message);
+        try {
+            // JSON is encoded only once for all the sessions of the conversation
+            frameBroadcaster.broadcast(sessionRegistry.sessionsFor(conversationId), new WireEvent.Message(message));
+        } catch (Exception e) {
+            LOG.error("Error broadcasting message", e);
+        }
+    }
+
+    /**
+     * If any session of the recipient has the conversation open, the
+     * message (and everything before it) is delivered; otherwise it stays
+     * pending until they connect.
+     */
+    private void deliveredIfViewing(String conversationId, PrivateMessage message) {
+        if (sessionRegistry.isViewing(conversationId, message.recipientId())) {
+            delivered(conversationId, message.recipientId(), message.seq());
+        }
+    }
+
+    /**
+     * Records that the user already has the messages up to {@code seq} (-1: none).
+     * The watermark does not move per message: the first record for each
+     * (conversation, user) schedules a single send to the shard after
+     * DELIVERED_TICK with the highest seq recorded by then.
+     */
+    private void delivered(String conversationId, String userId, long seq) {
+        if (seq < 0) {
+            return;
+        }
+        DeliveredKey key = new DeliveredKey(conversationId, userId);
+        boolean[] first = new boolean[1];
+        deliveredPending.compute(key, (k, highest) -> {
+            first[0] = highest == null;
+            return highest == null ? seq : Math.max(highest, seq);
+        });
+        if (first[0]) {
+            Schedulers.parallel().schedule(() -> flushDelivered(key), DELIVERED_TICK.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushDelivered(DeliveredKey key) {
+        Long seq = deliveredPending.remove(key);
+        if (seq == null) {
+            return;
+        }
+        advanceDelivered(key.conversationId(), key.userId(), seq).subscribe(
+            null,
+            error -> LOG.warn("Could not mark {} delivered up to {}", key.conversationId(), seq, error)
+        );
+    }
+
+    /**
+     * Moves the delivered watermark of each conversation of a written
+     * "pending" frame up to its last message in the frame. Completes once
+     * the shards have applied them, so the next query does not return the
+     * same messages.
+     */
+    private Mono<Void> markPendingDelivered(String userId, List<PrivateMessage> messages) {
+        Map<String, Long> upTo = new LinkedHashMap<>();
+        for (PrivateMessage message : messages) {
+            upTo.merge(Conversation.idFor(message.senderId(), message.recipientId()), message.seq(), Math::max);
+        }
+        return Flux.fromIterable(upTo.entrySet())
+            .flatMap(entry -> advanceDelivered(entry.getKey(), userId, entry.getValue()))
+            .then();
+    }
+
+    /** Advances the watermark without a journal commit of its own, and broadcasts it if it moved. */
+    private Mono<ConversationManagerResponse> advanceDelivered(String conversationId, String userId, long seq) {
+        return request(conversationId, (correlationId, replyTo) -> actorSystemProvider.getConversationManagerActor().tell(
+                new AdvanceDeliveredUpTo(conversationId, userId, seq, correlationId, replyTo)))
+            .doOnNext(response -> {
+                if (response instanceof ReceiptsUpdated receipts) {
+                    receiptsMoved(receipts);
+                }
+            });
+    }
+
+    /** Moves the delivered or read watermark and, if it moved, updates the cache and broadcasts it. */
+    private Mono<ConversationManagerResponse> moveReceipts(String conversationId, String userId, long seq, boolean read) {
+        return askConversations(replyTo -> read
+                ? new MarkReadUpTo(conversationId, userId, seq, replyTo)
+                : new MarkDeliveredUpTo(conversationId, userId, seq, replyTo))
+            .doOnNext(response -> {
+                if (response instanceof ReceiptsUpdated receipts) {
+                    receiptsMoved(receipts);
+                }
+            });
+    }
+
+    private void receiptsMoved(ReceiptsUpdated receipts) {
+        historyCache.applyReceipts(receipts.conversationId(), receipts.userId(),
+            receipts.deliveredUpTo(), receipts.readUpTo());
+        broadcastReceipts(receipts);
+    }
+
+    private void broadcastReceipts(ReceiptsUpdated receipts) {
+        try {
+            // Only the latest watermark of each participant matters
+            frameBroadcaster.broadcast(sessionRegistry.sessionsFor(receipts.conversationId()),
+                new Receipts(receipts.conversationId(), receipts.userId(), receipts.deliveredUpTo(), receipts.readUpTo()),
+                FrameKind.COALESCABLE, "receipts:" + receipts.conversationId() + ":" + receipts.userId());
+        } catch (Exception e) {
+            LOG.error("Error broadcasting watermarks of {}", receipts.conversationId(), e);
+        }
+    }
+
+    /**
+     * A session acting on one of its user's conversations. On the multiplexed
+     * socket ({@code scoped}) replies are wrapped in {@link WireEvent.Scoped}.
+     */
+    public record Target(LiveSession live, String userId, String otherUserId, String conversationId, boolean scoped) {}
+
+    private record DeliveredKey(String conversationId, String userId) {}
+}
@@ -0,0 +1,90 @@
+package com.beepit.server.websocket;
+
+import jakarta.inject.Singleton;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of outbound WebSocket frames. Writes are asynchronous, so failed
+ * deliveries are counted here (and logged at debug) instead of surfacing on
+ * the thread that queued them. Slow-consumer outcomes (drops, coalescing,
+ * disconnects) are counted here too; per-session figures live in each
+ * {@link OutboundQueue}.
+ *
+ * Fan-outs through a {@link FanOutPlan} also record latencies: per recipient,
+ * from the start of the fan-out until its frame was handed to its channel, and
+ * per fan-out, until the last shard finished. The snapshot reports their
+ * percentiles in microseconds.
+ */
+@Singleton
+public class DeliveryMetrics {
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LatencyHistogram fanOutDelivery = new LatencyHistogram();
+    private final LatencyHistogram fanOutCompletion = new LatencyHistogram();
+
+    void delivered() {
+        delivered.increment();
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    /** Frame not written because the session was already closed. */
+    void skipped() {
+        skipped.increment();
+    }
+
+    /** Non-essential frame discarded because its session was too far behind. */
+    void dropped() {
+        dropped.increment();
+    }
+
+    /** Queued frame replaced by a newer one with the same key. */
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    /** Session closed because it could not keep up. */
+    void disconnected() {
+        disconnected.increment();
+    }
+
+    /** Per-recipient fan-out latency histogram, recorded in runs by the delivering shard. */
+    LatencyHistogram fanOutDelivery() {
+        return fanOutDelivery;
+    }
+
+    /** A fan-out finished: every shard handed its frames to the channels. */
+    void fanOutCompleted(long nanos) {
+        fanOutCompletion.record(nanos);
+    }
+
+    public Map<String, Long> snapshot() {
+        return Map.ofEntries(
+            Map.entry("delivered", delivered.sum()),
+            Map.entry("failed", failed.sum()),
+            Map.entry("skipped", skipped.sum()),
+            Map.entry("dropped", dropped.sum()),
+            Map.entry("coalesced", coalesced.sum()),
+            Map.entry("slowConsumerDisconnects", disconnected.sum()),
+            Map.entry("fanOuts", fanOutCompletion.count()),
+            Map.entry("fanOutRecipients", fanOutDelivery.count()),
+            Map.entry("fanOutDeliveryP50Micros", micros(fanOutDelivery.percentile(0.50))),
+            Map.entry("fanOutDeliveryP99Micros", micros(fanOutDelivery.percentile(0.99))),
+            Map.entry("fanOutDeliveryMaxMicros", micros(fanOutDelivery.max())),
+            Map.entry("fanOutCompletionP99Micros", micros(fanOutCompletion.percentile(0.99)))
+        );
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1_000;
+    }
+}
@@ -0,0 +1,42 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recipients of a fan-out grouped by the Netty event loop of their channel,
+ * for {@link FrameBroadcaster#broadcast(FanOutPlan, WireEvent)}. Each shard is
+ * delivered by one task on its loop, so every frame is queued and written from
+ * the channel's own thread (no task hand-off per write) and the loops deliver
+ * their shards in parallel. Sessions without a Netty channel form a shard
+ * delivered on the calling thread.
+ *
+ * Grouping costs a pass over the recipients: build a plan once per recipient
+ * set and reuse it while the set does not change.
+ *
+ * @param needsJson whether any recipient uses a shared (JSON) frame
+ */
+public record FanOutPlan(List<Shard> shards, int size, boolean needsJson) {
+
+    public static FanOutPlan of(Collection<LiveSession> recipients) {
+        Map<EventExecutor, List<LiveSession>> byLoop = new LinkedHashMap<>();
+        boolean needsJson = false;
+        for (LiveSession recipient : recipients) {
+            EventExecutor loop = recipient.channel() == null ? null : recipient.channel().eventLoop();
+            byLoop.computeIfAbsent(loop, key -> new ArrayList<>()).add(recipient);
+            needsJson |= !recipient.codec().isConnectionScoped();
+        }
+        List<Shard> shards = new ArrayList<>(byLoop.size());
+        byLoop.forEach((loop, sessions) -> shards.add(new Shard(loop, List.copyOf(sessions))));
+        return new FanOutPlan(List.copyOf(shards), recipients.size(), needsJson);
+    }
+
+    /** @param executor event loop of every session's channel, null for sessions without one */
+    public record Shard(EventExecutor executor, List<LiveSession> sessions) {}
+}
@@ -0,0 +1,87 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.PrivateMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An event carrying a list of messages (history, delta), encoded one fragment
+ * at a time: a prefix, the messages, then a suffix. Each fragment is filled
+ * until it reaches the fragment size, so however long the list is, only the
+ * fragment being written is held encoded. The fragments concatenated are the
+ * frame {@link WireCodec#encode} produces; they go out as one WebSocket
+ * message (a first frame and continuation frames).
+ *
+ * Not thread-safe: it is advanced by the session's {@link OutboundQueue}.
+ */
+public final class FragmentedEvent {
+
+    /** Writes the fixed part before or after the messages. */
+    @FunctionalInterface
+    public interface Part {
+        void write(ByteBuf out) throws IOException;
+    }
+
+    /** Writes one message, {@code index} being its position in the list. */
+    @FunctionalInterface
+    public interface Element {
+        void write(ByteBuf out, PrivateMessage message, int index) throws IOException;
+    }
+
+    private final Part prefix;
+    private final List<PrivateMessage> messages;
+    private final Element element;
+    private final Part suffix;
+    private final int fragmentSize;
+    // -1 until the prefix is written
+    private int next = -1;
+    private boolean done;
+
+    public FragmentedEvent(Part prefix, List<PrivateMessage> messages, Element element, Part suffix, int fragmentSize) {
+        if (fragmentSize <= 0) {
+            throw new IllegalArgumentException("Fragment size must be positive");
+        }
+        this.prefix = prefix;
+        this.messages = messages;
+        this.element = element;
+        this.suffix = suffix;
+        this.fragmentSize = fragmentSize;
+    }
+
+    public boolean hasNext() {
+        return !done;
+    }
+
+    /**
+     * Encodes the next fragment into a new buffer owned by the caller. A
+     * fragment holds at least one message, so it can exceed the fragment size
+     * by up to one message.
+     */
+    public ByteBuf next(ByteBufAllocator allocator) throws IOException {
+        if (done) {
+            throw new IllegalStateException("No fragments left");
+        }
+        ByteBuf out = allocator.buffer(fragmentSize);
+        try {
+            if (next < 0) {
+                prefix.write(out);
+                next = 0;
+            }
+            while (next < messages.size() && out.readableBytes() < fragmentSize) {
+                element.write(out, messages.get(next), next);
+                next++;
+            }
+            if (next == messages.size()) {
+                suffix.write(out);
+                done = true;
+            }
+            return out;
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+}
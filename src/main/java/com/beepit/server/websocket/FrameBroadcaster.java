@@ -0,0 +1,187 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import io.micronaut.serde.ObjectMapper;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.WriteBufferWaterMark;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Writes outbound events to sessions without blocking the calling thread:
+ * frames go through each session's {@link OutboundQueue}, are written on the
+ * channel's event loop and the outcome is recorded in {@link DeliveryMetrics}.
+ *
+ * Each session speaks the subprotocol it negotiated ({@link JsonWireCodec} by
+ * default, {@link BinaryWireCodec} on request). For fan-out a JSON event is
+ * serialized once into a pooled, read-only buffer and every JSON recipient
+ * gets a retained duplicate of it, so neither the JSON nor its UTF-8 bytes
+ * are produced per recipient. The buffer goes back to the pool when the last
+ * write completes (or the last queue drops it). Binary sessions intern
+ * strings per connection, so their frames are encoded per recipient, by its
+ * queue.
+ */
+@Singleton
+public class FrameBroadcaster {
+
+    private final JsonWireCodec json;
+    private final DeliveryMetrics metrics;
+    private final OutboundConfiguration outbound;
+
+    public FrameBroadcaster(ObjectMapper objectMapper, DeliveryMetrics metrics, OutboundConfiguration outbound) {
+        this.json = new JsonWireCodec(objectMapper);
+        this.metrics = metrics;
+        this.outbound = outbound;
+    }
+
+    /**
+     * Sets up the outbound side of a new session: picks the codec of its
+     * subprotocol, bounds the channel buffer with the configured water marks
+     * and creates its queue.
+     */
+    public LiveSession open(WebSocketSession session, Channel channel) {
+        WireCodec codec = session.getSubprotocol().filter(BinaryWireCodec.SUBPROTOCOL::equals).isPresent()
+            ? new BinaryWireCodec()
+            : json;
+        if (channel != null) {
+            channel.config().setWriteBufferWaterMark(
+                new WriteBufferWaterMark(outbound.getWriteBufferLow(), outbound.getWriteBufferHigh()));
+        }
+        return new LiveSession(session, channel,
+            new OutboundQueue(session, channel, codec, outbound, metrics), codec);
+    }
+
+    public void broadcast(Collection<LiveSession> recipients, WireEvent event) throws IOException {
+        broadcast(recipients, event, FrameKind.ESSENTIAL, null);
+    }
+
+    /**
+     * Fans an event out to every recipient.
+     *
+     * @param coalesceKey for {@link FrameKind#COALESCABLE} events, the key under
+     *                    which a slow session keeps only the latest one
+     */
+    public void broadcast(Collection<LiveSession> recipients, WireEvent event,
+                          FrameKind kind, String coalesceKey) throws IOException {
+        ByteBuf shared = null;
+        try {
+            for (LiveSession recipient : recipients) {
+                if (recipient.codec().isConnectionScoped()) {
+                    recipient.outbound().offer(event, kind, coalesceKey);
+                } else {
+                    if (shared == null) {
+                        shared = json.encode(event, ByteBufAllocator.DEFAULT, kind).asReadOnly();
+                    }
+                    recipient.outbound().offer(shared.retainedDuplicate(), kind, coalesceKey);
+                }
+            }
+        } finally {
+            if (shared != null) {
+                shared.release();
+            }
+        }
+    }
+
+    /**
+     * Fans an event out along a {@link FanOutPlan}: each shard of recipients is
+     * delivered by one task on its channels' event loop (inline when the
+     * caller already is that loop), so a room with thousands of members is
+     * spread over every loop instead of being offered one session after
+     * another on the calling thread, and each channel is written from its own
+     * loop. The JSON frame is encoded once; each shard holds a reference to it
+     * until done. Latencies go to {@link DeliveryMetrics}.
+     */
+    public void broadcast(FanOutPlan plan, WireEvent event) throws IOException {
+        long start = System.nanoTime();
+        ByteBuf shared = plan.needsJson()
+            ? json.encode(event, ByteBufAllocator.DEFAULT, FrameKind.ESSENTIAL).asReadOnly()
+            : null;
+        AtomicInteger remaining = new AtomicInteger(plan.shards().size());
+        try {
+            for (FanOutPlan.Shard shard : plan.shards()) {
+                ByteBuf frame = shared == null ? null : shared.retain();
+                Runnable task = () -> deliver(shard, event, frame, start, remaining);
+                if (shard.executor() == null || shard.executor().inEventLoop()) {
+                    task.run();
+                } else {
+                    try {
+                        shard.executor().execute(task);
+                    } catch (RejectedExecutionException e) {
+                        // Event loop shutting down: its channels no longer accept writes
+                        task.run();
+                    }
+                }
+            }
+        } finally {
+            if (shared != null) {
+                shared.release();
+            }
+        }
+    }
+
+    private void deliver(FanOutPlan.Shard shard, WireEvent event, ByteBuf shared,
+                         long start, AtomicInteger remaining) {
+        LatencyHistogram latencies = metrics.fanOutDelivery();
+        // Consecutive latencies of the same bucket are recorded together
+        int bucket = -1;
+        long run = 0;
+        long largest = 0;
+        try {
+            for (LiveSession recipient : shard.sessions()) {
+                if (recipient.codec().isConnectionScoped()) {
+                    recipient.outbound().offer(event, FrameKind.ESSENTIAL, null);
+                } else {
+                    recipient.outbound().offer(shared.retainedDuplicate(), FrameKind.ESSENTIAL, null);
+                }
+                long latency = System.nanoTime() - start;
+                int current = LatencyHistogram.bucketOf(latency);
+                if (current != bucket && run > 0) {
+                    latencies.record(bucket, run, largest);
+                    run = 0;
+                }
+                bucket = current;
+                run++;
+                largest = latency;
+            }
+        } finally {
+            if (run > 0) {
+                latencies.record(bucket, run, largest);
+            }
+            if (shared != null) {
+                shared.release();
+            }
+            if (remaining.decrementAndGet() == 0) {
+                metrics.fanOutCompleted(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Sends an event to one session. It is encoded when written, history and
+     * deltas in fragments.
+     */
+    public void send(LiveSession recipient, WireEvent event) {
+        recipient.outbound().offer(event, FrameKind.ESSENTIAL, null);
+    }
+
+    /**
+     * Sends an event to one session and tells {@code outcome} whether the
+     * transport wrote it (see {@link OutboundQueue}).
+     */
+    public void send(LiveSession recipient, WireEvent event, Consumer<Boolean> outcome) {
+        recipient.outbound().offer(event, FrameKind.ESSENTIAL, null, outcome);
+    }
+
+    /** Sends an already encoded frame to one session, which takes ownership of the buffer. */
+    public void send(LiveSession recipient, ByteBuf frame) {
+        recipient.outbound().offer(frame, FrameKind.ESSENTIAL, null);
+    }
+}
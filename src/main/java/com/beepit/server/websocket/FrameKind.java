@@ -0,0 +1,13 @@
+package com.beepit.server.websocket;
+
+/**
+ * How an outbound frame may be treated when its session falls behind.
+ */
+public enum FrameKind {
+    /** Messages and history: never dropped, the session is closed instead. */
+    ESSENTIAL,
+    /** Transient state (typing, presence): only the latest per key matters. */
+    COALESCABLE,
+    /** Anything the client can live without. */
+    DROPPABLE
+}
@@ -0,0 +1,314 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.websocket.WireEvent.History;
+import io.micronaut.serde.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Latest history page of recently opened conversations, so that the user's
+ * other devices and reconnects get it without asking the conversation actor,
+ * and JSON sessions without encoding it again.
+ *
+ * Every page is versioned by the seq of its last message. New messages sent
+ * through this node are appended when their seq follows it (anything else
+ * drops the entry) and receipts update the flags of the cached messages. A
+ * page read from the actor is only cached if nothing touched its conversation
+ * while the read was in flight, which {@link #stamp} detects.
+ *
+ * JSON frames are encoded once per page into a pooled read-only buffer and
+ * sent as retained duplicates, like a fan-out. Binary sessions intern strings
+ * per connection, so they only skip the ask. Entries are evicted least
+ * recently opened first once their estimated size passes {@code maxBytes}.
+ *
+ * Entries live in a concurrent map and each one is replaced atomically
+ * within its bin, so sends and receipts of different conversations do not
+ * contend. Only eviction takes a lock; a writer that finds it held leaves
+ * the eviction to its holder.
+ */
+@Singleton
+public class HistoryCache {
+
+    private static final int STRIPES = 256;
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int MESSAGE_OVERHEAD = 160;
+
+    private final HistoryCacheConfiguration config;
+    private final JsonWireCodec json;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Changes per stripe of conversations: they invalidate the reads in flight
+    private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+    // Orders the entries by last use, for eviction
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public HistoryCache(HistoryCacheConfiguration config, ObjectMapper objectMapper) {
+        this.config = config;
+        this.json = new JsonWireCodec(objectMapper);
+    }
+
+    /** The cached page of a conversation, or null. */
+    public Page get(String conversationId) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(conversationId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastUsed = clock.incrementAndGet();
+        return entry.page;
+    }
+
+    /** Read before asking the actor for a page, and handed back to {@link #put}. */
+    public long stamp(String conversationId) {
+        return stamps.get(stripe(conversationId));
+    }
+
+    /**
+     * Caches the latest page read from the conversation actor, unless the
+     * conversation changed after {@code stamp} was read. Returns the page to send.
+     *
+     * @param limit page size, kept when new messages are appended
+     */
+    public Page put(String conversationId, List<PrivateMessage> messages, Long nextCursor, int limit, long stamp) {
+        Page page = new Page(List.copyOf(messages), nextCursor);
+        if (config.isEnabled()) {
+            entries.compute(conversationId, (id, entry) -> stamps.get(stripe(id)) == stamp
+                ? replace(entry, new Entry(page, limit))
+                : entry);
+            evict();
+        }
+        return page;
+    }
+
+    /** A message was sent in the conversation. */
+    public void append(String conversationId, PrivateMessage message) {
+        entries.compute(conversationId, (id, entry) -> {
+            stamps.incrementAndGet(stripe(id));
+            if (entry == null || message.seq() <= entry.page.lastSeq()) {
+                return entry;
+            }
+            if (message.seq() == entry.page.lastSeq() + 1) {
+                return replace(entry, new Entry(entry.page.append(message, entry.limit), entry.limit));
+            }
+            // Out of order: a message in between is missing
+            return replace(entry, null);
+        });
+        evict();
+    }
+
+    /** The delivered / read watermarks of a participant moved. */
+    public void applyReceipts(String conversationId, String userId, long deliveredUpTo, long readUpTo) {
+        entries.computeIfPresent(conversationId, (id, entry) -> {
+            stamps.incrementAndGet(stripe(id));
+            Page updated = entry.page.withReceipts(userId, deliveredUpTo, readUpTo);
+            return updated == entry.page ? entry : replace(entry, new Entry(updated, entry.limit));
+        });
+        evict();
+    }
+
+    /**
+     * The JSON {@code history} frame of a cached page, as a retained duplicate
+     * owned by the caller; encoded on first use. Returns null if the page is
+     * no longer the cached one.
+     *
+     * @param scoped whether the frame carries its conversation id ({@code /ws/user})
+     */
+    public ByteBuf jsonFrame(String conversationId, Page page, boolean scoped) throws IOException {
+        int variant = scoped ? 1 : 0;
+        // Retained within the bin, so that a concurrent replacement cannot release it first
+        ByteBuf[] cached = new ByteBuf[1];
+        boolean[] current = new boolean[1];
+        entries.computeIfPresent(conversationId, (id, entry) -> {
+            if (entry.page == page) {
+                current[0] = true;
+                if (entry.frames[variant] != null) {
+                    cached[0] = entry.frames[variant].retainedDuplicate();
+                }
+            }
+            return entry;
+        });
+        if (!current[0] || cached[0] != null) {
+            return cached[0];
+        }
+        // Encoded outside the bin; two concurrent opens just encode twice
+        WireEvent history = new History(false, page.messages(), page.nextCursor());
+        ByteBuf frame = json.encode(scoped ? new WireEvent.Scoped(conversationId, history) : history,
+            ByteBufAllocator.DEFAULT, FrameKind.ESSENTIAL).asReadOnly();
+        ByteBuf[] duplicate = new ByteBuf[1];
+        entries.computeIfPresent(conversationId, (id, entry) -> {
+            if (entry.page == page && entry.frames[variant] == null) {
+                entry.frames[variant] = frame;
+                entry.weight += frame.readableBytes();
+                totalBytes.addAndGet(frame.readableBytes());
+                duplicate[0] = frame.retainedDuplicate();
+            }
+            return entry;
+        });
+        if (duplicate[0] == null) {
+            return frame;
+        }
+        evict();
+        return duplicate[0];
+    }
+
+    /** Cached conversations, their estimated size and hit counts. */
+    public Map<String, Long> stats() {
+        return Map.of(
+            "entries", (long) entries.size(),
+            "bytes", totalBytes.get(),
+            "hits", hits.sum(),
+            "misses", misses.sum()
+        );
+    }
+
+    /** Accounts for an entry replacing another within its bin; either may be null. */
+    private Entry replace(Entry previous, Entry entry) {
+        long weight = entry == null ? 0 : entry.weight;
+        if (previous != null) {
+            weight -= previous.weight;
+            previous.release();
+        }
+        totalBytes.addAndGet(weight);
+        if (entry != null) {
+            entry.lastUsed = clock.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Past {@code maxBytes}, drops the least recently used entries until
+     * 10% under it, so that a full cache does not sort on every write.
+     */
+    private void evict() {
+        long maxBytes = config.getMaxBytes();
+        if (totalBytes.get() <= maxBytes || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Candidate> candidates = new ArrayList<>(entries.size());
+            entries.forEach((conversationId, entry) ->
+                candidates.add(new Candidate(conversationId, entry, entry.lastUsed)));
+            candidates.sort(Comparator.comparingLong(Candidate::lastUsed));
+            long target = maxBytes - maxBytes / 10;
+            for (Candidate candidate : candidates) {
+                if (totalBytes.get() <= target) {
+                    break;
+                }
+                entries.computeIfPresent(candidate.conversationId(),
+                    (id, entry) -> entry == candidate.entry() ? replace(entry, null) : entry);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static int stripe(String conversationId) {
+        return Math.floorMod(conversationId.hashCode(), STRIPES);
+    }
+
+    /**
+     * The latest messages of a conversation, oldest first.
+     *
+     * @param nextCursor seq of the first message, null when it is the first of the conversation
+     */
+    public record Page(List<PrivateMessage> messages, Long nextCursor) {
+
+        /** Seq of the last message, -1 for an empty conversation. */
+        public long lastSeq() {
+            return messages.isEmpty() ? -1 : messages.getLast().seq();
+        }
+
+        /**
+         * Messages after {@code lastSeq}, or null when the page does not go
+         * back that far (or {@code lastSeq} is ahead of it).
+         */
+        public List<PrivateMessage> since(long lastSeq) {
+            long firstSeq = nextCursor == null ? 0 : nextCursor;
+            if (lastSeq + 1 < firstSeq || lastSeq > lastSeq()) {
+                return null;
+            }
+            return messages.subList((int) (lastSeq + 1 - firstSeq), messages.size());
+        }
+
+        private Page append(PrivateMessage message, int limit) {
+            List<PrivateMessage> appended = new ArrayList<>(messages.size() + 1);
+            appended.addAll(messages);
+            appended.add(message);
+            List<PrivateMessage> kept = appended.subList(Math.max(0, appended.size() - limit), appended.size());
+            long firstSeq = kept.getFirst().seq();
+            return new Page(List.copyOf(kept), firstSeq > 0 ? firstSeq : null);
+        }
+
+        /** Same rule as the conversation: messages to the user below its watermarks. Watermarks only move up. */
+        private Page withReceipts(String userId, long deliveredUpTo, long readUpTo) {
+            List<PrivateMessage> updated = null;
+            for (int i = 0; i < messages.size(); i++) {
+                PrivateMessage message = messages.get(i);
+                if (!message.recipientId().equals(userId)) {
+                    continue;
+                }
+                boolean delivered = message.delivered() || message.seq() < deliveredUpTo;
+                boolean read = message.read() || message.seq() < readUpTo;
+                if (delivered != message.delivered() || read != message.read()) {
+                    if (updated == null) {
+                        updated = new ArrayList<>(messages);
+                    }
+                    updated.set(i, new PrivateMessage(message.messageId(), message.seq(), message.senderId(),
+                        message.recipientId(), message.content(), message.timestamp(), delivered, read));
+                }
+            }
+            return updated == null ? this : new Page(List.copyOf(updated), nextCursor);
+        }
+    }
+
+    private record Candidate(String conversationId, Entry entry, long lastUsed) {}
+
+    private static final class Entry {
+        private final Page page;
+        private final int limit;
+        // Changed only within the entry's bin
+        private long weight;
+        private volatile long lastUsed;
+        // JSON frames: [0] /ws/chat, [1] /ws/user (with conversationId)
+        private final ByteBuf[] frames = new ByteBuf[2];
+
+        private Entry(Page page, int limit) {
+            this.page = page;
+            this.limit = limit;
+            long weight = ENTRY_OVERHEAD;
+            for (PrivateMessage message : page.messages()) {
+                weight += MESSAGE_OVERHEAD + 2L * message.content().length();
+            }
+            this.weight = weight;
+        }
+
+        private void release() {
+            for (ByteBuf frame : frames) {
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/**
+ * Recent-history cache settings ({@code beepit.websocket.history-cache.*}).
+ *
+ * The cache keeps the latest history page of each conversation opened
+ * recently and its encoded JSON frames, evicting the least recently opened
+ * conversations once the estimated size passes {@code maxBytes}.
+ */
+@ConfigurationProperties("beepit.websocket.history-cache")
+public class HistoryCacheConfiguration {
+
+    private boolean enabled = true;
+    private long maxBytes = 32L * 1024 * 1024;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+}
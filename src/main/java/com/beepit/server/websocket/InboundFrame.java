@@ -0,0 +1,26 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.serde.annotation.Serdeable;
+
+import java.util.List;
+
+/**
+ * A client JSON frame as read by {@link JsonWireCodec}: every field any
+ * command uses, deserialized straight from the frame bytes instead of into a
+ * {@code Map} of boxed values. Fields the frame does not carry are null.
+ */
+@Serdeable
+public record InboundFrame(
+    String type,
+    String conversationId,
+    String content,
+    Long before,
+    Long lastSeq,
+    Long seq,
+    List<Item> messages
+) {
+
+    /** One message of a {@code send_batch} frame. */
+    @Serdeable
+    public record Item(String correlationId, String content) {}
+}
@@ -0,0 +1,275 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.domain.model.MessageType;
+import com.beepit.server.websocket.WireCommand.BatchItem;
+import com.beepit.server.websocket.WireCommand.LoadMore;
+import com.beepit.server.websocket.WireCommand.MarkDelivered;
+import com.beepit.server.websocket.WireCommand.MarkRead;
+import com.beepit.server.websocket.WireCommand.Resume;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireCommand.SendBatch;
+import com.beepit.server.websocket.WireCommand.Subscribe;
+import com.beepit.server.websocket.WireCommand.Unsubscribe;
+import com.beepit.server.websocket.WireEvent.BatchAck;
+import com.beepit.server.websocket.WireEvent.BatchResult;
+import com.beepit.server.websocket.WireEvent.Delta;
+import com.beepit.server.websocket.WireEvent.ErrorMessage;
+import com.beepit.server.websocket.WireEvent.History;
+import com.beepit.server.websocket.WireEvent.Message;
+import com.beepit.server.websocket.WireEvent.MessageSent;
+import com.beepit.server.websocket.WireEvent.Pending;
+import com.beepit.server.websocket.WireEvent.Presence;
+import com.beepit.server.websocket.WireEvent.Receipts;
+import com.beepit.server.websocket.WireEvent.ResyncRequired;
+import com.beepit.server.websocket.WireEvent.RoomJoined;
+import com.beepit.server.websocket.WireEvent.RoomMessage;
+import com.beepit.server.websocket.WireEvent.Scoped;
+import io.micronaut.serde.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default text protocol: one JSON object per frame, keyed by {@code type}.
+ * It keeps no per-connection state, so one instance serves every session.
+ */
+public class JsonWireCodec implements WireCodec {
+
+    public static final String SUBPROTOCOL = "beepit.json";
+
+    private final ObjectMapper objectMapper;
+
+    public JsonWireCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public boolean isConnectionScoped() {
+        return false;
+    }
+
+    @Override
+    public ByteBuf encode(WireEvent event, ByteBufAllocator allocator, FrameKind kind) throws IOException {
+        ByteBuf buffer = allocator.buffer();
+        try {
+            objectMapper.writeValue(new ByteBufOutputStream(buffer), toJson(event));
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the frame's other fields first, then opens the {@code messages}
+     * array and serializes one message at a time into it.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public FragmentedEvent fragment(WireEvent event, FrameKind kind, int fragmentSize) {
+        List<PrivateMessage> messages = messagesOf(event);
+        if (messages == null) {
+            return null;
+        }
+        Map<String, Object> header = new HashMap<>((Map<String, Object>) toJson(event));
+        header.remove("messages");
+        return new FragmentedEvent(
+            out -> {
+                objectMapper.writeValue(new ByteBufOutputStream(out), header);
+                // The object is reopened by removing its final '}'
+                out.writerIndex(out.writerIndex() - 1);
+                out.writeCharSequence(",\"messages\":[", StandardCharsets.UTF_8);
+            },
+            messages,
+            (out, message, index) -> {
+                if (index > 0) {
+                    out.writeByte(',');
+                }
+                objectMapper.writeValue(new ByteBufOutputStream(out), message);
+            },
+            out -> out.writeCharSequence("]}", StandardCharsets.UTF_8),
+            fragmentSize);
+    }
+
+    private static List<PrivateMessage> messagesOf(WireEvent event) {
+        return switch (event) {
+            case History history -> history.messages();
+            case Delta delta -> delta.messages();
+            case Pending pending -> pending.messages();
+            case Scoped scoped -> messagesOf(scoped.event());
+            default -> null;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toJson(WireEvent event) {
+        return switch (event) {
+            case Message message -> messageJson(message.message());
+            case History history -> {
+                // HashMap: nextCursor is null on the last page
+                Map<String, Object> frame = new HashMap<>();
+                frame.put("type", history.page() ? "history_page" : "history");
+                frame.put("messages", history.messages());
+                frame.put("nextCursor", history.nextCursor());
+                yield frame;
+            }
+            case Delta delta -> Map.of(
+                "type", "delta",
+                "messages", delta.messages(),
+                "nextSeq", delta.nextSeq()
+            );
+            case Pending pending -> Map.of(
+                "type", "pending",
+                "messages", pending.messages()
+            );
+            case ResyncRequired resync -> Map.of(
+                "type", "resync_required",
+                "nextSeq", resync.nextSeq()
+            );
+            case Receipts receipts -> Map.of(
+                "type", "receipts",
+                "conversationId", receipts.conversationId(),
+                "userId", receipts.userId(),
+                "deliveredUpTo", receipts.deliveredUpTo(),
+                "readUpTo", receipts.readUpTo()
+            );
+            case Presence presence -> Map.of(
+                "type", "presence",
+                "userId", presence.userId(),
+                "online", presence.online()
+            );
+            case Scoped scoped -> {
+                // The same frame as on /ws/chat, with the conversation id
+                Map<String, Object> frame = new HashMap<>((Map<String, Object>) toJson(scoped.event()));
+                frame.put("conversationId", scoped.conversationId());
+                yield frame;
+            }
+            case RoomMessage message -> roomMessageJson(message.message());
+            case RoomJoined joined -> Map.of(
+                "type", "room_joined",
+                "roomId", joined.roomId(),
+                "participants", joined.participants(),
+                "messages", joined.messages().stream().map(JsonWireCodec::roomMessageJson).toList()
+            );
+            case MessageSent sent -> Map.of(
+                "type", "message_sent",
+                "messageId", sent.messageId()
+            );
+            case ErrorMessage error -> Map.of("error", error.error());
+            case BatchAck ack -> Map.of(
+                "type", "batch_ack",
+                "results", ack.results().stream().map(JsonWireCodec::resultJson).toList()
+            );
+        };
+    }
+
+    private static Map<String, Object> resultJson(BatchResult result) {
+        return result.isSent()
+            ? Map.of("correlationId", result.correlationId(), "status", "sent", "messageId", result.messageId())
+            : Map.of("correlationId", result.correlationId(), "status", "error", "error", result.error());
+    }
+
+    private static Map<String, Object> messageJson(PrivateMessage message) {
+        return Map.of(
+            "type", "message",
+            "messageId", message.messageId(),
+            "conversationId", Conversation.idFor(message.senderId(), message.recipientId()),
+            "seq", message.seq(),
+            "senderId", message.senderId(),
+            "recipientId", message.recipientId(),
+            "content", message.content(),
+            "timestamp", message.timestamp()
+        );
+    }
+
+    private static Map<String, Object> roomMessageJson(com.beepit.server.domain.model.Message message) {
+        return Map.of(
+            "type", "room_message",
+            "messageId", message.id(),
+            "roomId", message.roomId(),
+            "senderId", message.sender(),
+            "content", message.content(),
+            "timestamp", message.timestamp(),
+            "messageType", message.type() == null ? MessageType.TEXT : message.type()
+        );
+    }
+
+    /**
+     * Reads the frame into an {@link InboundFrame}: no intermediate map, boxed
+     * numbers only for the fields present. Frames over
+     * {@link WireCodec#MAX_FRAME_BYTES} never get here, the transport rejects them.
+     */
+    @Override
+    public WireCommand decode(byte[] frame) throws IOException {
+        InboundFrame data = objectMapper.readValue(frame, InboundFrame.class);
+        if (data == null) {
+            throw new IllegalArgumentException("Empty frame");
+        }
+        String type = data.type() == null ? "" : data.type();
+        return switch (type) {
+            case "subscribe" -> new Subscribe(conversationId(data), data.lastSeq());
+            case "unsubscribe" -> new Unsubscribe(conversationId(data));
+            case "delivered" -> new MarkDelivered(conversationId(data), number(data.seq(), "seq", type));
+            case "read" -> new MarkRead(conversationId(data), number(data.seq(), "seq", type));
+            default -> {
+                WireCommand command = conversationCommand(type, data);
+                // On /ws/user conversation commands name the conversation they are for
+                yield data.conversationId() != null
+                    ? new WireCommand.Scoped(data.conversationId(), command)
+                    : command;
+            }
+        };
+    }
+
+    private static WireCommand conversationCommand(String type, InboundFrame data) {
+        return switch (type) {
+            case "load_more" -> new LoadMore(number(data.before(), "before", type));
+            case "resume" -> new Resume(number(data.lastSeq(), "lastSeq", type));
+            case "send_batch" -> new SendBatch(batchItems(data.messages()));
+            // Missing content: rejected by the message validation
+            default -> new Send(data.content());
+        };
+    }
+
+    private static long number(Long value, String field, String type) {
+        if (value == null) {
+            throw new IllegalArgumentException(type + " requires a numeric '" + field + "'");
+        }
+        return value;
+    }
+
+    private static String conversationId(InboundFrame data) {
+        if (data.conversationId() == null) {
+            throw new IllegalArgumentException("A 'conversationId' is required");
+        }
+        return data.conversationId();
+    }
+
+    private static List<BatchItem> batchItems(List<InboundFrame.Item> messages) {
+        if (messages == null) {
+            throw new IllegalArgumentException("send_batch requires a 'messages' array");
+        }
+        List<BatchItem> items = new ArrayList<>(messages.size());
+        for (InboundFrame.Item item : messages) {
+            if (item == null || item.correlationId() == null) {
+                throw new IllegalArgumentException("Every batch message needs a string 'correlationId'");
+            }
+            items.add(new BatchItem(item.correlationId(), item.content()));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,72 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+
+/**
+ * Per-session outbound limits ({@code beepit.websocket.outbound.*}).
+ *
+ * Netty stops reporting a channel as writable once its buffer passes
+ * {@code writeBufferHigh} bytes; from then on frames wait in the session's own
+ * queue, and past {@code highWaterMark} queued frames the slow-consumer policy
+ * applies. No session ever holds more than {@code maxQueued} frames.
+ * History and deltas are written in fragments of about {@code fragmentSize}
+ * bytes, as continuation frames of one WebSocket message.
+ */
+@ConfigurationProperties("beepit.websocket.outbound")
+public class OutboundConfiguration {
+
+    private int writeBufferLow = 32 * 1024;
+    private int writeBufferHigh = 64 * 1024;
+    private int highWaterMark = 128;
+    private int maxQueued = 512;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.COALESCE;
+    private int fragmentSize = 16 * 1024;
+
+    public int getWriteBufferLow() {
+        return writeBufferLow;
+    }
+
+    public void setWriteBufferLow(int writeBufferLow) {
+        this.writeBufferLow = writeBufferLow;
+    }
+
+    public int getWriteBufferHigh() {
+        return writeBufferHigh;
+    }
+
+    public void setWriteBufferHigh(int writeBufferHigh) {
+        this.writeBufferHigh = writeBufferHigh;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public int getFragmentSize() {
+        return fragmentSize;
+    }
+
+    public void setFragmentSize(int fragmentSize) {
+        this.fragmentSize = fragmentSize;
+    }
+}
@@ -0,0 +1,389 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bounded outbound queue of one session.
+ *
+ * Frames go straight to the channel while it is writable. When the client
+ * reads slower than we write, Netty marks the channel unwritable and frames
+ * wait here instead of piling up in the channel buffer; every completed write
+ * drains the queue again, and so does the channel becoming writable (a
+ * write's listener runs before Netty subtracts its bytes from the buffer, so
+ * the write that takes the channel back under its low mark still sees it
+ * unwritable). Past the high-water mark the
+ * {@link SlowConsumerPolicy} decides what to coalesce, drop or disconnect, so
+ * a stalled client holds at most {@code maxQueued} frames.
+ *
+ * Events sent to this session alone are queued unencoded and encoded with the
+ * session's codec when their turn to be written comes, so a connection-scoped
+ * codec sees frames in write order. History and deltas are encoded fragment by
+ * fragment ({@link FragmentedEvent}) into one WebSocket message of
+ * continuation frames, the next fragment only once the channel is writable
+ * again: a history load holds about {@code fragmentSize} encoded bytes beyond
+ * the channel buffer, however long the conversation. Fan-out frames arrive
+ * encoded, as retained buffers owned by the queue until written or released.
+ *
+ * A frame can carry an outcome callback, told once whether the transport
+ * wrote it ({@code true}) or it was dropped, skipped or failed
+ * ({@code false}). Whatever depends on the client having received a frame
+ * waits for it.
+ */
+public class OutboundQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboundQueue.class);
+
+    /** Private-range close code: the client should reconnect and resume. */
+    public static final int SLOW_CONSUMER_CLOSE_CODE = 4008;
+    static final String RESUME_HINT = "slow_consumer: reconnect to resume";
+
+    private final WebSocketSession session;
+    private final Channel channel;
+    private final WireCodec codec;
+    private final OutboundConfiguration config;
+    private final DeliveryMetrics metrics;
+    private final ChannelFutureListener onWritten;
+    private final ChannelFutureListener onFragmentWritten;
+
+    private final ArrayDeque<Pending> queued = new ArrayDeque<>();
+    private int inFlight;
+    private long dropped;
+    private long coalesced;
+    private boolean closed;
+
+    OutboundQueue(WebSocketSession session, Channel channel, WireCodec codec,
+                  OutboundConfiguration config, DeliveryMetrics metrics) {
+        this.session = session;
+        this.channel = channel;
+        this.codec = codec;
+        this.config = config;
+        this.metrics = metrics;
+        this.onWritten = future -> written(future.cause(), true);
+        this.onFragmentWritten = future -> written(future.cause(), false);
+        if (channel != null) {
+            channel.pipeline().addFirst(new WritabilityListener());
+        }
+    }
+
+    /**
+     * Queues a frame for the session, taking ownership of the buffer.
+     *
+     * @param coalesceKey for {@link FrameKind#COALESCABLE} frames, a newer frame
+     *                    with the same key replaces a queued one
+     */
+    public void offer(ByteBuf frame, FrameKind kind, String coalesceKey) {
+        offer(new Pending(frame, null, kind, coalesceKey, null));
+    }
+
+    /**
+     * Queues an event, encoded with the session's codec under the queue lock
+     * when it is written.
+     */
+    public void offer(WireEvent event, FrameKind kind, String coalesceKey) {
+        offer(event, kind, coalesceKey, null);
+    }
+
+    /**
+     * Queues an event and tells {@code outcome} whether it was written. The
+     * callback runs on the thread that completes the write (or drops the
+     * frame), so it must not block.
+     */
+    public void offer(WireEvent event, FrameKind kind, String coalesceKey, Consumer<Boolean> outcome) {
+        offer(new Pending(null, event, kind, coalesceKey, outcome));
+    }
+
+    private void offer(Pending pending) {
+        boolean disconnect;
+        synchronized (this) {
+            disconnect = enqueue(pending);
+        }
+        if (disconnect) {
+            disconnect();
+        }
+    }
+
+    /** Queues a frame and drains what the channel accepts. Returns true when the session has to be closed. */
+    private boolean enqueue(Pending pending) {
+        if (closed || !isOpen()) {
+            pending.discard();
+            metrics.skipped();
+            return false;
+        }
+        if (queued.size() < config.getHighWaterMark()) {
+            queued.add(pending);
+        } else if (admitWhenSlow(pending)) {
+            return true;
+        }
+        drain();
+        return false;
+    }
+
+    /**
+     * Applies the slow-consumer policy to a frame arriving past the high-water
+     * mark. Returns true when the session has to be closed.
+     */
+    private boolean admitWhenSlow(Pending pending) {
+        SlowConsumerPolicy policy = config.getSlowConsumerPolicy();
+        if (policy == SlowConsumerPolicy.DISCONNECT) {
+            pending.discard();
+            return true;
+        }
+        if (pending.kind == FrameKind.COALESCABLE && policy == SlowConsumerPolicy.COALESCE
+                && replaceQueued(pending)) {
+            coalesced++;
+            metrics.coalesced();
+            return false;
+        }
+        boolean full = queued.size() >= config.getMaxQueued();
+        if (pending.kind != FrameKind.ESSENTIAL && (policy == SlowConsumerPolicy.DROP || full)) {
+            pending.discard();
+            dropped++;
+            metrics.dropped();
+            return false;
+        }
+        if (full) {
+            pending.discard();
+            return true;
+        }
+        queued.add(pending);
+        return false;
+    }
+
+    private boolean replaceQueued(Pending pending) {
+        if (pending.key == null) {
+            return false;
+        }
+        for (Pending existing : queued) {
+            if (existing.kind == FrameKind.COALESCABLE && pending.key.equals(existing.key) && !existing.started) {
+                existing.discard();
+                existing.frame = pending.frame;
+                existing.event = pending.event;
+                existing.fragments = null;
+                existing.outcome = pending.outcome;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes queued frames while the channel accepts them. A fragmented frame
+     * stays at the head until its last fragment is written, so no other data
+     * frame gets in the middle of its message.
+     */
+    private void drain() {
+        while (!closed && !queued.isEmpty() && writable()) {
+            Pending head = queued.peek();
+            try {
+                if (head.frame == null && head.fragments == null) {
+                    encode(head);
+                }
+                if (head.fragments == null) {
+                    queued.poll();
+                    write(head.frame, head.outcome);
+                } else {
+                    writeFragment(head);
+                }
+            } catch (IOException | RuntimeException e) {
+                queued.poll();
+                head.discard();
+                metrics.failed();
+                LOG.error("Error encoding frame for session {}", session.getId(), e);
+                if (head.started) {
+                    // WebSocket message left halfway: the client cannot complete it
+                    close();
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private void encode(Pending pending) throws IOException {
+        // Without a Netty channel there are no continuation frames: it is encoded whole
+        pending.fragments = channel != null
+            ? codec.fragment(pending.event, pending.kind, config.getFragmentSize())
+            : null;
+        if (pending.fragments == null) {
+            pending.frame = codec.encode(pending.event, ByteBufAllocator.DEFAULT, pending.kind);
+        }
+    }
+
+    private boolean writable() {
+        // Without a Netty channel there is no observable buffer: in-flight writes are bounded
+        return channel != null ? channel.isWritable() : inFlight < config.getHighWaterMark();
+    }
+
+    private void write(ByteBuf frame, Consumer<Boolean> outcome) {
+        inFlight++;
+        if (channel != null) {
+            ChannelFuture future = channel.writeAndFlush(
+                codec.isBinary() ? new BinaryWebSocketFrame(frame) : new TextWebSocketFrame(frame));
+            future.addListener(onWritten);
+            if (outcome != null) {
+                future.addListener(done -> outcome.accept(done.isSuccess()));
+            }
+        } else {
+            Object payload = codec.isBinary() ? ByteBufUtil.getBytes(frame) : frame.toString(StandardCharsets.UTF_8);
+            frame.release();
+            session.sendAsync(payload).whenComplete((sent, error) -> {
+                written(error, true);
+                if (outcome != null) {
+                    outcome.accept(error == null);
+                }
+            });
+        }
+    }
+
+    /** Encodes the next fragment and writes it as a first or continuation frame. */
+    private void writeFragment(Pending pending) throws IOException {
+        boolean first = !pending.started;
+        ByteBuf fragment = pending.fragments.next(channel.alloc());
+        pending.started = true;
+        boolean last = !pending.fragments.hasNext();
+        if (last) {
+            queued.poll();
+        }
+        WebSocketFrame frame;
+        if (!first) {
+            frame = new ContinuationWebSocketFrame(last, 0, fragment);
+        } else if (codec.isBinary()) {
+            frame = new BinaryWebSocketFrame(last, 0, fragment);
+        } else {
+            frame = new TextWebSocketFrame(last, 0, fragment);
+        }
+        inFlight++;
+        ChannelFuture future = channel.writeAndFlush(frame).addListener(last ? onWritten : onFragmentWritten);
+        if (last && pending.outcome != null) {
+            Consumer<Boolean> outcome = pending.outcome;
+            future.addListener(done -> outcome.accept(done.isSuccess()));
+        }
+    }
+
+    /** A fragmented frame is counted once, when its last fragment is written. */
+    private synchronized void written(Throwable error, boolean complete) {
+        inFlight--;
+        if (complete) {
+            if (error == null) {
+                metrics.delivered();
+            } else {
+                metrics.failed();
+                LOG.debug("Failed to deliver WebSocket frame", error);
+            }
+        }
+        if (!closed) {
+            drain();
+        }
+    }
+
+    private synchronized void writabilityChanged(boolean writable) {
+        if (writable && !closed) {
+            drain();
+        }
+    }
+
+    private void disconnect() {
+        close();
+        metrics.disconnected();
+        LOG.warn("Session {} closed as a slow consumer ({} frames queued)", session.getId(), config.getMaxQueued());
+        session.close(new CloseReason(SLOW_CONSUMER_CLOSE_CODE, RESUME_HINT));
+    }
+
+    /** Releases every queued frame; later offers are skipped. */
+    public synchronized void close() {
+        closed = true;
+        Pending pending;
+        while ((pending = queued.poll()) != null) {
+            pending.discard();
+            metrics.skipped();
+        }
+    }
+
+    private boolean isOpen() {
+        return channel != null ? channel.isActive() : session.isOpen();
+    }
+
+    /** Frames waiting in the queue (not yet handed to the transport). */
+    public synchronized int depth() {
+        return queued.size();
+    }
+
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /** Queue depth, frames being written and drop counts of this session. */
+    public synchronized Map<String, Object> stats() {
+        return Map.of(
+            "sessionId", session.getId(),
+            "queued", queued.size(),
+            "inFlight", inFlight,
+            // Bytes the client still has to read for the channel to accept writes again
+            "bytesBeforeWritable", channel != null ? channel.bytesBeforeWritable() : 0L,
+            "dropped", dropped,
+            "coalesced", coalesced
+        );
+    }
+
+    /** Drains the queue when the channel buffer goes back under its low water mark. */
+    private final class WritabilityListener extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            writabilityChanged(ctx.channel().isWritable());
+            ctx.fireChannelWritabilityChanged();
+        }
+    }
+
+    /** A queued frame: already encoded, or an event encoded when it is written. */
+    private static final class Pending {
+        private ByteBuf frame;
+        private WireEvent event;
+        private FragmentedEvent fragments;
+        // Its first fragment has already been written
+        private boolean started;
+        private final FrameKind kind;
+        private final String key;
+        private Consumer<Boolean> outcome;
+
+        private Pending(ByteBuf frame, WireEvent event, FrameKind kind, String key, Consumer<Boolean> outcome) {
+            this.frame = frame;
+            this.event = event;
+            this.kind = kind;
+            this.key = key;
+            this.outcome = outcome;
+        }
+
+        /** Releases the frame of a pending that will not be written. */
+        private void discard() {
+            if (frame != null) {
+                frame.release();
+                frame = null;
+            }
+            if (outcome != null) {
+                outcome.accept(false);
+                outcome = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.beepit.server.websocket;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.AskPattern;
+import com.beepit.server.actor.ActorSystemProvider;
+import com.beepit.server.domain.command.ChatRoomCommand;
+import com.beepit.server.domain.command.ChatRoomCommand.JoinRoom;
+import com.beepit.server.domain.command.ChatRoomCommand.LeaveRoom;
+import com.beepit.server.domain.command.ChatRoomCommand.SendMessage;
+import com.beepit.server.domain.model.Message;
+import com.beepit.server.domain.model.UserSession;
+import com.beepit.server.domain.response.ChatRoomResponse;
+import com.beepit.server.domain.response.ChatRoomResponse.ErrorResponse;
+import com.beepit.server.domain.response.ChatRoomResponse.JoinedRoom;
+import com.beepit.server.domain.response.ChatRoomResponse.MessageSent;
+import com.beepit.server.service.RateLimiterService;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireEvent.ErrorMessage;
+import com.beepit.server.websocket.WireEvent.RoomJoined;
+import com.beepit.server.websocket.WireEvent.RoomMessage;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.server.netty.NettyHttpRequest;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.annotation.*;
+import io.netty.channel.Channel;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Group rooms: every session on {@code /ws/room/{roomId}} is a participant of
+ * the room's {@code ChatRoomEntity} while it is open. Joining answers with the
+ * participants and the room's recent messages; a {@code send} is appended to
+ * the room and delivered to the sessions the entity lists as participants,
+ * each shard of them on its channels' event loop ({@link FanOutPlan}).
+ *
+ * The entity's participant list only changes identity when someone joins or
+ * leaves, so the plan of each room is cached against it and rebuilt only
+ * then.
+ */
+@ServerWebSocket(value = "/ws/room/{roomId}",
+    subprotocols = BinaryWireCodec.SUBPROTOCOL + "," + JsonWireCodec.SUBPROTOCOL)
+public class RoomWebSocketServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoomWebSocketServer.class);
+    private static final Duration TIMEOUT = Duration.ofSeconds(2);
+
+    private final FrameBroadcaster frameBroadcaster;
+    private final ActorSystemProvider actorSystemProvider;
+    private final RateLimiterService rateLimiterService;
+
+    // Room sessions on this node, by session id (the keys of RoomState)
+    private final Map<String, RoomSocket> socketById = new ConcurrentHashMap<>();
+    private final Map<String, CachedPlan> plans = new ConcurrentHashMap<>();
+
+    @Inject
+    public RoomWebSocketServer(
+            FrameBroadcaster frameBroadcaster,
+            ActorSystemProvider actorSystemProvider,
+            RateLimiterService rateLimiterService) {
+        this.frameBroadcaster = frameBroadcaster;
+        this.actorSystemProvider = actorSystemProvider;
+        this.rateLimiterService = rateLimiterService;
+    }
+
+    @OnOpen
+    public void onOpen(String roomId, WebSocketSession session, HttpRequest<?> request) {
+        Optional<String> userId = request.getParameters().getFirst("userId");
+        if (userId.isEmpty()) {
+            session.close(CloseReason.POLICY_VIOLATION);
+            return;
+        }
+        String username = request.getParameters().getFirst("username").orElse(userId.get());
+
+        MDC.put("userId", userId.get());
+        MDC.put("sessionId", session.getId());
+        LOG.info("Room WebSocket opened: room={}, userId={}", roomId, userId.get());
+
+        RoomSocket socket = new RoomSocket(frameBroadcaster.open(session, channelOf(request)), roomId,
+            new UserSession(userId.get(), username, session.getId()));
+        socketById.put(session.getId(), socket);
+        askRooms(replyTo -> new JoinRoom(socket.user, roomId, replyTo)).subscribe(
+            response -> {
+                if (response instanceof JoinedRoom joined) {
+                    reply(socket, new RoomJoined(roomId, joined.participants(), joined.history()));
+                } else {
+                    reply(socket, new ErrorMessage("Failed to join room " + roomId));
+                }
+            },
+            error -> LOG.error("Error joining {} to room {}", socket.user.userId(), roomId, error)
+        );
+        MDC.clear();
+    }
+
+    @OnMessage(maxPayloadLength = WireCodec.MAX_FRAME_BYTES)
+    public Mono<Void> onMessage(String roomId, byte[] frame, WebSocketSession session) {
+        RoomSocket socket = socketById.get(session.getId());
+        if (socket == null) {
+            LOG.warn("Message from unregistered session: {}", session.getId());
+            return Mono.empty();
+        }
+
+        MDC.put("userId", socket.user.userId());
+        MDC.put("sessionId", session.getId());
+        try {
+            if (!rateLimiterService.tryAcquire(socket.user.userId())) {
+                LOG.warn("Rate limit exceeded for user: {}", socket.user.userId());
+                reply(socket, new ErrorMessage("Rate limit exceeded"));
+                return Mono.empty();
+            }
+            if (!(socket.live.codec().decode(frame) instanceof Send send)) {
+                throw new IllegalArgumentException("Only 'send' is supported on a room socket");
+            }
+            return send(socket, ChatCommandHandler.validateContent(send.content()));
+        } catch (Exception e) {
+            LOG.error("Error processing room message", e);
+            reply(socket, new ErrorMessage(String.valueOf(e.getMessage())));
+            return Mono.empty();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    @OnClose
+    public void onClose(String roomId, WebSocketSession session) {
+        RoomSocket socket = socketById.remove(session.getId());
+        if (socket == null) {
+            return;
+        }
+        actorSystemProvider.getChatRoomActor().tell(new LeaveRoom(session.getId(), socket.roomId));
+        plans.remove(socket.roomId);
+        socket.live.outbound().close();
+        LOG.info("Room WebSocket closed: room={}, userId={}", roomId, socket.user.userId());
+    }
+
+    @OnError
+    public void onError(String roomId, WebSocketSession session, Throwable error) {
+        RoomSocket socket = socketById.get(session.getId());
+        if (socket != null) {
+            MDC.put("userId", socket.user.userId());
+            MDC.put("sessionId", session.getId());
+        }
+        LOG.error("Error in room WebSocket: room={}", roomId, error);
+        MDC.clear();
+    }
+
+    private Mono<Void> send(RoomSocket socket, String content) {
+        Message message = new Message(socket.user.userId(), content, socket.roomId);
+        return askRooms(replyTo -> new SendMessage(message, replyTo))
+            .doOnNext(response -> {
+                if (response instanceof MessageSent sent) {
+                    reply(socket, new WireEvent.MessageSent(sent.message().id()));
+                    deliver(sent);
+                } else {
+                    reply(socket, new ErrorMessage(
+                        response instanceof ErrorResponse error ? error.message() : "Failed to send message"));
+                }
+            })
+            .then();
+    }
+
+    /** Delivers to the room participants whose session is on this node. */
+    private void deliver(MessageSent sent) {
+        try {
+            frameBroadcaster.broadcast(planFor(sent), new RoomMessage(sent.message()));
+        } catch (Exception e) {
+            LOG.error("Error broadcasting room message {}", sent.message().roomId(), e);
+        }
+    }
+
+    private FanOutPlan planFor(MessageSent sent) {
+        String roomId = sent.message().roomId();
+        CachedPlan cached = plans.get(roomId);
+        if (cached != null && cached.participants == sent.recipients()) {
+            return cached.plan;
+        }
+        List<LiveSession> recipients = new ArrayList<>(sent.recipients().size());
+        for (UserSession participant : sent.recipients()) {
+            RoomSocket socket = socketById.get(participant.sessionId());
+            if (socket != null) {
+                recipients.add(socket.live);
+            }
+        }
+        FanOutPlan plan = FanOutPlan.of(recipients);
+        plans.put(roomId, new CachedPlan(sent.recipients(), plan));
+        return plan;
+    }
+
+    private Mono<ChatRoomResponse> askRooms(Function<ActorRef<ChatRoomResponse>, ChatRoomCommand> command) {
+        return Mono.fromCompletionStage(
+            AskPattern.ask(
+                actorSystemProvider.getChatRoomActor(),
+                command::apply,
+                TIMEOUT,
+                actorSystemProvider.getScheduler()
+            )
+        ).publishOn(Schedulers.parallel());
+    }
+
+    private void reply(RoomSocket socket, WireEvent event) {
+        frameBroadcaster.send(socket.live, event);
+    }
+
+    /** Netty channel of the connection, to write already encoded frames. */
+    private Channel channelOf(HttpRequest<?> request) {
+        return request instanceof NettyHttpRequest<?> nettyRequest
+            ? nettyRequest.getChannelHandlerContext().channel()
+            : null;
+    }
+
+    private record RoomSocket(LiveSession live, String roomId, UserSession user) {}
+
+    /** A room's broadcast plan and the participant list it was built from. */
+    private record CachedPlan(List<UserSession> participants, FanOutPlan plan) {}
+}
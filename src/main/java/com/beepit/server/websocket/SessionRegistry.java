@@ -0,0 +1,127 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.channel.Channel;
+import jakarta.inject.Singleton;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live WebSocket sessions indexed by conversation and by user, so delivering
+ * a message costs O(recipients) instead of a scan over every open socket.
+ * A multiplexed {@code /ws/user} session is filed once under its user and
+ * once per subscribed conversation; it also watches the presence of the
+ * other participant of each of them.
+ *
+ * Sets are added and dropped inside {@code compute}, so a registration never
+ * lands in a set that a concurrent unregister is removing.
+ */
+@Singleton
+public class SessionRegistry {
+
+    private final Map<String, Set<LiveSession>> byConversation = new ConcurrentHashMap<>();
+    private final Map<String, Set<LiveSession>> byUser = new ConcurrentHashMap<>();
+    private final Map<String, Set<LiveSession>> presenceWatchers = new ConcurrentHashMap<>();
+
+    /** Registers a single-conversation session. Returns true if it is the user's first session. */
+    public boolean register(String conversationId, String userId, LiveSession session) {
+        add(byConversation, conversationId, session);
+        return add(byUser, userId, session);
+    }
+
+    /** Returns true if it was the user's last session. */
+    public boolean unregister(String conversationId, String userId, LiveSession session) {
+        remove(byConversation, conversationId, session);
+        return remove(byUser, userId, session);
+    }
+
+    /** Registers a multiplexed session. Returns true if it is the user's first session. */
+    public boolean registerUser(String userId, LiveSession session) {
+        return add(byUser, userId, session);
+    }
+
+    /** Returns true if it was the user's last session. */
+    public boolean unregisterUser(String userId, LiveSession session) {
+        return remove(byUser, userId, session);
+    }
+
+    public void subscribe(String conversationId, String otherUserId, LiveSession session) {
+        add(byConversation, conversationId, session);
+        add(presenceWatchers, otherUserId, session);
+    }
+
+    public void unsubscribe(String conversationId, String otherUserId, LiveSession session) {
+        remove(byConversation, conversationId, session);
+        remove(presenceWatchers, otherUserId, session);
+    }
+
+    /** Sessions currently open on the conversation (both participants, every device). */
+    public Set<LiveSession> sessionsFor(String conversationId) {
+        return byConversation.getOrDefault(conversationId, Set.of());
+    }
+
+    /** Sessions currently open by the user, on any conversation. */
+    public Set<LiveSession> sessionsOf(String userId) {
+        return byUser.getOrDefault(userId, Set.of());
+    }
+
+    /** Whether the user has a session on the conversation open (or subscribed to it). */
+    public boolean isViewing(String conversationId, String userId) {
+        Set<LiveSession> conversation = sessionsFor(conversationId);
+        for (LiveSession session : sessionsOf(userId)) {
+            if (conversation.contains(session)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Multiplexed sessions subscribed to a conversation with the user. */
+    public Set<LiveSession> watchersOf(String userId) {
+        return presenceWatchers.getOrDefault(userId, Set.of());
+    }
+
+    // Returns true if the key had no sessions
+    private static boolean add(Map<String, Set<LiveSession>> index, String key, LiveSession session) {
+        boolean[] created = new boolean[1];
+        index.compute(key, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                created[0] = true;
+            }
+            sessions.add(session);
+            return sessions;
+        });
+        return created[0];
+    }
+
+    // Returns true if the key was left without sessions
+    private static boolean remove(Map<String, Set<LiveSession>> index, String key, LiveSession session) {
+        boolean[] emptied = new boolean[1];
+        index.computeIfPresent(key, (k, sessions) -> {
+            sessions.remove(session);
+            emptied[0] = sessions.isEmpty();
+            return emptied[0] ? null : sessions;
+        });
+        return emptied[0];
+    }
+
+    /** Every open session, each once. */
+    public Collection<LiveSession> allSessions() {
+        List<LiveSession> all = new ArrayList<>();
+        byUser.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * An open session, its Netty channel (used to write pre-encoded frames),
+     * its bounded outbound queue and the codec of its negotiated subprotocol.
+     * The channel is null when the transport is not Netty.
+     */
+    public record LiveSession(WebSocketSession session, Channel channel, OutboundQueue outbound, WireCodec codec) {}
+}
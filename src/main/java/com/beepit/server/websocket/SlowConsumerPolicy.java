@@ -0,0 +1,13 @@
+package com.beepit.server.websocket;
+
+/**
+ * What happens to a session whose outbound queue is past its high-water mark.
+ */
+public enum SlowConsumerPolicy {
+    /** Keep only the latest queued event per key (typing, presence); drop other non-essential events once full. */
+    COALESCE,
+    /** Drop every non-essential event; messages keep queuing up to the hard limit. */
+    DROP,
+    /** Close the session with a resume hint; the client reconnects and catches up. */
+    DISCONNECT
+}
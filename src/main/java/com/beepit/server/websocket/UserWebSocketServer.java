@@ -0,0 +1,226 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.service.RateLimiterService;
+import com.beepit.server.websocket.ChatCommandHandler.Target;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import com.beepit.server.websocket.WireCommand.MarkDelivered;
+import com.beepit.server.websocket.WireCommand.MarkRead;
+import com.beepit.server.websocket.WireCommand.Scoped;
+import com.beepit.server.websocket.WireCommand.Subscribe;
+import com.beepit.server.websocket.WireCommand.Unsubscribe;
+import com.beepit.server.websocket.WireEvent.ErrorMessage;
+import com.beepit.server.websocket.WireEvent.Presence;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.server.netty.NettyHttpRequest;
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.micronaut.websocket.annotation.*;
+import io.netty.channel.Channel;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One socket per user (and device) carrying every conversation: the client
+ * subscribes to the conversations it shows and receives their messages,
+ * receipts and the presence of the other participants over the same
+ * connection, instead of holding one {@code /ws/chat/{roomId}} socket each.
+ *
+ * Conversation commands and the replies to them carry a {@code conversationId}.
+ */
+@ServerWebSocket(value = "/ws/user",
+    subprotocols = BinaryWireCodec.SUBPROTOCOL + "," + JsonWireCodec.SUBPROTOCOL)
+public class UserWebSocketServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserWebSocketServer.class);
+    // Bounds the memory per connection: session and presence indexes per conversation
+    static final int MAX_SUBSCRIPTIONS = 256;
+
+    private final SessionRegistry sessionRegistry;
+    private final FrameBroadcaster frameBroadcaster;
+    private final ChatCommandHandler commandHandler;
+    private final RateLimiterService rateLimiterService;
+
+    private final Map<String, UserSocket> socketById = new ConcurrentHashMap<>();
+
+    @Inject
+    public UserWebSocketServer(
+            SessionRegistry sessionRegistry,
+            FrameBroadcaster frameBroadcaster,
+            ChatCommandHandler commandHandler,
+            RateLimiterService rateLimiterService) {
+        this.sessionRegistry = sessionRegistry;
+        this.frameBroadcaster = frameBroadcaster;
+        this.commandHandler = commandHandler;
+        this.rateLimiterService = rateLimiterService;
+    }
+
+    @OnOpen
+    public void onOpen(WebSocketSession session, HttpRequest<?> request) {
+        Optional<String> userId = request.getParameters().getFirst("userId");
+        if (userId.isEmpty()) {
+            session.close(CloseReason.POLICY_VIOLATION);
+            return;
+        }
+
+        MDC.put("userId", userId.get());
+        MDC.put("sessionId", session.getId());
+        LOG.info("User WebSocket opened: userId={}", userId.get());
+
+        UserSocket socket = new UserSocket(frameBroadcaster.open(session, channelOf(request)), userId.get(),
+            ConcurrentHashMap.newKeySet());
+        socketById.put(session.getId(), socket);
+        if (sessionRegistry.registerUser(socket.userId, socket.live)) {
+            commandHandler.presenceChanged(socket.userId, true);
+        }
+        // What arrived while they were disconnected, in a single "pending" frame
+        commandHandler.flushPending(socket.live, socket.userId).subscribe(
+            null,
+            error -> LOG.error("Error delivering pending messages to {}", socket.userId, error)
+        );
+        MDC.clear();
+    }
+
+    @OnMessage(maxPayloadLength = WireCodec.MAX_FRAME_BYTES)
+    public Mono<Void> onMessage(byte[] frame, WebSocketSession session) {
+        UserSocket socket = socketById.get(session.getId());
+        if (socket == null) {
+            LOG.warn("Message from unregistered session: {}", session.getId());
+            return Mono.empty();
+        }
+
+        MDC.put("userId", socket.userId);
+        MDC.put("sessionId", session.getId());
+        try {
+            if (!rateLimiterService.tryAcquire(socket.userId)) {
+                LOG.warn("Rate limit exceeded for user: {}", socket.userId);
+                reply(socket, new ErrorMessage("Rate limit exceeded"));
+                return Mono.empty();
+            }
+            return switch (socket.live.codec().decode(frame)) {
+                case Subscribe subscribe -> subscribe(socket, subscribe);
+                case Unsubscribe unsubscribe -> {
+                    unsubscribe(socket, unsubscribe.conversationId());
+                    yield Mono.empty();
+                }
+                case MarkDelivered delivered ->
+                    commandHandler.markReceipts(target(socket, delivered.conversationId()), delivered.seq(), false);
+                case MarkRead read ->
+                    commandHandler.markReceipts(target(socket, read.conversationId()), read.seq(), true);
+                case Scoped scoped -> commandHandler.execute(subscribed(socket, scoped.conversationId()), scoped.command());
+                default -> throw new IllegalArgumentException("Conversation commands need a 'conversationId'");
+            };
+        } catch (Exception e) {
+            LOG.error("Error processing message", e);
+            reply(socket, new ErrorMessage(String.valueOf(e.getMessage())));
+            return Mono.empty();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    @OnClose
+    public void onClose(WebSocketSession session) {
+        UserSocket socket = socketById.remove(session.getId());
+        if (socket == null) {
+            return;
+        }
+        for (String conversationId : socket.subscriptions) {
+            unsubscribe(socket, conversationId);
+        }
+        if (sessionRegistry.unregisterUser(socket.userId, socket.live)) {
+            commandHandler.presenceChanged(socket.userId, false);
+        }
+        socket.live.outbound().close();
+        LOG.info("User WebSocket closed: userId={}", socket.userId);
+    }
+
+    @OnError
+    public void onError(WebSocketSession session, Throwable error) {
+        UserSocket socket = socketById.get(session.getId());
+        if (socket != null) {
+            MDC.put("userId", socket.userId);
+            MDC.put("sessionId", session.getId());
+        }
+        LOG.error("Error in user WebSocket", error);
+        MDC.clear();
+    }
+
+    /**
+     * Subscribes the connection to a conversation and replies with its history
+     * (or a delta if it carries lastSeq) and the presence of the other participant.
+     */
+    private Mono<Void> subscribe(UserSocket socket, Subscribe subscribe) {
+        Target target = target(socket, subscribe.conversationId());
+        if (!socket.subscriptions.contains(target.conversationId())) {
+            if (socket.subscriptions.size() >= MAX_SUBSCRIPTIONS) {
+                throw new IllegalArgumentException("Too many subscriptions (max " + MAX_SUBSCRIPTIONS + ")");
+            }
+            socket.subscriptions.add(target.conversationId());
+            sessionRegistry.subscribe(target.conversationId(), target.otherUserId(), socket.live);
+        }
+        reply(socket, new Presence(target.otherUserId(), commandHandler.isOnline(target.otherUserId())));
+        return subscribe.lastSeq() == null
+            ? commandHandler.loadAndSendHistory(target)
+            : commandHandler.resume(target, subscribe.lastSeq());
+    }
+
+    private void unsubscribe(UserSocket socket, String conversationId) {
+        if (socket.subscriptions.remove(conversationId)) {
+            sessionRegistry.unsubscribe(conversationId, otherParticipant(conversationId, socket.userId), socket.live);
+        }
+    }
+
+    /** The conversation must be subscribed to send or read history in it. */
+    private Target subscribed(UserSocket socket, String conversationId) {
+        if (!socket.subscriptions.contains(conversationId)) {
+            throw new IllegalArgumentException("Not subscribed to " + conversationId);
+        }
+        return target(socket, conversationId);
+    }
+
+    private Target target(UserSocket socket, String conversationId) {
+        return new Target(socket.live, socket.userId, otherParticipant(conversationId, socket.userId),
+            conversationId, true);
+    }
+
+    /** The user must be one of the two participants of the id {@code user1_user2}. */
+    private static String otherParticipant(String conversationId, String userId) {
+        String[] participants = conversationId.split("_");
+        if (participants.length != 2 || !conversationId.equals(Conversation.idFor(participants[0], participants[1]))) {
+            throw new IllegalArgumentException("Invalid conversationId: " + conversationId);
+        }
+        if (participants[0].equals(userId)) {
+            return participants[1];
+        }
+        if (participants[1].equals(userId)) {
+            return participants[0];
+        }
+        throw new IllegalArgumentException("Not a participant of " + conversationId);
+    }
+
+    private void reply(UserSocket socket, WireEvent event) {
+        try {
+            frameBroadcaster.send(socket.live, event);
+        } catch (Exception e) {
+            LOG.error("Error sending reply to {}", socket.userId, e);
+        }
+    }
+
+    /** Netty channel of the connection, to write already encoded frames. */
+    private Channel channelOf(HttpRequest<?> request) {
+        return request instanceof NettyHttpRequest<?> nettyRequest
+            ? nettyRequest.getChannelHandlerContext().channel()
+            : null;
+    }
+
+    private record UserSocket(LiveSession live, String userId, Set<String> subscriptions) {}
+}
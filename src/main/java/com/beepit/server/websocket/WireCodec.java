@@ -0,0 +1,64 @@
+package com.beepit.server.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+/**
+ * Encoding of {@link WireEvent}s and {@link WireCommand}s for one WebSocket
+ * subprotocol.
+ */
+public interface WireCodec {
+
+    /** Longest message content accepted, in characters. */
+    int MAX_CONTENT_LENGTH = 5000;
+
+    /** Most messages in one {@code send_batch}. */
+    int MAX_BATCH_SIZE = 50;
+
+    /** Longest correlation id of a batch message, in characters. */
+    int MAX_CORRELATION_ID_LENGTH = 64;
+
+    /**
+     * Largest client frame accepted, in bytes: a full batch of the longest
+     * messages, with every character escaped as JSON {@code \uXXXX} (6 bytes,
+     * twice the most UTF-8 takes in the binary codec), 64 bytes of keys and
+     * separators per message and 1 KiB for the rest of the frame. About
+     * 1.45 MiB. Netty rejects larger frames (close code 1009) before they are
+     * buffered or parsed.
+     */
+    int MAX_FRAME_BYTES = MAX_BATCH_SIZE * (6 * (MAX_CONTENT_LENGTH + MAX_CORRELATION_ID_LENGTH) + 64) + 1024;
+
+    /** Whether frames are sent as binary (instead of text) WebSocket frames. */
+    boolean isBinary();
+
+    /**
+     * Whether encoding depends on what was already sent on the connection.
+     * Such codecs are created per session and encode every frame in the order
+     * it is written; the others encode a fan-out once for every recipient.
+     */
+    boolean isConnectionScoped();
+
+    /**
+     * Encodes an event into a new buffer owned by the caller.
+     *
+     * @param kind frames that may be dropped or coalesced must not change
+     *             connection-scoped state
+     */
+    ByteBuf encode(WireEvent event, ByteBufAllocator allocator, FrameKind kind) throws IOException;
+
+    /**
+     * Encodes an event carrying a message list (history, delta, also when
+     * scoped) lazily, in fragments of about {@code fragmentSize} bytes that
+     * together form one WebSocket message. Returns null for other events,
+     * which are encoded whole.
+     */
+    FragmentedEvent fragment(WireEvent event, FrameKind kind, int fragmentSize);
+
+    /**
+     * Decodes a client frame. Throws {@link IllegalArgumentException} when the
+     * frame is not a valid command.
+     */
+    WireCommand decode(byte[] frame) throws IOException;
+}
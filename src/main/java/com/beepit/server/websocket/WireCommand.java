@@ -0,0 +1,55 @@
+package com.beepit.server.websocket;
+
+import java.util.List;
+
+/**
+ * Requests a WebSocket client sends to the server, decoded by the session's
+ * {@link WireCodec}.
+ */
+public sealed interface WireCommand {
+
+    /** Sends a private message to the other participant of the conversation. */
+    record Send(String content) implements WireCommand {}
+
+    /** Asks for the history page older than {@code before}. */
+    record LoadMore(long before) implements WireCommand {}
+
+    /**
+     * Asks for the messages after {@code lastSeq}, the seq of the last
+     * message the client has (-1 for none).
+     */
+    record Resume(long lastSeq) implements WireCommand {}
+
+    /**
+     * Several sends in one frame, e.g. an offline outbox being flushed. They
+     * are processed in order and answered with a single {@link WireEvent.BatchAck}.
+     */
+    record SendBatch(List<BatchItem> items) implements WireCommand {}
+
+    /**
+     * Starts receiving a conversation on the multiplexed socket: the reply is
+     * its history, or a delta when {@code lastSeq} is given (see {@link Resume}).
+     */
+    record Subscribe(String conversationId, Long lastSeq) implements WireCommand {}
+
+    record Unsubscribe(String conversationId) implements WireCommand {}
+
+    /** Moves the user's delivered watermark up to {@code seq} (inclusive). */
+    record MarkDelivered(String conversationId, long seq) implements WireCommand {}
+
+    /** Moves the user's read watermark up to {@code seq} (inclusive). */
+    record MarkRead(String conversationId, long seq) implements WireCommand {}
+
+    /**
+     * A conversation command ({@link Send}, {@link LoadMore}, {@link Resume},
+     * {@link SendBatch}) sent on the multiplexed socket.
+     */
+    record Scoped(String conversationId, WireCommand command) implements WireCommand {}
+
+    /**
+     * One message of a batch.
+     *
+     * @param correlationId chosen by the client, echoed in the item's result
+     */
+    record BatchItem(String correlationId, String content) {}
+}
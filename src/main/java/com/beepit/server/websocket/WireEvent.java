@@ -0,0 +1,99 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.PrivateMessage;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Events the server pushes to a WebSocket client. Every {@link WireCodec}
+ * encodes these same events, so the JSON and binary protocols carry exactly
+ * the same information.
+ */
+public sealed interface WireEvent {
+
+    /** A new message in the session's conversation. */
+    record Message(PrivateMessage message) implements WireEvent {}
+
+    /**
+     * A page of history, newest last.
+     *
+     * @param page       false for the initial history sent on connect, true for a {@code load_more} answer
+     * @param nextCursor cursor of the next older page, null on the last page
+     */
+    record History(boolean page, List<PrivateMessage> messages, Long nextCursor) implements WireEvent {}
+
+    /**
+     * Messages missed since the cursor a reconnecting client resumed from.
+     *
+     * @param nextSeq seq the next message of the conversation will get
+     */
+    record Delta(List<PrivateMessage> messages, long nextSeq) implements WireEvent {}
+
+    /**
+     * Messages addressed to the user that arrived while none of its sockets
+     * had their conversation open, from any conversation (sender and recipient
+     * identify it), sent once when the user connects. They count as delivered.
+     */
+    record Pending(List<PrivateMessage> messages) implements WireEvent {}
+
+    /**
+     * The resume cursor is too far behind (or ahead) to send a delta; the
+     * client must drop its copy of the conversation. A fresh history follows.
+     */
+    record ResyncRequired(long nextSeq) implements WireEvent {}
+
+    /**
+     * A participant's delivered / read watermarks moved: their messages with
+     * {@code seq} below them are delivered / read.
+     */
+    record Receipts(String conversationId, String userId, long deliveredUpTo, long readUpTo) implements WireEvent {}
+
+    /** A user watched by this session connected or left (last session closed). */
+    record Presence(String userId, boolean online) implements WireEvent {}
+
+    /**
+     * A reply about one conversation on the multiplexed {@code /ws/user}
+     * socket. Messages and receipts name their conversation themselves.
+     */
+    record Scoped(String conversationId, WireEvent event) implements WireEvent {}
+
+    /** A message posted to the group room of a {@code /ws/room/{roomId}} session. */
+    record RoomMessage(com.beepit.server.domain.model.Message message) implements WireEvent {}
+
+    /**
+     * Sent when a session joins a group room.
+     *
+     * @param participants users in the room, this one included
+     * @param messages     latest messages of the room, oldest first
+     */
+    record RoomJoined(String roomId, Set<String> participants,
+                      List<com.beepit.server.domain.model.Message> messages) implements WireEvent {}
+
+    /** Acknowledges a send from this session. */
+    record MessageSent(String messageId) implements WireEvent {}
+
+    record ErrorMessage(String error) implements WireEvent {}
+
+    /** Results of a {@link WireCommand.SendBatch}, in the order of its items. */
+    record BatchAck(List<BatchResult> results) implements WireEvent {}
+
+    /**
+     * Outcome of one batch item: {@code messageId} when it was stored,
+     * {@code error} otherwise.
+     */
+    record BatchResult(String correlationId, String messageId, String error) {
+
+        public static BatchResult sent(String correlationId, String messageId) {
+            return new BatchResult(correlationId, messageId, null);
+        }
+
+        public static BatchResult failed(String correlationId, String error) {
+            return new BatchResult(correlationId, null, error);
+        }
+
+        public boolean isSent() {
+            return messageId != null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.beepit.server.actor;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.beepit.server.domain.command.ChatRoomCommand;
+import com.beepit.server.domain.command.ChatRoomCommand.*;
+import com.beepit.server.domain.model.Message;
+import com.beepit.server.domain.model.UserSession;
+import com.beepit.server.domain.response.ChatRoomResponse;
+import com.beepit.server.domain.response.ChatRoomResponse.*;
+import com.beepit.server.domain.response.ParticipantsResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatRoomActorTest {
+
+    private ActorTestKit testKit;
+
+    @BeforeEach
+    void setup() {
+        testKit = ActorTestKit.create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Test
+    void testJoinSendAndLeave() {
+        ActorRef<ChatRoomCommand> rooms = testKit.spawn(ChatRoomActor.create(config(3, Duration.ofMinutes(5))));
+        TestProbe<ChatRoomResponse> probe = testKit.createTestProbe();
+
+        rooms.tell(new SendMessage(new Message("alice", "Hola", "general"), probe.getRef()));
+        assertTrue(probe.receiveMessage() instanceof ErrorResponse);
+
+        rooms.tell(new JoinRoom(new UserSession("alice", "Alice", "s1"), "general", probe.getRef()));
+        assertEquals(Set.of("alice"), ((JoinedRoom) probe.receiveMessage()).participants());
+        rooms.tell(new JoinRoom(new UserSession("bob", "Bob", "s2"), "general", probe.getRef()));
+        rooms.tell(new JoinRoom(new UserSession("bob", "Bob", "s3"), "general", probe.getRef()));
+        probe.receiveMessage();
+        assertEquals(Set.of("alice", "bob"), ((JoinedRoom) probe.receiveMessage()).participants());
+
+        rooms.tell(new SendMessage(new Message("alice", "Hola", "general"), probe.getRef()));
+        MessageSent sent = (MessageSent) probe.receiveMessage();
+        assertEquals("Hola", sent.message().content());
+        assertEquals(List.of("s1", "s2", "s3"), sent.recipients().stream().map(UserSession::sessionId).toList());
+
+        // Bob closes one device: still in the room through the other
+        rooms.tell(new LeaveRoom("s2", "general"));
+        TestProbe<ParticipantsResponse> participants = testKit.createTestProbe();
+        rooms.tell(new GetRoomParticipants("general", participants.getRef()));
+        assertEquals(Set.of("s1", "s3"), participants.receiveMessage().participants().stream()
+            .map(UserSession::sessionId).collect(Collectors.toSet()));
+
+        rooms.tell(new SendMessage(new Message("bob", "Adiós", "general"), probe.getRef()));
+        assertEquals(2, ((MessageSent) probe.receiveMessage()).recipients().size());
+    }
+
+    @Test
+    void testHistoryKeepsLatestMessages() {
+        ActorRef<ChatRoomCommand> rooms = testKit.spawn(ChatRoomActor.create(config(3, Duration.ofMinutes(5))));
+        TestProbe<ChatRoomResponse> probe = testKit.createTestProbe();
+
+        rooms.tell(new JoinRoom(new UserSession("alice", "Alice", "s1"), "general", probe.getRef()));
+        probe.receiveMessage();
+        for (int i = 0; i < 5; i++) {
+            rooms.tell(new SendMessage(new Message("alice", "Mensaje " + i, "general"), probe.getRef()));
+            probe.receiveMessage();
+        }
+
+        rooms.tell(new GetRoomHistory("general", 10, probe.getRef()));
+        assertEquals(List.of("Mensaje 2", "Mensaje 3", "Mensaje 4"), contents((RoomHistory) probe.receiveMessage()));
+        rooms.tell(new GetRoomHistory("general", 2, probe.getRef()));
+        assertEquals(List.of("Mensaje 3", "Mensaje 4"), contents((RoomHistory) probe.receiveMessage()));
+
+        // Whoever joins later gets the recent history
+        rooms.tell(new JoinRoom(new UserSession("bob", "Bob", "s2"), "general", probe.getRef()));
+        assertEquals(3, ((JoinedRoom) probe.receiveMessage()).history().size());
+    }
+
+    @Test
+    void testEmptyIdleRoomIsPassivated() {
+        ActorRef<ChatRoomCommand> rooms = testKit.spawn(ChatRoomActor.create(config(10, Duration.ofMillis(100))));
+        TestProbe<ChatRoomResponse> probe = testKit.createTestProbe();
+
+        for (String roomId : List.of("vacia", "ocupada")) {
+            rooms.tell(new JoinRoom(new UserSession("alice", "Alice", "s-" + roomId), roomId, probe.getRef()));
+            probe.receiveMessage();
+            rooms.tell(new SendMessage(new Message("alice", "Hola", roomId), probe.getRef()));
+            probe.receiveMessage();
+        }
+        rooms.tell(new LeaveRoom("s-vacia", "vacia"));
+
+        probe.expectNoMessage(Duration.ofMillis(400));
+
+        // The empty room was discarded with its history; the one with participants remains
+        rooms.tell(new GetRoomHistory("vacia", 10, probe.getRef()));
+        assertTrue(((RoomHistory) probe.receiveMessage()).messages().isEmpty());
+        rooms.tell(new GetRoomHistory("ocupada", 10, probe.getRef()));
+        assertEquals(1, ((RoomHistory) probe.receiveMessage()).messages().size());
+
+        // It is created again when someone joins
+        rooms.tell(new JoinRoom(new UserSession("bob", "Bob", "s2"), "vacia", probe.getRef()));
+        JoinedRoom joined = (JoinedRoom) probe.receiveMessage();
+        assertEquals(Set.of("bob"), joined.participants());
+        assertTrue(joined.history().isEmpty());
+    }
+
+    private static List<String> contents(RoomHistory history) {
+        return history.messages().stream().map(Message::content).toList();
+    }
+
+    private static ChatRoomConfiguration config(int historySize, Duration idleTimeout) {
+        ChatRoomConfiguration config = new ChatRoomConfiguration();
+        config.setHistorySize(historySize);
+        config.setIdleTimeout(idleTimeout);
+        return config;
+    }
+}
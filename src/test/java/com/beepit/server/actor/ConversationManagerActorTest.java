@@ -7,9 +7,22 @@ import com.beepit.server.domain.command.ConversationManagerCommand;
 import com.beepit.server.domain.command.ConversationManagerCommand.*;
 import com.beepit.server.domain.response.ConversationManagerResponse;
 import com.beepit.server.domain.response.ConversationManagerResponse.*;
+import com.beepit.server.domain.model.InboxEntry;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.journal.JournalConfiguration;
+import com.beepit.server.storage.TieringConfiguration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -50,13 +63,13 @@ class ConversationManagerActorTest {
     void testGetConversation() {
         TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
         
-        // Enviar un mensaje primero
+        // Send a message first
         conversationManager.tell(new SendPrivateMessage(
             "user1", "user2", "Test message", probe.getRef()
         ));
-        probe.receiveMessage(); // Consumir respuesta
+        probe.receiveMessage(); // Consume the reply
         
-        // Obtener la conversación
+        // Get the conversation
         conversationManager.tell(new GetConversation(
             "user1", "user2", probe.getRef()
         ));
@@ -73,7 +86,7 @@ class ConversationManagerActorTest {
     void testGetUserConversations() {
         TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
         
-        // Crear varias conversaciones para user1
+        // Create several conversations for user1
         conversationManager.tell(new SendPrivateMessage(
             "user1", "user2", "Mensaje 1", probe.getRef()
         ));
@@ -84,7 +97,7 @@ class ConversationManagerActorTest {
         ));
         probe.receiveMessage();
         
-        // Obtener todas las conversaciones de user1
+        // Get all of user1's conversations
         conversationManager.tell(new GetUserConversations(
             "user1", probe.getRef()
         ));
@@ -100,19 +113,19 @@ class ConversationManagerActorTest {
     void testConversationIdConsistency() {
         TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
         
-        // Enviar mensaje de user1 a user2
+        // Send a message from user1 to user2
         conversationManager.tell(new SendPrivateMessage(
             "user1", "user2", "Mensaje A", probe.getRef()
         ));
         probe.receiveMessage();
         
-        // Enviar mensaje de user2 a user1 (misma conversación)
+        // Send a message from user2 to user1 (same conversation)
         conversationManager.tell(new SendPrivateMessage(
             "user2", "user1", "Mensaje B", probe.getRef()
         ));
         probe.receiveMessage();
         
-        // Obtener conversación desde user1
+        // Get the conversation as user1
         conversationManager.tell(new GetConversation(
             "user1", "user2", probe.getRef()
         ));
@@ -123,4 +136,520 @@ class ConversationManagerActorTest {
         ConversationFound found = (ConversationFound) response;
         assertEquals(2, found.conversation().messages().size());
     }
+
+    @Test
+    void testConversationSnapshotIsNotAffectedByLaterMessages() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        conversationManager.tell(new SendPrivateMessage(
+            "user1", "user2", "Primero", probe.getRef()
+        ));
+        probe.receiveMessage();
+        
+        conversationManager.tell(new GetConversation(
+            "user1", "user2", probe.getRef()
+        ));
+        ConversationFound before = (ConversationFound) probe.receiveMessage();
+        
+        conversationManager.tell(new SendPrivateMessage(
+            "user2", "user1", "Segundo", probe.getRef()
+        ));
+        probe.receiveMessage();
+        
+        // The earlier snapshot still has a single message
+        assertEquals(1, before.conversation().messages().size());
+        assertThrows(UnsupportedOperationException.class,
+            () -> before.conversation().messages().add(before.conversation().messages().get(0)));
+    }
+
+    @Test
+    void testUserConversationsOrderedByLastMessage() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        conversationManager.tell(new SendPrivateMessage(
+            "user1", "user2", "Mensaje 1", probe.getRef()
+        ));
+        probe.receiveMessage();
+        
+        conversationManager.tell(new SendPrivateMessage(
+            "user1", "user3", "Mensaje 2", probe.getRef()
+        ));
+        probe.receiveMessage();
+        
+        // New message in the first conversation: it must move to the front
+        conversationManager.tell(new SendPrivateMessage(
+            "user2", "user1", "Mensaje 3", probe.getRef()
+        ));
+        probe.receiveMessage();
+        
+        conversationManager.tell(new GetUserConversations(
+            "user1", probe.getRef()
+        ));
+        
+        ConversationsList list = (ConversationsList) probe.receiveMessage();
+        assertEquals(2, list.conversations().size());
+        assertEquals("user1_user2", list.conversations().get(0).conversationId());
+        assertEquals("user1_user3", list.conversations().get(1).conversationId());
+        
+        conversationManager.tell(new GetUserConversations(
+            "user3", probe.getRef()
+        ));
+        
+        ConversationsList other = (ConversationsList) probe.receiveMessage();
+        assertEquals(1, other.conversations().size());
+    }
+
+    @Test
+    void testUserConversationsAcrossShards() {
+        ActorRef<ConversationManagerCommand> sharded = testKit.spawn(ConversationManagerActor.create(4));
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        for (int i = 0; i < 10; i++) {
+            sharded.tell(new SendPrivateMessage(
+                "user1", "contact" + i, "Mensaje " + i, probe.getRef()
+            ));
+            probe.receiveMessage();
+        }
+        
+        sharded.tell(new GetUserConversations("user1", probe.getRef()));
+        
+        ConversationsList list = (ConversationsList) probe.receiveMessage();
+        assertEquals(10, list.conversations().size());
+        for (int i = 1; i < list.conversations().size(); i++) {
+            assertFalse(list.conversations().get(i).lastMessageAt()
+                .isAfter(list.conversations().get(i - 1).lastMessageAt()));
+        }
+    }
+
+    @Test
+    void testMarkMessageRead() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        conversationManager.tell(new SendPrivateMessage(
+            "user1", "user2", "Hola!", probe.getRef()
+        ));
+        MessageSent sent = (MessageSent) probe.receiveMessage();
+        
+        conversationManager.tell(new MarkMessageRead(sent.message().messageId(), probe.getRef()));
+        assertTrue(probe.receiveMessage() instanceof MessageUpdated);
+        
+        conversationManager.tell(new GetConversation("user2", "user1", probe.getRef()));
+        ConversationFound found = (ConversationFound) probe.receiveMessage();
+        assertTrue(found.conversation().messages().get(0).read());
+        
+        conversationManager.tell(new MarkMessageRead("unknown", probe.getRef()));
+        assertTrue(probe.receiveMessage() instanceof ConversationManagerResponse.ErrorResponse);
+    }
+
+    @Test
+    void testGetConversationPage() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        for (int i = 0; i < 5; i++) {
+            conversationManager.tell(new SendPrivateMessage(
+                "user1", "user2", "Mensaje " + i, probe.getRef()
+            ));
+            probe.receiveMessage();
+        }
+        
+        // Most recent page
+        conversationManager.tell(new GetConversationPage("user1_user2", null, 2, probe.getRef()));
+        ConversationPage latest = (ConversationPage) probe.receiveMessage();
+        assertEquals(2, latest.messages().size());
+        assertEquals("Mensaje 3", latest.messages().get(0).content());
+        assertEquals("Mensaje 4", latest.messages().get(1).content());
+        assertEquals(3L, latest.nextCursor());
+        
+        // Earlier pages back to the beginning
+        conversationManager.tell(new GetConversationPage("user1_user2", latest.nextCursor(), 2, probe.getRef()));
+        ConversationPage older = (ConversationPage) probe.receiveMessage();
+        assertEquals("Mensaje 1", older.messages().get(0).content());
+        assertEquals(1L, older.nextCursor());
+        
+        conversationManager.tell(new GetConversationPage("user1_user2", older.nextCursor(), 2, probe.getRef()));
+        ConversationPage oldest = (ConversationPage) probe.receiveMessage();
+        assertEquals(1, oldest.messages().size());
+        assertEquals("Mensaje 0", oldest.messages().get(0).content());
+        assertNull(oldest.nextCursor());
+        
+        conversationManager.tell(new GetConversationPage("user1_user9", null, 2, probe.getRef()));
+        ConversationPage empty = (ConversationPage) probe.receiveMessage();
+        assertTrue(empty.messages().isEmpty());
+        assertNull(empty.nextCursor());
+    }
+
+    @Test
+    void testGetMessagesSinceForResume() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        for (int i = 0; i < 5; i++) {
+            conversationManager.tell(new SendPrivateMessage(
+                "user1", "user2", "Mensaje " + i, probe.getRef()
+            ));
+            probe.receiveMessage();
+        }
+        
+        // The client saw up to seq 2: gets 3 and 4
+        conversationManager.tell(new GetMessagesSince("user1_user2", 2, 10, probe.getRef()));
+        MessagesSince delta = (MessagesSince) probe.receiveMessage();
+        assertEquals(2, delta.messages().size());
+        assertEquals(3L, delta.messages().get(0).seq());
+        assertEquals(5L, delta.nextSeq());
+        
+        // Up to date: empty delta
+        conversationManager.tell(new GetMessagesSince("user1_user2", 4, 10, probe.getRef()));
+        assertTrue(((MessagesSince) probe.receiveMessage()).messages().isEmpty());
+        
+        // No previous messages (-1) and within the limit: everything
+        conversationManager.tell(new GetMessagesSince("user1_user2", -1, 10, probe.getRef()));
+        assertEquals(5, ((MessagesSince) probe.receiveMessage()).messages().size());
+        
+        // Gap larger than the limit
+        conversationManager.tell(new GetMessagesSince("user1_user2", 0, 2, probe.getRef()));
+        assertEquals(new ResyncRequired("user1_user2", 5), probe.receiveMessage());
+        
+        // Cursor ahead of the server (lost state)
+        conversationManager.tell(new GetMessagesSince("user1_user2", 9, 10, probe.getRef()));
+        assertEquals(new ResyncRequired("user1_user2", 5), probe.receiveMessage());
+        conversationManager.tell(new GetMessagesSince("user1_user9", 3, 10, probe.getRef()));
+        assertEquals(new ResyncRequired("user1_user9", 0), probe.receiveMessage());
+        conversationManager.tell(new GetMessagesSince("user1_user2", Long.MAX_VALUE, 10, probe.getRef()));
+        assertEquals(new ResyncRequired("user1_user2", 5), probe.receiveMessage());
+    }
+
+    @Test
+    void testInboxProjection() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        conversationManager.tell(new SendPrivateMessage("user2", "user1", "Hola", probe.getRef()));
+        MessageSent first = (MessageSent) probe.receiveMessage();
+        conversationManager.tell(new SendPrivateMessage("user2", "user1", "¿Estás?", probe.getRef()));
+        probe.receiveMessage();
+        conversationManager.tell(new SendPrivateMessage("user1", "user2", "Sí", probe.getRef()));
+        probe.receiveMessage();
+        
+        conversationManager.tell(new GetInbox("user1", probe.getRef()));
+        Inbox inbox = (Inbox) probe.receiveMessage();
+        assertEquals(1, inbox.entries().size());
+        assertEquals("user2", inbox.entries().get(0).otherUserId());
+        assertEquals(2, inbox.entries().get(0).unreadCount());
+        assertEquals("Sí", inbox.entries().get(0).lastMessage());
+        
+        // Own messages do not count as unread
+        conversationManager.tell(new GetInbox("user2", probe.getRef()));
+        assertEquals(1, ((Inbox) probe.receiveMessage()).entries().get(0).unreadCount());
+        
+        conversationManager.tell(new MarkMessageRead(first.message().messageId(), probe.getRef()));
+        probe.receiveMessage();
+        
+        conversationManager.tell(new GetInbox("user1", probe.getRef()));
+        assertEquals(1, ((Inbox) probe.receiveMessage()).entries().get(0).unreadCount());
+    }
+
+    @Test
+    void testMarkReadUpToWatermark() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        for (int i = 0; i < 5; i++) {
+            conversationManager.tell(new SendPrivateMessage(
+                "user2", "user1", "Mensaje " + i, probe.getRef()
+            ));
+            probe.receiveMessage();
+        }
+        
+        conversationManager.tell(new MarkReadUpTo("user1_user2", "user1", 2, probe.getRef()));
+        ReceiptsUpdated receipts = (ReceiptsUpdated) probe.receiveMessage();
+        assertEquals(3, receipts.readUpTo());
+        assertEquals(3, receipts.deliveredUpTo());
+        
+        // A lower watermark does not move back
+        conversationManager.tell(new MarkReadUpTo("user1_user2", "user1", 0, probe.getRef()));
+        assertEquals(3, ((ReceiptsUpdated) probe.receiveMessage()).readUpTo());
+        
+        conversationManager.tell(new GetInbox("user1", probe.getRef()));
+        assertEquals(2, ((Inbox) probe.receiveMessage()).entries().get(0).unreadCount());
+        
+        conversationManager.tell(new GetConversation("user1", "user2", probe.getRef()));
+        ConversationFound found = (ConversationFound) probe.receiveMessage();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i < 3, found.conversation().messages().get(i).read());
+            assertEquals(i < 3, found.conversation().messages().get(i).delivered());
+        }
+        
+        // A seq past the end (even Long.MAX_VALUE) marks up to the last message
+        conversationManager.tell(new MarkDeliveredUpTo("user1_user2", "user1", Long.MAX_VALUE, probe.getRef()));
+        assertEquals(5, ((ReceiptsUpdated) probe.receiveMessage()).deliveredUpTo());
+        conversationManager.tell(new MarkReadUpTo("user1_user2", "user1", Long.MAX_VALUE, probe.getRef()));
+        assertEquals(5, ((ReceiptsUpdated) probe.receiveMessage()).readUpTo());
+        
+        conversationManager.tell(new MarkReadUpTo("user1_user2", "user3", 2, probe.getRef()));
+        assertTrue(probe.receiveMessage() instanceof ConversationManagerResponse.ErrorResponse);
+    }
+
+    @Test
+    void testGetPendingDeliveries() {
+        ActorRef<ConversationManagerCommand> sharded = testKit.spawn(ConversationManagerActor.create(4));
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        for (int i = 0; i < 3; i++) {
+            sharded.tell(new SendPrivateMessage("contact" + i, "user1", "Mensaje " + i, probe.getRef()));
+            probe.receiveMessage();
+        }
+        sharded.tell(new SendPrivateMessage("contact0", "user1", "Otro", probe.getRef()));
+        probe.receiveMessage();
+        // The ones sent by user1 are not pending for them
+        sharded.tell(new SendPrivateMessage("user1", "contact1", "Respuesta", probe.getRef()));
+        probe.receiveMessage();
+        // Already delivered in the open conversation
+        sharded.tell(new MarkDeliveredUpTo("contact2_user1", "user1", 0, probe.getRef()));
+        probe.receiveMessage();
+        
+        sharded.tell(new GetPendingDeliveries("user1", 10, probe.getRef()));
+        PendingDeliveries pending = (PendingDeliveries) probe.receiveMessage();
+        assertEquals(3, pending.messages().size());
+        assertTrue(pending.messages().stream().allMatch(message -> message.recipientId().equals("user1")));
+        assertFalse(pending.more());
+        // Asking does not mark them delivered
+        sharded.tell(new GetPendingDeliveries("user1", 10, probe.getRef()));
+        assertEquals(pending.messages(), ((PendingDeliveries) probe.receiveMessage()).messages());
+        
+        // The caller moves the watermarks once the messages are written
+        sharded.tell(new AdvanceDeliveredUpTo("contact0_user1", "user1", 1, 0, probe.getRef()));
+        assertEquals(2, ((ReceiptsUpdated) probe.receiveMessage()).deliveredUpTo());
+        sharded.tell(new AdvanceDeliveredUpTo("contact1_user1", "user1", 0, 0, probe.getRef()));
+        probe.receiveMessage();
+        
+        sharded.tell(new GetPendingDeliveries("user1", 10, probe.getRef()));
+        PendingDeliveries empty = (PendingDeliveries) probe.receiveMessage();
+        assertTrue(empty.messages().isEmpty());
+        assertFalse(empty.more());
+    }
+
+    @Test
+    void testGetPendingDeliveriesInBatches() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        
+        for (int i = 0; i < 5; i++) {
+            conversationManager.tell(new SendPrivateMessage("user2", "user1", "Mensaje " + i, probe.getRef()));
+            probe.receiveMessage();
+        }
+        
+        conversationManager.tell(new GetPendingDeliveries("user1", 3, probe.getRef()));
+        PendingDeliveries first = (PendingDeliveries) probe.receiveMessage();
+        assertEquals(List.of(0L, 1L, 2L), first.messages().stream().map(message -> message.seq()).toList());
+        assertTrue(first.more());
+        conversationManager.tell(new AdvanceDeliveredUpTo("user1_user2", "user1", 2, 0, probe.getRef()));
+        probe.receiveMessage();
+        
+        conversationManager.tell(new GetPendingDeliveries("user1", 3, probe.getRef()));
+        PendingDeliveries second = (PendingDeliveries) probe.receiveMessage();
+        assertEquals(List.of(3L, 4L), second.messages().stream().map(message -> message.seq()).toList());
+        assertFalse(second.more());
+    }
+
+    @Test
+    void testPendingDeliveriesAreCappedAcrossShards() {
+        ActorRef<ConversationManagerCommand> sharded = testKit.spawn(ConversationManagerActor.create(4));
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        for (int i = 0; i < 8; i++) {
+            sharded.tell(new SendPrivateMessage("contact" + i, "user1", "Mensaje " + i, probe.getRef()));
+            probe.receiveMessage();
+        }
+        
+        // Each shard may answer with the whole limit: the merged reply still carries at most that
+        sharded.tell(new GetPendingDeliveries("user1", 3, probe.getRef()));
+        PendingDeliveries pending = (PendingDeliveries) probe.receiveMessage();
+        assertEquals(3, pending.messages().size());
+        assertTrue(pending.more());
+    }
+
+    @Test
+    void testRecoversFromJournalAfterRestart(@TempDir Path directory) {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        JournalConfiguration config = new JournalConfiguration();
+        config.setEnabled(true);
+        config.setDirectory(directory);
+        config.setSegmentSize(1 << 20);
+        // Snapshot halfway through: recovery uses the snapshot plus the journal tail
+        config.setSnapshotEvery(3);
+        
+        ActorRef<ConversationManagerCommand> persistent = testKit.spawn(ConversationManagerActor.create(2, config));
+        for (int i = 0; i < 5; i++) {
+            persistent.tell(new SendPrivateMessage("user2", "user1", "Mensaje " + i, probe.getRef()));
+            probe.receiveMessage();
+        }
+        persistent.tell(new MarkReadUpTo("user1_user2", "user1", 1, probe.getRef()));
+        probe.receiveMessage();
+        testKit.stop(persistent);
+        
+        ActorRef<ConversationManagerCommand> restarted = testKit.spawn(ConversationManagerActor.create(2, config));
+        restarted.tell(new GetConversationPage("user1_user2", null, 10, probe.getRef()));
+        ConversationPage page = (ConversationPage) probe.receiveMessage();
+        assertEquals(5, page.messages().size());
+        assertEquals("Mensaje 4", page.messages().get(4).content());
+        assertTrue(page.messages().get(1).read());
+        assertFalse(page.messages().get(2).read());
+        
+        restarted.tell(new GetInbox("user1", probe.getRef()));
+        InboxEntry entry = ((Inbox) probe.receiveMessage()).entries().get(0);
+        assertEquals(3, entry.unreadCount());
+        assertEquals("Mensaje 4", entry.lastMessage());
+        
+        // Numbering continues after the restart
+        restarted.tell(new SendPrivateMessage("user1", "user2", "De vuelta", probe.getRef()));
+        assertEquals(5, ((MessageSent) probe.receiveMessage()).message().seq());
+    }
+
+    @Test
+    void testAdvanceDeliveredUpToRidesOnTheNextCommit(@TempDir Path directory) {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        JournalConfiguration config = new JournalConfiguration();
+        config.setEnabled(true);
+        config.setDirectory(directory);
+        config.setSegmentSize(1 << 20);
+
+        ActorRef<ConversationManagerCommand> persistent = testKit.spawn(ConversationManagerActor.create(2, config));
+        for (int i = 0; i < 3; i++) {
+            persistent.tell(new SendPrivateMessage("user2", "user1", "Mensaje " + i, probe.getRef()));
+            probe.receiveMessage();
+        }
+        persistent.tell(new AdvanceDeliveredUpTo("user1_user2", "user1", 1, 42, probe.getRef()));
+        Correlated correlated = (Correlated) probe.receiveMessage();
+        assertEquals(42, correlated.correlationId());
+        assertEquals(2, ((ReceiptsUpdated) correlated.response()).deliveredUpTo());
+
+        persistent.tell(new AdvanceDeliveredUpTo("user1_user3", "user1", 0, 0, probe.getRef()));
+        assertTrue(probe.receiveMessage() instanceof ErrorResponse);
+
+        // The next send makes the watermark durable too
+        persistent.tell(new SendPrivateMessage("user1", "user2", "Respuesta", probe.getRef()));
+        probe.receiveMessage();
+        testKit.stop(persistent);
+
+        ActorRef<ConversationManagerCommand> restarted = testKit.spawn(ConversationManagerActor.create(2, config));
+        restarted.tell(new GetConversationPage("user1_user2", null, 10, probe.getRef()));
+        List<PrivateMessage> messages = ((ConversationPage) probe.receiveMessage()).messages();
+        assertEquals(List.of(true, true, false),
+            messages.subList(0, 3).stream().map(PrivateMessage::delivered).toList());
+    }
+
+    @Test
+    void testSendPrivateMessageBatch() {
+        TestProbe<ConversationManagerResponse> probe1 = testKit.createTestProbe();
+        TestProbe<ConversationManagerResponse> probe2 = testKit.createTestProbe();
+        ActorRef<ConversationManagerCommand> sharded = testKit.spawn(ConversationManagerActor.create(4));
+        
+        sharded.tell(new SendPrivateMessageBatch(List.of(
+            new SendPrivateMessage("user1", "user2", "A", probe1.getRef()),
+            new SendPrivateMessage("user3", "user4", "B", probe2.getRef()),
+            new SendPrivateMessage("user2", "user1", "C", probe1.getRef())
+        )));
+        
+        // Each send is confirmed to its own replyTo, in order
+        MessageSent first = (MessageSent) probe1.receiveMessage();
+        MessageSent third = (MessageSent) probe1.receiveMessage();
+        assertEquals("A", first.message().content());
+        assertEquals("C", third.message().content());
+        assertEquals(1, third.message().seq());
+        assertEquals("B", ((MessageSent) probe2.receiveMessage()).message().content());
+    }
+
+    @Test
+    void testPassivatesIdleConversations(@TempDir Path directory) {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        TieringConfiguration tiering = new TieringConfiguration();
+        tiering.setEnabled(true);
+        tiering.setDirectory(directory);
+        tiering.setFileSize(1 << 20);
+        tiering.setPassivateAfter(Duration.ofMillis(200));
+
+        ActorRef<ConversationManagerCommand> tiered = testKit.spawn(
+            ConversationManagerActor.create(1, new JournalConfiguration(), tiering));
+        // Less than a segment: only passivation takes it off the heap
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tiered.tell(new SendPrivateMessage("user2", "user1", "Mensaje " + i, probe.getRef()));
+            ids.add(((MessageSent) probe.receiveMessage()).message().messageId());
+        }
+
+        // Passivated: its messages are no longer indexed by id
+        probe.awaitAssert(Duration.ofSeconds(5), () -> {
+            tiered.tell(new MarkMessageDelivered(ids.get(0), probe.getRef()));
+            assertInstanceOf(ErrorResponse.class, probe.receiveMessage());
+            return null;
+        });
+        tiered.tell(new GetConversationPage("user1_user2", null, 10, probe.getRef()));
+        List<PrivateMessage> page = ((ConversationPage) probe.receiveMessage()).messages();
+        assertEquals(ids, page.stream().map(PrivateMessage::messageId).toList());
+
+        // The next send reactivates the tail segment and numbering continues
+        tiered.tell(new SendPrivateMessage("user1", "user2", "De vuelta", probe.getRef()));
+        MessageSent sent = (MessageSent) probe.receiveMessage();
+        assertEquals(5, sent.message().seq());
+        tiered.tell(new MarkMessageRead(sent.message().messageId(), probe.getRef()));
+        assertInstanceOf(MessageUpdated.class, probe.receiveMessage());
+        // The reactivated tail is indexed by id again
+        tiered.tell(new MarkMessageDelivered(ids.get(0), probe.getRef()));
+        assertInstanceOf(MessageUpdated.class, probe.receiveMessage());
+        tiered.tell(new GetConversationPage("user1_user2", null, 10, probe.getRef()));
+        page = ((ConversationPage) probe.receiveMessage()).messages();
+        assertEquals(6, page.size());
+        assertEquals("Mensaje 4", page.get(4).content());
+        assertEquals("De vuelta", page.get(5).content());
+        testKit.stop(tiered);
+    }
+
+    @Test
+    void testDemotesOldMessagesToColdTier(@TempDir Path directory) throws IOException {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        TieringConfiguration tiering = new TieringConfiguration();
+        tiering.setEnabled(true);
+        tiering.setDirectory(directory);
+        tiering.setFileSize(1 << 20);
+        // Minimum budget: every full segment is a candidate
+        tiering.setHeapBudget(1);
+        tiering.setHotMessages(0);
+        tiering.setHotWindow(Duration.ZERO);
+        // No cache: every read of a cold segment goes to the files
+        tiering.setCacheSegments(0);
+        
+        ActorRef<ConversationManagerCommand> tiered = testKit.spawn(
+            ConversationManagerActor.create(1, new JournalConfiguration(), tiering));
+        String firstId = null;
+        for (int i = 0; i < 300; i++) {
+            tiered.tell(new SendPrivateMessage("user2", "user1", "Mensaje " + i, probe.getRef()));
+            MessageSent sent = (MessageSent) probe.receiveMessage();
+            if (i == 0) {
+                firstId = sent.message().messageId();
+            }
+        }
+        
+        // Old history is read from the cold tier
+        tiered.tell(new GetConversationPage("user1_user2", 10L, 10, probe.getRef()));
+        ConversationPage page = (ConversationPage) probe.receiveMessage();
+        assertEquals(10, page.messages().size());
+        assertEquals("Mensaje 0", page.messages().get(0).content());
+        assertEquals(firstId, page.messages().get(0).messageId());
+        
+        // Demoted messages are no longer looked up by id, but the watermarks cover them
+        tiered.tell(new MarkMessageRead(firstId, probe.getRef()));
+        assertTrue(probe.receiveMessage() instanceof ConversationManagerResponse.ErrorResponse);
+        
+        tiered.tell(new MarkReadUpTo("user1_user2", "user1", 9, probe.getRef()));
+        assertEquals(10, ((ReceiptsUpdated) probe.receiveMessage()).readUpTo());
+        tiered.tell(new GetConversationPage("user1_user2", 10L, 10, probe.getRef()));
+        assertTrue(((ConversationPage) probe.receiveMessage()).messages().get(9).read());
+        
+        tiered.tell(new GetInbox("user1", probe.getRef()));
+        assertEquals(290, ((Inbox) probe.receiveMessage()).entries().get(0).unreadCount());
+        
+        // Stopping the shard deletes its files, but a view already handed out can still be read
+        tiered.tell(new GetConversationPage("user1_user2", 10L, 10, probe.getRef()));
+        List<PrivateMessage> delivered = ((ConversationPage) probe.receiveMessage()).messages();
+        testKit.stop(tiered);
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertTrue(files.noneMatch(Files::isRegularFile));
+        }
+        assertEquals("Mensaje 9", delivered.get(9).content());
+    }
 }
@@ -0,0 +1,129 @@
+package com.beepit.server.actor;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.beepit.server.domain.command.ReplyAdapterCommand;
+import com.beepit.server.domain.command.ReplyAdapterCommand.Request;
+import com.beepit.server.domain.command.UserManagerCommand;
+import com.beepit.server.domain.command.UserManagerCommand.GetAllUsers;
+import com.beepit.server.domain.response.UserManagerResponse;
+import com.beepit.server.domain.response.UserManagerResponse.AllUsers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplyAdapterActorTest {
+
+    private ActorTestKit testKit;
+    private ActorRef<ReplyAdapterCommand<UserManagerResponse>> replies;
+    private ActorRef<UserManagerCommand> userManager;
+
+    @BeforeEach
+    void setup() {
+        testKit = ActorTestKit.create();
+        replies = testKit.spawn(ReplyAdapterActor.create(UserManagerResponse.class, Duration.ofMillis(20)));
+        userManager = testKit.spawn(UserManagerActor.create());
+    }
+
+    @AfterEach
+    void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Test
+    void testCorrelatedReplyCompletesRequest() throws Exception {
+        CompletableFuture<UserManagerResponse> result = new CompletableFuture<>();
+
+        replies.tell(new Request<>(
+            (correlationId, replyTo) -> userManager.tell(
+                new UserManagerCommand.Correlated(correlationId, new GetAllUsers(replyTo))),
+            (response, error) -> complete(result, response, error),
+            3_000
+        ));
+
+        UserManagerResponse response = result.get(3, TimeUnit.SECONDS);
+        // The reply arrives unwrapped, without the correlation envelope
+        assertTrue(response instanceof AllUsers);
+        assertFalse(((AllUsers) response).users().isEmpty());
+    }
+
+    @Test
+    void testUncorrelatedCommandStillRepliesDirectly() {
+        TestProbe<UserManagerResponse> probe = testKit.createTestProbe();
+
+        // Without an envelope, the actor answers as always
+        userManager.tell(new GetAllUsers(probe.getRef()));
+
+        assertTrue(probe.receiveMessage() instanceof AllUsers);
+    }
+
+    @Test
+    void testConcurrentRequestsGetTheirOwnReplies() throws Exception {
+        int requests = 100;
+        CompletableFuture<?>[] results = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            CompletableFuture<UserManagerResponse> result = new CompletableFuture<>();
+            results[i] = result;
+            replies.tell(new Request<>(
+                (correlationId, replyTo) -> userManager.tell(
+                    new UserManagerCommand.Correlated(correlationId, new GetAllUsers(replyTo))),
+                (response, error) -> complete(result, response, error),
+                3_000
+            ));
+        }
+
+        CompletableFuture.allOf(results).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<?> result : results) {
+            assertTrue(result.get() instanceof AllUsers);
+        }
+    }
+
+    @Test
+    void testRequestWithoutReplyTimesOut() {
+        CompletableFuture<UserManagerResponse> result = new CompletableFuture<>();
+
+        // The target never answers
+        replies.tell(new Request<>(
+            (correlationId, replyTo) -> { },
+            (response, error) -> complete(result, response, error),
+            50
+        ));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(3, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof TimeoutException);
+    }
+
+    @Test
+    void testFailingDispatchFailsRequest() {
+        CompletableFuture<UserManagerResponse> result = new CompletableFuture<>();
+
+        replies.tell(new Request<>(
+            (correlationId, replyTo) -> {
+                throw new IllegalStateException("destino no disponible");
+            },
+            (response, error) -> complete(result, response, error),
+            3_000
+        ));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(3, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+    }
+
+    private static void complete(CompletableFuture<UserManagerResponse> result,
+                                 UserManagerResponse response, Throwable error) {
+        if (error == null) {
+            result.complete(response);
+        } else {
+            result.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.beepit.server.actor;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.beepit.server.domain.command.ConversationManagerCommand;
+import com.beepit.server.domain.command.ConversationManagerCommand.*;
+import com.beepit.server.domain.command.SendBatcherCommand;
+import com.beepit.server.domain.command.SendBatcherCommand.Enqueue;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendBatcherTest {
+
+    private ActorTestKit testKit;
+    private TestProbe<ConversationManagerCommand> conversations;
+    private TestProbe<ConversationManagerResponse> replies;
+
+    @BeforeEach
+    void setup() {
+        testKit = ActorTestKit.create();
+        conversations = testKit.createTestProbe();
+        replies = testKit.createTestProbe();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Test
+    void testFlushesWhenBatchIsFull() {
+        ActorRef<SendBatcherCommand> batcher = testKit.spawn(
+            SendBatcher.create(conversations.getRef(), config(true, 3, Duration.ofSeconds(30))));
+        
+        for (int i = 0; i < 3; i++) {
+            batcher.tell(new Enqueue(send("Mensaje " + i)));
+        }
+        
+        SendPrivateMessageBatch batch = conversations.expectMessageClass(SendPrivateMessageBatch.class);
+        assertEquals(3, batch.messages().size());
+        assertEquals("Mensaje 0", batch.messages().get(0).content());
+        assertEquals("Mensaje 2", batch.messages().get(2).content());
+    }
+
+    @Test
+    void testFlushesWhenWindowCloses() {
+        ActorRef<SendBatcherCommand> batcher = testKit.spawn(
+            SendBatcher.create(conversations.getRef(), config(true, 64, Duration.ofMillis(50))));
+        
+        batcher.tell(new Enqueue(send("Solo")));
+        
+        // Nothing arrives until the window closes
+        conversations.expectNoMessage(Duration.ofMillis(20));
+        SendPrivateMessageBatch batch = conversations.expectMessageClass(SendPrivateMessageBatch.class);
+        assertEquals(1, batch.messages().size());
+    }
+
+    @Test
+    void testForwardsEachSendWhenDisabled() {
+        ActorRef<SendBatcherCommand> batcher = testKit.spawn(
+            SendBatcher.create(conversations.getRef(), config(false, 64, Duration.ofSeconds(30))));
+        
+        batcher.tell(new Enqueue(send("Uno")));
+        batcher.tell(new Enqueue(send("Dos")));
+        
+        assertEquals("Uno", conversations.expectMessageClass(SendPrivateMessage.class).content());
+        assertEquals("Dos", conversations.expectMessageClass(SendPrivateMessage.class).content());
+    }
+
+    private SendPrivateMessage send(String content) {
+        return new SendPrivateMessage("user1", "user2", content, replies.getRef());
+    }
+
+    private static SendBatchConfiguration config(boolean enabled, int maxSize, Duration window) {
+        SendBatchConfiguration config = new SendBatchConfiguration();
+        config.setEnabled(enabled);
+        config.setMaxSize(maxSize);
+        config.setWindow(window);
+        return config;
+    }
+}
@@ -0,0 +1,70 @@
+package com.beepit.server.actor;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.beepit.server.domain.model.InboxEntry;
+import com.beepit.server.domain.response.ConversationManagerResponse;
+import com.beepit.server.domain.response.ConversationManagerResponse.ErrorResponse;
+import com.beepit.server.domain.response.ConversationManagerResponse.Inbox;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardReplyAggregatorTest {
+
+    private ActorTestKit testKit;
+
+    @BeforeEach
+    void setup() {
+        testKit = ActorTestKit.create();
+    }
+
+    @AfterEach
+    void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Test
+    void testMergesOneReplyPerShard() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        ActorRef<ConversationManagerResponse> aggregator =
+            testKit.spawn(ShardReplyAggregator.create(2, ShardReplyAggregatorTest::merge, probe.getRef()));
+
+        aggregator.tell(inbox("a_b"));
+        aggregator.tell(inbox("a_c"));
+
+        Inbox merged = (Inbox) probe.receiveMessage();
+        assertEquals(List.of("a_b", "a_c"), merged.entries().stream().map(InboxEntry::conversationId).toList());
+    }
+
+    @Test
+    void testMissingShardFailsInsteadOfMergingWhatArrived() {
+        TestProbe<ConversationManagerResponse> probe = testKit.createTestProbe();
+        ActorRef<ConversationManagerResponse> aggregator =
+            testKit.spawn(ShardReplyAggregator.create(2, ShardReplyAggregatorTest::merge, probe.getRef()));
+
+        aggregator.tell(inbox("a_b"));
+
+        ErrorResponse error = (ErrorResponse) probe.receiveMessage(Duration.ofSeconds(5));
+        assertEquals("Shard did not reply in time", error.message());
+        probe.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    private static Inbox inbox(String conversationId) {
+        return new Inbox(List.of(new InboxEntry(conversationId, "b", 0, null, Instant.EPOCH)));
+    }
+
+    private static ConversationManagerResponse merge(List<ConversationManagerResponse> replies) {
+        List<InboxEntry> entries = new ArrayList<>();
+        replies.forEach(reply -> entries.addAll(((Inbox) reply).entries()));
+        return new Inbox(entries);
+    }
+}
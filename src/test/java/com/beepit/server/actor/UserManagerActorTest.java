@@ -47,7 +47,7 @@ class UserManagerActorTest {
     void testLoginUser() {
         TestProbe<UserManagerResponse> probe = testKit.createTestProbe();
         
-        // Alice es un usuario pre-cargado
+        // Alice is a preloaded user
         userManager.tell(new LoginUser("alice", "password123", probe.getRef()));
         
         UserManagerResponse response = probe.receiveMessage();
@@ -71,7 +71,7 @@ class UserManagerActorTest {
     void testAddContact() {
         TestProbe<UserManagerResponse> probe = testKit.createTestProbe();
         
-        // Obtener IDs de Alice y Bob
+        // Get Alice's and Bob's ids
         userManager.tell(new LoginUser("alice", "password123", probe.getRef()));
         UserLoggedIn aliceLogin = (UserLoggedIn) probe.receiveMessage();
         String aliceId = aliceLogin.user().userId();
@@ -80,7 +80,7 @@ class UserManagerActorTest {
         UserLoggedIn bobLogin = (UserLoggedIn) probe.receiveMessage();
         String bobId = bobLogin.user().userId();
         
-        // Agregar Bob como contacto de Alice
+        // Add Bob as Alice's contact
         userManager.tell(new AddContact(aliceId, bobId, probe.getRef()));
         
         UserManagerResponse response = probe.receiveMessage();
@@ -97,6 +97,6 @@ class UserManagerActorTest {
         assertTrue(response instanceof AllUsers);
         
         AllUsers allUsers = (AllUsers) response;
-        assertTrue(allUsers.users().size() >= 5); // Al menos los 5 usuarios pre-cargados
+        assertTrue(allUsers.users().size() >= 5); // At least the 5 preloaded users
     }
 }
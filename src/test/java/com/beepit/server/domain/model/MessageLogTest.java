@@ -0,0 +1,101 @@
+package com.beepit.server.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageLogTest {
+
+    @Test
+    void testRepeatedPassivationKeepsOneTailBlock() {
+        InMemoryColdTier tier = new InMemoryColdTier();
+        MessageLog log = new MessageLog(4, tier);
+        log.append(message(0));
+
+        // One message every idle period: each passivation replaces the tail block
+        for (int seq = 1; seq < 3; seq++) {
+            log.passivate();
+            assertFalse(log.hasHotMessages());
+            log.reactivateTail();
+            log.append(message(seq));
+            assertEquals(1, tier.blocks.size());
+        }
+        log.passivate();
+        assertEquals(1, tier.blocks.size());
+        assertEquals(3, tier.tailWrites);
+
+        // Nothing appended since the last passivation: the tail block is reused
+        log.reactivateTail();
+        log.passivate();
+        assertEquals(3, tier.tailWrites);
+
+        // The tail fills up: its last cold copy is released with the next segment
+        log.reactivateTail();
+        log.append(message(3));
+        log.passivate();
+        log.append(message(4));
+        assertEquals(1, tier.blocks.size());
+        assertEquals(List.of("0", "1", "2", "3", "4"), contents(log.snapshot()));
+    }
+
+    @Test
+    void testViewOfPassivatedTailOutlivesItsBlock() {
+        InMemoryColdTier tier = new InMemoryColdTier();
+        MessageLog log = new MessageLog(4, tier);
+        log.append(message(0));
+        log.append(message(1));
+        log.passivate();
+        List<PrivateMessage> view = log.snapshot();
+
+        log.reactivateTail();
+        log.append(message(2));
+        log.passivate();
+
+        assertEquals(List.of("0", "1"), contents(view));
+        assertEquals(List.of("0", "1", "2"), contents(log.snapshot()));
+    }
+
+    private static PrivateMessage message(long seq) {
+        return new PrivateMessage(seq, "user1", "user2", String.valueOf(seq));
+    }
+
+    private static List<String> contents(List<PrivateMessage> messages) {
+        return messages.stream().map(PrivateMessage::content).toList();
+    }
+
+    /** Fails on loads of released blocks, like a reused slot would. */
+    private static final class InMemoryColdTier implements MessageLog.ColdTier {
+
+        private final Map<Long, PrivateMessage[]> blocks = new HashMap<>();
+        private long nextHandle;
+        private int tailWrites;
+
+        @Override
+        public long demote(List<PrivateMessage> segment) {
+            blocks.put(nextHandle, segment.toArray(PrivateMessage[]::new));
+            return nextHandle++;
+        }
+
+        @Override
+        public long demoteTail(List<PrivateMessage> segment) {
+            tailWrites++;
+            return demote(segment);
+        }
+
+        @Override
+        public PrivateMessage[] load(long handle) {
+            PrivateMessage[] block = blocks.get(handle);
+            assertNotNull(block, "Load of released block " + handle);
+            return block;
+        }
+
+        @Override
+        public void release(long handle) {
+            assertNotNull(blocks.remove(handle), "Double release of block " + handle);
+        }
+    }
+}
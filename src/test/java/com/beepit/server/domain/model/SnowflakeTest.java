@@ -0,0 +1,52 @@
+package com.beepit.server.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeTest {
+
+    @Test
+    void testIdsAreUniqueAndIncreasing() {
+        Snowflake generator = new Snowflake(7);
+        long previous = generator.nextId();
+        // More than 4096 ids per millisecond: the sequence overflows into the next one
+        for (int i = 0; i < 20_000; i++) {
+            long next = generator.nextId();
+            assertTrue(next > previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void testStringFormSortsLikeIds() {
+        Snowflake generator = new Snowflake(1);
+        Set<String> seen = new HashSet<>();
+        String previous = Snowflake.format(generator.nextId());
+        for (int i = 0; i < 1_000; i++) {
+            long id = generator.nextId();
+            String formatted = Snowflake.format(id);
+            assertEquals(13, formatted.length());
+            assertEquals(id, Snowflake.parse(formatted));
+            assertTrue(formatted.compareTo(previous) > 0);
+            assertTrue(seen.add(formatted));
+            previous = formatted;
+        }
+    }
+
+    @Test
+    void testTimestampAndValidation() {
+        long id = new Snowflake(3).nextId();
+        assertTrue(Duration.between(Snowflake.timestampOf(id), Instant.now()).abs().toSeconds() < 5);
+        
+        assertFalse(Snowflake.isValid("550e8400-e29b-41d4-a716-446655440000"));
+        assertFalse(Snowflake.isValid("ZZZZZZZZZZZZZ"));
+        assertThrows(IllegalArgumentException.class, () -> Snowflake.parse("not-an-id"));
+        assertThrows(IllegalArgumentException.class, () -> new Snowflake(Snowflake.MAX_NODE + 1));
+    }
+}
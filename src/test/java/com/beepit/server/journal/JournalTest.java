@@ -0,0 +1,157 @@
+package com.beepit.server.journal;
+
+import com.beepit.server.journal.JournalEvent.ReceiptsMoved;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+
+    // Each event takes 31 bytes in the journal: 4 per 128-byte segment
+    private static final int RECORD_SIZE = 31;
+
+    @Test
+    void testReplaysEventsAfterReopen(@TempDir Path directory) throws IOException {
+        JournalConfiguration config = config(1 << 16);
+        try (Journal journal = Journal.open(directory, config, 0, event -> fail("Empty journal"))) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals((long) (i + 1) * RECORD_SIZE, journal.append(event(i)));
+            }
+        }
+
+        List<JournalEvent> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(directory, config, 0, replayed::add)) {
+            assertEquals(List.of(event(0), event(1), event(2)), replayed);
+            assertEquals(3L * RECORD_SIZE, journal.position());
+        }
+
+        // From a position: only the events written from it on
+        replayed.clear();
+        try (Journal journal = Journal.open(directory, config, RECORD_SIZE, replayed::add)) {
+            assertEquals(List.of(event(1), event(2)), replayed);
+        }
+    }
+
+    @Test
+    void testTruncatesTailWithBadChecksum(@TempDir Path directory) throws IOException {
+        JournalConfiguration config = config(1 << 16);
+        try (Journal journal = Journal.open(directory, config, 0, event -> {})) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(event(i));
+            }
+        }
+        // One byte of the third record's payload: the CRC no longer matches
+        corrupt(segments(directory).get(0), 2L * RECORD_SIZE + 12);
+
+        List<JournalEvent> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(directory, config, 0, replayed::add)) {
+            assertEquals(List.of(event(0), event(1)), replayed);
+            assertEquals(2L * RECORD_SIZE, journal.position());
+            // The next record overwrites the discarded tail
+            journal.append(event(9));
+        }
+
+        replayed.clear();
+        try (Journal journal = Journal.open(directory, config, 0, replayed::add)) {
+            assertEquals(List.of(event(0), event(1), event(9)), replayed);
+        }
+    }
+
+    @Test
+    void testTruncatesTornLengthAtSegmentEnd(@TempDir Path directory) throws IOException {
+        JournalConfiguration config = config(1 << 16);
+        try (Journal journal = Journal.open(directory, config, 0, event -> {})) {
+            journal.append(event(0));
+        }
+        // Length written without its record: points past the end of the segment
+        try (RandomAccessFile file = new RandomAccessFile(segments(directory).get(0).toFile(), "rw")) {
+            file.seek(RECORD_SIZE);
+            file.writeInt(1 << 20);
+        }
+
+        List<JournalEvent> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(directory, config, 0, replayed::add)) {
+            assertEquals(List.of(event(0)), replayed);
+            assertEquals(RECORD_SIZE, journal.position());
+        }
+    }
+
+    @Test
+    void testRollsToNewSegments(@TempDir Path directory) throws IOException {
+        JournalConfiguration config = config(128);
+        try (Journal journal = Journal.open(directory, config, 0, event -> {})) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(event(i));
+            }
+            // The fifth record does not fit in the first segment: the second starts at 128
+            assertEquals(2 * 128 + 2L * RECORD_SIZE, journal.position());
+        }
+        List<Path> segments = segments(directory);
+        assertEquals(3, segments.size());
+        assertTrue(segments.get(1).getFileName().toString().contains(String.format("%020d", 128)));
+
+        List<JournalEvent> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(directory, config, 128, replayed::add)) {
+            assertEquals(6, replayed.size());
+            assertEquals(event(4), replayed.get(0));
+            assertEquals(event(9), replayed.get(5));
+
+            // The segment being written is never deleted
+            journal.deleteSegmentsBefore(Long.MAX_VALUE);
+            assertEquals(1, segments(directory).size());
+        }
+    }
+
+    @Test
+    void testTornRecordDropsLaterSegments(@TempDir Path directory) throws IOException {
+        JournalConfiguration config = config(128);
+        try (Journal journal = Journal.open(directory, config, 0, event -> {})) {
+            for (int i = 0; i < 6; i++) {
+                journal.append(event(i));
+            }
+        }
+        corrupt(segments(directory).get(0), 3L * RECORD_SIZE + 12);
+
+        List<JournalEvent> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(directory, config, 0, replayed::add)) {
+            assertEquals(List.of(event(0), event(1), event(2)), replayed);
+            assertEquals(1, segments(directory).size());
+            assertEquals(3L * RECORD_SIZE, journal.position());
+        }
+    }
+
+    private static JournalConfiguration config(int segmentSize) {
+        JournalConfiguration config = new JournalConfiguration();
+        config.setSegmentSize(segmentSize);
+        config.setFsyncPolicy(FsyncPolicy.GROUP);
+        return config;
+    }
+
+    private static ReceiptsMoved event(int i) {
+        return new ReceiptsMoved("c", "u", i, i);
+    }
+
+    private static void corrupt(Path segment, long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.beepit.server.journal;
+
+import com.beepit.server.domain.model.ConversationState.Receipts;
+import com.beepit.server.domain.model.PrivateMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+
+    @Test
+    void testLoadsLatestSnapshot(@TempDir Path directory) throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        List<ConversationSnapshot> loaded = new ArrayList<>();
+        assertEquals(0, store.loadLatest(loaded::add));
+        assertTrue(loaded.isEmpty());
+
+        store.write(100, List.of(conversation("Primero")));
+        ConversationSnapshot latest = conversation("Segundo");
+        store.write(250, List.of(latest));
+
+        assertEquals(250, store.loadLatest(loaded::add));
+        assertEquals(1, loaded.size());
+        ConversationSnapshot restored = loaded.get(0);
+        assertEquals(latest.conversationId(), restored.conversationId());
+        assertEquals(latest.participants(), restored.participants());
+        assertEquals(latest.createdAt(), restored.createdAt());
+        assertEquals(latest.receipts(), restored.receipts());
+        assertEquals(1, restored.messages().size());
+        assertEquals("Segundo", restored.messages().get(0).content());
+        assertEquals(latest.messages().get(0).messageId(), restored.messages().get(0).messageId());
+
+        // The previous snapshot is deleted when a new one is written
+        assertEquals(List.of("snapshot-" + String.format("%020d", 250)), files(directory));
+    }
+
+    @Test
+    void testIgnoresUnfinishedWrite(@TempDir Path directory) throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        store.write(100, List.of(conversation("Completo")));
+        // Leftovers of a snapshot that was never renamed
+        Files.write(directory.resolve("snapshot-" + String.format("%020d", 300) + ".tmp"), new byte[] {1, 2, 3});
+
+        List<ConversationSnapshot> loaded = new ArrayList<>();
+        assertEquals(100, store.loadLatest(loaded::add));
+        assertEquals("Completo", loaded.get(0).messages().get(0).content());
+    }
+
+    @Test
+    void testRejectsForeignFile(@TempDir Path directory) throws IOException {
+        Files.write(directory.resolve("snapshot-" + String.format("%020d", 100)), new byte[16]);
+        assertThrows(IOException.class, () -> new SnapshotStore(directory).loadLatest(snapshot -> {}));
+    }
+
+    private static ConversationSnapshot conversation(String content) {
+        Instant createdAt = Instant.now();
+        PrivateMessage message = new PrivateMessage(0, "user1", "user2", content);
+        return new ConversationSnapshot("user1_user2", List.of("user1", "user2"), createdAt,
+            Map.of("user2", new Receipts(0, -1)), List.of(message));
+    }
+
+    private static List<String> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.beepit.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterServiceTest {
+
+    @Test
+    void testLimitsAreKeptUntilTheUserIsIdle() {
+        RateLimiterService service = new RateLimiterService();
+        assertEquals(100, service.tryAcquireBatch("alice", 150));
+        assertEquals(0, service.tryAcquireBatch("alice", 1));
+
+        // Reconnecting does not help: the limiters are not per session
+        assertEquals(0, service.evictIdle(System.nanoTime()));
+        assertEquals(0, service.tryAcquireBatch("alice", 1));
+
+        // Idle for a whole refresh period, a new limiter is no more generous than the old one
+        assertEquals(1, service.evictIdle(System.nanoTime() + RateLimiterService.IDLE_EVICTION.toNanos()));
+        assertEquals(1, service.tryAcquireBatch("alice", 1));
+    }
+}
@@ -0,0 +1,52 @@
+package com.beepit.server.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColdStoreTest {
+
+    @Test
+    void testReusableBlocksReuseFreedSlots(@TempDir Path directory) throws IOException {
+        ColdStore store = ColdStore.open(directory, 4096);
+        long full = store.write(new byte[100]);
+
+        // A block that grows a little on every rewrite stays in its freed slot
+        long handle = store.writeReusable(block(10));
+        for (int length = 11; length < 2_000; length++) {
+            store.free(handle);
+            long rewritten = store.writeReusable(block(length));
+            assertArrayEquals(block(length), store.read(rewritten));
+            handle = rewritten;
+        }
+        assertEquals(1, files(directory));
+        assertArrayEquals(new byte[100], store.read(full));
+
+        // A different slot size does not take the freed slot
+        store.free(handle);
+        long small = store.writeReusable(block(10));
+        assertNotEquals(handle, small);
+        assertEquals(handle, store.writeReusable(block(1_500)));
+        store.close();
+    }
+
+    private static byte[] block(int length) {
+        byte[] block = new byte[length];
+        for (int i = 0; i < length; i++) {
+            block[i] = (byte) (length + i);
+        }
+        return block;
+    }
+
+    private static long files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.MessageType;
+import com.beepit.server.domain.model.PrivateMessage;
+import com.beepit.server.domain.model.Snowflake;
+import com.beepit.server.websocket.WireCommand.BatchItem;
+import com.beepit.server.websocket.WireCommand.LoadMore;
+import com.beepit.server.websocket.WireCommand.MarkRead;
+import com.beepit.server.websocket.WireCommand.Resume;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireCommand.SendBatch;
+import com.beepit.server.websocket.WireCommand.Subscribe;
+import com.beepit.server.websocket.WireCommand.Unsubscribe;
+import com.beepit.server.websocket.WireEvent.BatchAck;
+import com.beepit.server.websocket.WireEvent.BatchResult;
+import com.beepit.server.websocket.WireEvent.Delta;
+import com.beepit.server.websocket.WireEvent.History;
+import com.beepit.server.websocket.WireEvent.Message;
+import com.beepit.server.websocket.WireEvent.MessageSent;
+import com.beepit.server.websocket.WireEvent.Presence;
+import com.beepit.server.websocket.WireEvent.Receipts;
+import com.beepit.server.websocket.WireEvent.ResyncRequired;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryWireCodecTest {
+
+    private static final UnpooledByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+
+    @Test
+    void testEventsRoundTrip() {
+        BinaryWireCodec server = new BinaryWireCodec();
+        BinaryWireCodec client = new BinaryWireCodec();
+        PrivateMessage first = message(0, "alice", "bob", "Hola Bob");
+        PrivateMessage legacy = new PrivateMessage("5f0c8a3e-legacy-id", 1, "bob", "alice", "¿Qué tal? 👋",
+            Instant.ofEpochMilli(1_700_000_000_123L), true, false);
+
+        assertEquals(new Message(first), roundTrip(server, client, new Message(first)));
+        History history = new History(true, List.of(first, legacy), 42L);
+        assertEquals(history, roundTrip(server, client, history));
+        History lastPage = new History(false, List.of(), null);
+        assertEquals(lastPage, roundTrip(server, client, lastPage));
+        MessageSent sent = new MessageSent(first.messageId());
+        assertEquals(sent, roundTrip(server, client, sent));
+        BatchAck ack = new BatchAck(List.of(
+            BatchResult.sent("c1", first.messageId()),
+            BatchResult.failed("c2", "Message content cannot be empty")));
+        assertEquals(ack, roundTrip(server, client, ack));
+        Delta delta = new Delta(List.of(first), 7);
+        assertEquals(delta, roundTrip(server, client, delta));
+        assertEquals(new ResyncRequired(1200), roundTrip(server, client, new ResyncRequired(1200)));
+    }
+
+    @Test
+    void testMultiplexedEventsRoundTrip() {
+        BinaryWireCodec server = new BinaryWireCodec();
+        BinaryWireCodec client = new BinaryWireCodec();
+
+        WireEvent.Scoped history = new WireEvent.Scoped("alice_bob",
+            new History(false, List.of(message(0, "alice", "bob", "Hola")), null));
+        assertEquals(history, roundTrip(server, client, history));
+        WireEvent.Scoped sent = new WireEvent.Scoped("alice_bob", new MessageSent(Snowflake.nextString()));
+        assertEquals(sent, roundTrip(server, client, sent));
+        Receipts receipts = new Receipts("alice_bob", "bob", 12, 10);
+        assertEquals(receipts, roundTrip(server, client, receipts));
+        assertEquals(new Presence("bob", true), roundTrip(server, client, new Presence("bob", true)));
+        WireEvent.Pending pending = new WireEvent.Pending(List.of(
+            message(3, "alice", "bob", "¿Sigues ahí?"), message(0, "carol", "bob", "Hola")));
+        assertEquals(pending, roundTrip(server, client, pending));
+    }
+
+    @Test
+    void testRoomEventsRoundTrip() {
+        BinaryWireCodec server = new BinaryWireCodec();
+        BinaryWireCodec client = new BinaryWireCodec();
+        com.beepit.server.domain.model.Message first = new com.beepit.server.domain.model.Message(
+            "alice", "Hola a todos", "general");
+        com.beepit.server.domain.model.Message image = new com.beepit.server.domain.model.Message(
+            "legacy-id", "bob", "foto.png", 1_700_000_000_123L, "general", MessageType.IMAGE);
+
+        WireEvent.RoomMessage message = new WireEvent.RoomMessage(first);
+        assertEquals(message, roundTrip(server, client, message));
+        WireEvent.RoomJoined joined = new WireEvent.RoomJoined("general", Set.of("alice", "bob"),
+            List.of(first, image));
+        assertEquals(joined, roundTrip(server, client, joined));
+    }
+
+    @Test
+    void testFragmentedHistoryMatchesWholeFrame() throws Exception {
+        List<PrivateMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            messages.add(message(i, i % 2 == 0 ? "alice" : "bob", i % 2 == 0 ? "bob" : "alice", "Mensaje número " + i));
+        }
+        WireEvent history = new WireEvent.Scoped("alice_bob", new History(false, messages, 12L));
+        byte[] whole = bytes(new BinaryWireCodec().encode(history, ALLOCATOR, FrameKind.ESSENTIAL));
+
+        BinaryWireCodec server = new BinaryWireCodec();
+        FragmentedEvent fragments = server.fragment(history, FrameKind.ESSENTIAL, 1024);
+        CompositeByteBuf reassembled = ALLOCATOR.compositeBuffer(Integer.MAX_VALUE);
+        int count = 0;
+        while (fragments.hasNext()) {
+            ByteBuf fragment = fragments.next(ALLOCATOR);
+            // At most one message over the fragment size
+            assertTrue(fragment.readableBytes() < 1024 + 64);
+            reassembled.addComponent(true, fragment);
+            count++;
+        }
+        assertTrue(count > 1);
+        assertArrayEquals(whole, bytes(reassembled));
+
+        // Other events are encoded whole
+        assertNull(server.fragment(new MessageSent(Snowflake.nextString()), FrameKind.ESSENTIAL, 1024));
+    }
+
+    @Test
+    void testUserIdsAreInternedPerConnection() {
+        BinaryWireCodec server = new BinaryWireCodec();
+        BinaryWireCodec client = new BinaryWireCodec();
+        String longId = "user-with-a-rather-long-identifier";
+
+        int firstSize = size(server, client, new Message(message(0, longId, "bob", "a")), FrameKind.ESSENTIAL);
+        int secondSize = size(server, client, new Message(message(1, longId, "bob", "a")), FrameKind.ESSENTIAL);
+        // The second time the ids travel as a string table index
+        assertTrue(secondSize < firstSize - longId.length());
+
+        // A droppable frame does not touch the table: the client does not need it to decode
+        BinaryWireCodec otherClient = new BinaryWireCodec();
+        BinaryWireCodec otherServer = new BinaryWireCodec();
+        ByteBuf droppable = otherServer.encode(new Message(message(0, "carol", "dave", "x")), ALLOCATOR, FrameKind.DROPPABLE);
+        droppable.release();
+        Message next = new Message(message(1, "carol", "dave", "y"));
+        assertEquals(next, roundTrip(otherServer, otherClient, next));
+    }
+
+    @Test
+    void testCommandsRoundTripAndMalformedFramesAreRejected() {
+        BinaryWireCodec client = new BinaryWireCodec();
+        BinaryWireCodec server = new BinaryWireCodec();
+
+        assertEquals(new Send("hola"), server.decode(bytes(client.encodeCommand(new Send("hola"), ALLOCATOR))));
+        assertEquals(new LoadMore(300), server.decode(bytes(client.encodeCommand(new LoadMore(300), ALLOCATOR))));
+        assertEquals(new Resume(41), server.decode(bytes(client.encodeCommand(new Resume(41), ALLOCATOR))));
+        // Client without messages
+        assertEquals(new Resume(-1), server.decode(bytes(client.encodeCommand(new Resume(-1), ALLOCATOR))));
+
+        SendBatch batch = new SendBatch(List.of(new BatchItem("c1", "uno"), new BatchItem("c2", "dos")));
+        assertEquals(batch, server.decode(bytes(client.encodeCommand(batch, ALLOCATOR))));
+
+        for (WireCommand command : List.of(
+                new Subscribe("alice_bob", null),
+                new Subscribe("alice_bob", -1L),
+                new Subscribe("alice_bob", 41L),
+                new Unsubscribe("alice_bob"),
+                new MarkRead("alice_bob", 7),
+                new WireCommand.Scoped("alice_bob", new Send("hola")),
+                new WireCommand.Scoped("alice_bob", batch))) {
+            assertEquals(command, server.decode(bytes(client.encodeCommand(command, ALLOCATOR))));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> server.decode(new byte[]{0x7F}));
+        // A scoped command can only wrap a conversation command, never another SCOPED
+        assertThrows(IllegalArgumentException.class, () -> server.decode(
+            new byte[]{BinaryWireCodec.SCOPED_COMMAND, 1, 'a', BinaryWireCodec.SCOPED_COMMAND, 1, 'a', BinaryWireCodec.SEND, 0}));
+        // A batch announcing more items than fit in the frame
+        assertThrows(IllegalArgumentException.class, () -> server.decode(new byte[]{BinaryWireCodec.SEND_BATCH, 100, 0, 0}));
+        // String length larger than the frame
+        assertThrows(IllegalArgumentException.class, () -> server.decode(new byte[]{BinaryWireCodec.SEND, 10, 'a'}));
+    }
+
+    @Test
+    void testLargestValidBatchFitsInAFrame() {
+        // Three UTF-8 bytes per character, the most a BMP character takes
+        BatchItem item = new BatchItem("€".repeat(WireCodec.MAX_CORRELATION_ID_LENGTH), "€".repeat(WireCodec.MAX_CONTENT_LENGTH));
+        WireCommand command = new WireCommand.Scoped("alice_bob",
+            new SendBatch(Collections.nCopies(WireCodec.MAX_BATCH_SIZE, item)));
+        byte[] frame = bytes(new BinaryWireCodec().encodeCommand(command, ALLOCATOR));
+        assertTrue(frame.length <= WireCodec.MAX_FRAME_BYTES, frame.length + " bytes");
+        assertEquals(command, new BinaryWireCodec().decode(frame));
+    }
+
+    private static PrivateMessage message(long seq, String senderId, String recipientId, String content) {
+        PrivateMessage created = new PrivateMessage(seq, senderId, recipientId, content);
+        // The binary protocol carries milliseconds
+        return new PrivateMessage(created.messageId(), seq, senderId, recipientId, content,
+            Instant.ofEpochMilli(created.timestamp().toEpochMilli()), false, false);
+    }
+
+    private static WireEvent roundTrip(BinaryWireCodec server, BinaryWireCodec client, WireEvent event) {
+        ByteBuf frame = server.encode(event, ALLOCATOR, FrameKind.ESSENTIAL);
+        try {
+            WireEvent decoded = client.decodeEvent(frame);
+            assertEquals(0, frame.readableBytes());
+            return decoded;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static int size(BinaryWireCodec server, BinaryWireCodec client, WireEvent event, FrameKind kind) {
+        ByteBuf frame = server.encode(event, ALLOCATOR, kind);
+        try {
+            int size = frame.readableBytes();
+            assertEquals(event, client.decodeEvent(frame));
+            return size;
+        } finally {
+            frame.release();
+        }
+    }
+
+    private static byte[] bytes(ByteBuf frame) {
+        try {
+            return ByteBufUtil.getBytes(frame);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.actor.ActorSystemProvider;
+import com.beepit.server.actor.ChatRoomConfiguration;
+import com.beepit.server.actor.SendBatchConfiguration;
+import com.beepit.server.domain.model.Conversation;
+import com.beepit.server.journal.JournalConfiguration;
+import com.beepit.server.service.RateLimiterService;
+import com.beepit.server.storage.TieringConfiguration;
+import com.beepit.server.websocket.ChatCommandHandler.Target;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import com.beepit.server.websocket.WireCommand.BatchItem;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireCommand.SendBatch;
+import com.beepit.server.websocket.WireEvent.BatchAck;
+import com.beepit.server.websocket.WireEvent.BatchResult;
+import com.beepit.server.websocket.WireEvent.History;
+import com.beepit.server.websocket.WireEvent.Message;
+import com.beepit.server.websocket.WireEvent.Pending;
+import com.beepit.server.websocket.WireEvent.Receipts;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCommandHandlerTest {
+
+    private static final String CONVERSATION_ID = Conversation.idFor("alice", "bob");
+
+    private ActorSystemProvider actors;
+    private SessionRegistry sessionRegistry;
+    private ChatCommandHandler handler;
+
+    @BeforeEach
+    void setup() {
+        actors = new ActorSystemProvider(new JournalConfiguration(), new TieringConfiguration(),
+            new SendBatchConfiguration(), new ChatRoomConfiguration(), 2);
+        sessionRegistry = new SessionRegistry();
+        FrameBroadcaster frameBroadcaster = new FrameBroadcaster(null, new DeliveryMetrics(), new OutboundConfiguration());
+        handler = new ChatCommandHandler(sessionRegistry, frameBroadcaster, actors,
+            new HistoryCache(new HistoryCacheConfiguration(), null), new RateLimiterService());
+    }
+
+    @AfterEach
+    void tearDown() {
+        actors.shutdown();
+    }
+
+    @Test
+    void testBatchIsBroadcastAndAcknowledgedInOrder() throws InterruptedException {
+        Client alice = connect("alice");
+        List<BatchItem> items = IntStream.range(0, 8)
+            .mapToObj(i -> new BatchItem("c" + i, "Mensaje " + i))
+            .toList();
+        handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+
+        List<Message> messages = new ArrayList<>();
+        BatchAck ack = alice.receiveUntilAck(messages);
+        assertEquals(8, messages.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals("Mensaje " + i, messages.get(i).message().content());
+            assertEquals(i, messages.get(i).message().seq());
+            BatchResult result = ack.results().get(i);
+            assertEquals("c" + i, result.correlationId());
+            assertEquals(messages.get(i).message().messageId(), result.messageId());
+        }
+    }
+
+    @Test
+    void testConcurrentSendsAreBroadcastInSeqOrder() throws InterruptedException {
+        Client alice = connect("alice");
+        Client bob = connect("bob");
+        Mono.when(IntStream.range(0, 200)
+                .mapToObj(i -> handler.execute(i % 2 == 0 ? alice.target() : bob.target(), new Send("Mensaje " + i)))
+                .toList())
+            .block(Duration.ofSeconds(5));
+
+        long expected = 0;
+        while (expected < 200) {
+            if (alice.receive() instanceof Message message) {
+                assertEquals(expected++, message.message().seq());
+            }
+        }
+    }
+
+    @Test
+    void testBatchMovesTheDeliveredWatermarkOnce() throws InterruptedException {
+        Client alice = connect("alice");
+        Client bob = connect("bob");
+        List<BatchItem> items = IntStream.range(0, 8)
+            .mapToObj(i -> new BatchItem("c" + i, "Mensaje " + i))
+            .toList();
+        handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, assertInstanceOf(Message.class, bob.receive()).message().seq());
+        }
+        Receipts receipts = assertInstanceOf(Receipts.class, bob.receive());
+        assertEquals("bob", receipts.userId());
+        assertEquals(8, receipts.deliveredUpTo());
+        // A single watermark for the whole batch
+        assertNull(bob.frames.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testOpeningTheConversationDeliversWhatWasPending() throws InterruptedException {
+        Client alice = connect("alice");
+        List<BatchItem> items = IntStream.range(0, 3)
+            .mapToObj(i -> new BatchItem("c" + i, "Mensaje " + i))
+            .toList();
+        handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+        alice.receiveUntilAck(new ArrayList<>());
+
+        Client bob = connect("bob");
+        handler.loadAndSendHistory(bob.target()).block(Duration.ofSeconds(5));
+        assertEquals(3, assertInstanceOf(History.class, bob.receive()).messages().size());
+        Receipts receipts = assertInstanceOf(Receipts.class, bob.receive());
+        assertEquals("bob", receipts.userId());
+        assertEquals(3, receipts.deliveredUpTo());
+    }
+
+    @Test
+    void testPendingMessagesAreMarkedDeliveredOnceWritten() throws InterruptedException {
+        Client alice = connect("alice");
+        List<BatchItem> items = IntStream.range(0, 3)
+            .mapToObj(i -> new BatchItem("c" + i, "Mensaje " + i))
+            .toList();
+        handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+        alice.receiveUntilAck(new ArrayList<>());
+
+        // Bob connects without opening the conversation
+        Client bob = new Client("bob");
+        handler.flushPending(bob.live, "bob").block(Duration.ofSeconds(5));
+        Pending pending = assertInstanceOf(Pending.class, bob.receive());
+        assertEquals(List.of(0L, 1L, 2L), pending.messages().stream().map(m -> m.seq()).toList());
+        Receipts receipts = assertInstanceOf(Receipts.class, alice.receive());
+        assertEquals("bob", receipts.userId());
+        assertEquals(3, receipts.deliveredUpTo());
+
+        handler.flushPending(bob.live, "bob").block(Duration.ofSeconds(5));
+        assertNull(bob.frames.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testInvalidItemsFailWithoutStoppingTheBatch() throws InterruptedException {
+        Client alice = connect("alice");
+        List<BatchItem> items = List.of(
+            new BatchItem("c0", "Primero"),
+            new BatchItem("c1", "   "),
+            new BatchItem("c2", "x".repeat(5001)),
+            new BatchItem("c3", "Último"),
+            new BatchItem("c".repeat(WireCodec.MAX_CORRELATION_ID_LENGTH + 1), "Largo"));
+        handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+
+        List<Message> messages = new ArrayList<>();
+        BatchAck ack = alice.receiveUntilAck(messages);
+        assertEquals(List.of("Primero", "Último"), messages.stream().map(m -> m.message().content()).toList());
+        assertEquals(List.of(0L, 1L), messages.stream().map(m -> m.message().seq()).toList());
+
+        List<BatchResult> results = ack.results();
+        assertEquals(List.of("c0", "c1", "c2", "c3"),
+            results.subList(0, 4).stream().map(BatchResult::correlationId).toList());
+        assertTrue(results.get(0).isSent());
+        assertEquals("Message content cannot be empty", results.get(1).error());
+        assertEquals("Message too long (max 5000 characters)", results.get(2).error());
+        assertEquals(messages.get(1).message().messageId(), results.get(3).messageId());
+        assertEquals("Correlation id too long (max 64 characters)", results.get(4).error());
+    }
+
+    @Test
+    void testEachBatchItemTakesARateLimitPermit() throws InterruptedException {
+        Client alice = connect("alice");
+        List<BatchItem> items = IntStream.range(0, 50)
+            .mapToObj(i -> new BatchItem("c" + i, "Mensaje " + i))
+            .toList();
+
+        // Batch quota of 100 every 10 s: two full batches go through whole
+        for (int batch = 0; batch < 2; batch++) {
+            handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+            List<BatchResult> results = alice.receiveUntilAck(new ArrayList<>()).results();
+            assertTrue(results.stream().allMatch(BatchResult::isSent), "batch " + batch);
+        }
+
+        handler.execute(alice.target(), new SendBatch(items)).block(Duration.ofSeconds(5));
+        List<Message> messages = new ArrayList<>();
+        List<BatchResult> results = alice.receiveUntilAck(messages).results();
+        assertEquals(50, results.size());
+        // The frame's permit and the 2 left in the quota
+        int sent = (int) results.stream().takeWhile(BatchResult::isSent).count();
+        assertEquals(3, sent);
+        assertEquals(sent, messages.size());
+        for (BatchResult result : results.subList(sent, 50)) {
+            assertEquals("Rate limit exceeded", result.error());
+        }
+    }
+
+    private Client connect(String userId) {
+        Client client = new Client(userId);
+        sessionRegistry.register(CONVERSATION_ID, userId, client.live);
+        return client;
+    }
+
+    /** A binary session whose frames are decoded as the client would. */
+    private static final class Client {
+
+        private final String userId;
+        private final BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+        private final BinaryWireCodec codec = new BinaryWireCodec();
+        private final LiveSession live;
+
+        Client(String userId) {
+            this.userId = userId;
+            WebSocketSession session = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {WebSocketSession.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> userId + "-session";
+                    case "isOpen" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "sendAsync" -> {
+                        frames.add((byte[]) args[0]);
+                        yield CompletableFuture.completedFuture(args[0]);
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+            WireCodec serverCodec = new BinaryWireCodec();
+            live = new LiveSession(session, null,
+                new OutboundQueue(session, null, serverCodec, new OutboundConfiguration(), new DeliveryMetrics()),
+                serverCodec);
+        }
+
+        Target target() {
+            return new Target(live, userId, "bob".equals(userId) ? "alice" : "bob", CONVERSATION_ID, false);
+        }
+
+        WireEvent receive() throws InterruptedException {
+            byte[] frame = frames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(frame, "No frame received");
+            return codec.decodeEvent(Unpooled.wrappedBuffer(frame));
+        }
+
+        BatchAck receiveUntilAck(List<Message> messages) throws InterruptedException {
+            while (true) {
+                WireEvent event = receive();
+                if (event instanceof BatchAck ack) {
+                    return ack;
+                }
+                messages.add(assertInstanceOf(Message.class, event));
+            }
+        }
+    }
+}
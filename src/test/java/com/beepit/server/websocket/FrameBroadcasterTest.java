@@ -0,0 +1,144 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.Message;
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameBroadcasterTest {
+
+    private EventLoopGroup loops;
+    private DeliveryMetrics metrics;
+    private FrameBroadcaster broadcaster;
+
+    @BeforeEach
+    void setup() {
+        loops = new DefaultEventLoopGroup(4);
+        metrics = new DeliveryMetrics();
+        // Binary sessions only: the shared JSON is not used
+        broadcaster = new FrameBroadcaster(null, metrics, new OutboundConfiguration());
+    }
+
+    @AfterEach
+    void tearDown() {
+        loops.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void testPlanGroupsRecipientsByEventLoop() {
+        List<LiveSession> recipients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            LocalChannel channel = new LocalChannel();
+            loops.register(channel).syncUninterruptibly();
+            recipients.add(session(channel));
+        }
+        recipients.add(session(null));
+
+        FanOutPlan plan = FanOutPlan.of(recipients);
+        assertEquals(11, plan.size());
+        assertFalse(plan.needsJson());
+        // One group per event loop and another for the session without a channel
+        assertEquals(5, plan.shards().size());
+        for (FanOutPlan.Shard shard : plan.shards()) {
+            for (LiveSession session : shard.sessions()) {
+                assertSame(shard.executor(), session.channel() == null ? null : session.channel().eventLoop());
+            }
+        }
+    }
+
+    @Test
+    void testFanOutReachesEveryRecipientAndRecordsLatency() throws Exception {
+        int members = 200;
+        CountDownLatch received = new CountDownLatch(members);
+        LocalAddress address = new LocalAddress("fan-out-test");
+        Channel server = new ServerBootstrap()
+            .group(loops)
+            .channel(LocalServerChannel.class)
+            .childHandler(new Receiver(received))
+            .bind(address).sync().channel();
+        List<LiveSession> recipients = new ArrayList<>();
+        for (int i = 0; i < members; i++) {
+            LocalChannel channel = new LocalChannel();
+            loops.register(channel).sync();
+            channel.connect(address).sync();
+            recipients.add(session(channel));
+        }
+
+        broadcaster.broadcast(FanOutPlan.of(recipients),
+            new WireEvent.RoomMessage(new Message("alice", "Hola a todos", "general")));
+
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        // The complete broadcast is recorded when the last group finishes
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (metrics.snapshot().get("fanOuts") == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.get("fanOuts"));
+        assertEquals(members, snapshot.get("fanOutRecipients"));
+        assertTrue(snapshot.get("fanOutDeliveryP99Micros") <= snapshot.get("fanOutDeliveryMaxMicros"));
+        server.close().sync();
+    }
+
+    @Test
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1_000);
+        }
+        assertEquals(1000, histogram.count());
+        // Relative error of one sub-bucket at most (1/8)
+        assertEquals(500_000, histogram.percentile(0.50), 500_000 / 8.0);
+        assertEquals(990_000, histogram.percentile(0.99), 990_000 / 8.0);
+        assertEquals(1_000_000, histogram.max());
+        for (long value : new long[] {0, 7, 8, 1_000, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < value);
+        }
+    }
+
+    /** Client side: counts the frames received by every connection. */
+    @ChannelHandler.Sharable
+    private static class Receiver extends ChannelInboundHandlerAdapter {
+
+        private final CountDownLatch received;
+
+        Receiver(CountDownLatch received) {
+            this.received = received;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object frame) {
+            ReferenceCountUtil.release(frame);
+            received.countDown();
+        }
+    }
+
+    private LiveSession session(Channel channel) {
+        WireCodec codec = new BinaryWireCodec();
+        return new LiveSession(null, channel,
+            new OutboundQueue(null, channel, codec, new OutboundConfiguration(), metrics), codec);
+    }
+}
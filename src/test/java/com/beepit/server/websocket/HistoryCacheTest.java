@@ -0,0 +1,125 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.domain.model.PrivateMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryCacheTest {
+
+    private static final String CONVERSATION = "alice_bob";
+
+    @Test
+    void testAppendKeepsPageCurrent() {
+        HistoryCache cache = new HistoryCache(new HistoryCacheConfiguration(), null);
+        assertNull(cache.get(CONVERSATION));
+
+        long stamp = cache.stamp(CONVERSATION);
+        cache.put(CONVERSATION, messages(0, 3), null, 3, stamp);
+        assertEquals(2, cache.get(CONVERSATION).lastSeq());
+
+        // The next seq is appended and the page keeps its size
+        cache.append(CONVERSATION, message(3, "bob", "alice"));
+        HistoryCache.Page page = cache.get(CONVERSATION);
+        assertEquals(List.of(1L, 2L, 3L), page.messages().stream().map(PrivateMessage::seq).toList());
+        assertEquals(1L, page.nextCursor());
+        assertEquals(List.of(3L), page.since(2).stream().map(PrivateMessage::seq).toList());
+        assertTrue(page.since(3).isEmpty());
+        // The client is behind the page or ahead of the server
+        assertNull(page.since(-1));
+        assertNull(page.since(4));
+
+        // A gap in the seqs invalidates the entry
+        cache.append(CONVERSATION, message(5, "alice", "bob"));
+        assertNull(cache.get(CONVERSATION));
+    }
+
+    @Test
+    void testPageReadBeforeAChangeIsNotCached() {
+        HistoryCache cache = new HistoryCache(new HistoryCacheConfiguration(), null);
+
+        long stamp = cache.stamp(CONVERSATION);
+        // A message arrives while the actor read is in progress
+        cache.append(CONVERSATION, message(2, "alice", "bob"));
+        HistoryCache.Page page = cache.put(CONVERSATION, messages(0, 2), null, 50, stamp);
+
+        assertEquals(2, page.messages().size());
+        assertNull(cache.get(CONVERSATION));
+    }
+
+    @Test
+    void testReceiptsUpdateCachedMessages() {
+        HistoryCache cache = new HistoryCache(new HistoryCacheConfiguration(), null);
+        cache.put(CONVERSATION, messages(0, 4), null, 50, cache.stamp(CONVERSATION));
+
+        // Bob has read up to seq 1 and received up to 2
+        cache.applyReceipts(CONVERSATION, "bob", 3, 2);
+
+        for (PrivateMessage message : cache.get(CONVERSATION).messages()) {
+            boolean toBob = message.recipientId().equals("bob");
+            assertEquals(toBob && message.seq() < 3, message.delivered());
+            assertEquals(toBob && message.seq() < 2, message.read());
+        }
+    }
+
+    @Test
+    void testEvictsLeastRecentlyOpened() {
+        HistoryCacheConfiguration config = new HistoryCacheConfiguration();
+        config.setMaxBytes(2_000);
+        HistoryCache cache = new HistoryCache(config, null);
+
+        cache.put("a_b", messages(0, 3), null, 50, cache.stamp("a_b"));
+        cache.put("a_c", messages(0, 3), null, 50, cache.stamp("a_c"));
+        assertNotNull(cache.get("a_b"));
+        cache.put("a_d", messages(0, 3), null, 50, cache.stamp("a_d"));
+
+        // a_c is the least recently used: it goes first
+        assertNull(cache.get("a_c"));
+        assertNotNull(cache.get("a_b"));
+        assertNotNull(cache.get("a_d"));
+        assertTrue(cache.stats().get("bytes") <= 2_000);
+    }
+
+    @Test
+    void testConcurrentAppendsKeepEveryPageCurrent() throws InterruptedException {
+        HistoryCache cache = new HistoryCache(new HistoryCacheConfiguration(), null);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String conversationId = "a_" + t;
+            cache.put(conversationId, messages(0, 1), null, 50, cache.stamp(conversationId));
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int seq = 1; seq <= 2_000; seq++) {
+                    cache.append(conversationId, message(seq, "alice", "bob"));
+                    cache.applyReceipts(conversationId, "bob", seq, 0);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long bytes = 0;
+        for (int t = 0; t < 8; t++) {
+            HistoryCache.Page page = cache.get("a_" + t);
+            assertEquals(2_000, page.lastSeq());
+            assertEquals(50, page.messages().size());
+            bytes += 256 + page.messages().stream().mapToLong(m -> 160 + 2L * m.content().length()).sum();
+        }
+        assertEquals(bytes, cache.stats().get("bytes"));
+    }
+
+    private static List<PrivateMessage> messages(int from, int to) {
+        List<PrivateMessage> messages = new ArrayList<>();
+        for (int seq = from; seq < to; seq++) {
+            messages.add(seq % 2 == 0 ? message(seq, "alice", "bob") : message(seq, "bob", "alice"));
+        }
+        return messages;
+    }
+
+    private static PrivateMessage message(long seq, String senderId, String recipientId) {
+        return new PrivateMessage(seq, senderId, recipientId, "Mensaje " + seq);
+    }
+}
@@ -0,0 +1,121 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.websocket.WireCommand.BatchItem;
+import com.beepit.server.websocket.WireCommand.LoadMore;
+import com.beepit.server.websocket.WireCommand.MarkDelivered;
+import com.beepit.server.websocket.WireCommand.MarkRead;
+import com.beepit.server.websocket.WireCommand.Resume;
+import com.beepit.server.websocket.WireCommand.Scoped;
+import com.beepit.server.websocket.WireCommand.Send;
+import com.beepit.server.websocket.WireCommand.SendBatch;
+import com.beepit.server.websocket.WireCommand.Subscribe;
+import com.beepit.server.websocket.WireCommand.Unsubscribe;
+import io.micronaut.serde.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonWireCodecTest {
+
+    private final JsonWireCodec codec = new JsonWireCodec(ObjectMapper.getDefault());
+
+    @Test
+    void testSendWithAndWithoutType() throws IOException {
+        assertEquals(new Send("Hola"), decode("{\"type\":\"send\",\"content\":\"Hola\"}"));
+        // Without a type it is a send, as before the other commands existed
+        assertEquals(new Send("Hola"), decode("{\"content\":\"Hola\"}"));
+        // Unknown type: also a send
+        assertEquals(new Send("Hola"), decode("{\"type\":\"otro\",\"content\":\"Hola\"}"));
+        // Missing content: rejected later by the message validation
+        assertEquals(new Send(null), decode("{\"type\":\"send\"}"));
+    }
+
+    @Test
+    void testConversationCommands() throws IOException {
+        assertEquals(new LoadMore(40), decode("{\"type\":\"load_more\",\"before\":40}"));
+        assertEquals(new Resume(7), decode("{\"type\":\"resume\",\"lastSeq\":7}"));
+        assertEquals(new Resume(-1), decode("{\"type\":\"resume\",\"lastSeq\":-1}"));
+
+        assertRejected("load_more requires a numeric 'before'", "{\"type\":\"load_more\"}");
+        assertRejected("resume requires a numeric 'lastSeq'", "{\"type\":\"resume\"}");
+    }
+
+    @Test
+    void testSendBatch() throws IOException {
+        assertEquals(new SendBatch(List.of(new BatchItem("c1", "Uno"), new BatchItem("c2", null))),
+            decode("{\"type\":\"send_batch\",\"messages\":["
+                + "{\"correlationId\":\"c1\",\"content\":\"Uno\"},{\"correlationId\":\"c2\"}]}"));
+        assertEquals(new SendBatch(List.of()), decode("{\"type\":\"send_batch\",\"messages\":[]}"));
+
+        assertRejected("Every batch message needs a string 'correlationId'",
+            "{\"type\":\"send_batch\",\"messages\":[{\"correlationId\":\"c1\",\"content\":\"Uno\"},{\"content\":\"Dos\"}]}");
+        assertRejected("send_batch requires a 'messages' array", "{\"type\":\"send_batch\"}");
+    }
+
+    @Test
+    void testLargestValidBatchFitsInAFrame() throws IOException {
+        // Every character escaped: the longest JSON a valid batch can take
+        String correlationId = "\\u0001".repeat(WireCodec.MAX_CORRELATION_ID_LENGTH);
+        String content = "\\u0001".repeat(WireCodec.MAX_CONTENT_LENGTH);
+        String item = "{\"correlationId\":\"" + correlationId + "\",\"content\":\"" + content + "\"}";
+        byte[] frame = ("{\"type\":\"send_batch\",\"conversationId\":\"alice_bob\",\"messages\":["
+            + String.join(",", Collections.nCopies(WireCodec.MAX_BATCH_SIZE, item)) + "]}")
+            .getBytes(StandardCharsets.UTF_8);
+        assertTrue(frame.length <= WireCodec.MAX_FRAME_BYTES, frame.length + " bytes");
+
+        SendBatch batch = (SendBatch) ((Scoped) codec.decode(frame)).command();
+        assertEquals(WireCodec.MAX_BATCH_SIZE, batch.items().size());
+        assertEquals("\u0001".repeat(WireCodec.MAX_CONTENT_LENGTH), batch.items().get(0).content());
+    }
+
+    @Test
+    void testMultiplexedCommands() throws IOException {
+        assertEquals(new Subscribe("alice_bob", 12L),
+            decode("{\"type\":\"subscribe\",\"conversationId\":\"alice_bob\",\"lastSeq\":12}"));
+        assertEquals(new Subscribe("alice_bob", null),
+            decode("{\"type\":\"subscribe\",\"conversationId\":\"alice_bob\"}"));
+        assertEquals(new Unsubscribe("alice_bob"),
+            decode("{\"type\":\"unsubscribe\",\"conversationId\":\"alice_bob\"}"));
+        assertEquals(new MarkDelivered("alice_bob", 3),
+            decode("{\"type\":\"delivered\",\"conversationId\":\"alice_bob\",\"seq\":3}"));
+        assertEquals(new MarkRead("alice_bob", 2),
+            decode("{\"type\":\"read\",\"conversationId\":\"alice_bob\",\"seq\":2}"));
+
+        assertRejected("A 'conversationId' is required", "{\"type\":\"subscribe\",\"lastSeq\":12}");
+        assertRejected("A 'conversationId' is required", "{\"type\":\"unsubscribe\"}");
+        assertRejected("A 'conversationId' is required", "{\"type\":\"delivered\",\"seq\":3}");
+        assertRejected("delivered requires a numeric 'seq'",
+            "{\"type\":\"delivered\",\"conversationId\":\"alice_bob\"}");
+        assertRejected("read requires a numeric 'seq'", "{\"type\":\"read\",\"conversationId\":\"alice_bob\"}");
+    }
+
+    @Test
+    void testConversationIdScopesConversationCommands() throws IOException {
+        assertEquals(new Scoped("alice_bob", new Send("Hola")),
+            decode("{\"conversationId\":\"alice_bob\",\"content\":\"Hola\"}"));
+        assertEquals(new Scoped("alice_bob", new LoadMore(10)),
+            decode("{\"type\":\"load_more\",\"conversationId\":\"alice_bob\",\"before\":10}"));
+        assertEquals(new Scoped("alice_bob", new Resume(4)),
+            decode("{\"type\":\"resume\",\"conversationId\":\"alice_bob\",\"lastSeq\":4}"));
+        assertEquals(new Scoped("alice_bob", new SendBatch(List.of(new BatchItem("c1", "Uno")))),
+            decode("{\"type\":\"send_batch\",\"conversationId\":\"alice_bob\","
+                + "\"messages\":[{\"correlationId\":\"c1\",\"content\":\"Uno\"}]}"));
+        // An invalid conversation command fails the same with or without conversationId
+        assertRejected("load_more requires a numeric 'before'",
+            "{\"type\":\"load_more\",\"conversationId\":\"alice_bob\"}");
+    }
+
+    private WireCommand decode(String json) throws IOException {
+        return codec.decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertRejected(String message, String json) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> decode(json));
+        assertEquals(message, error.getMessage());
+    }
+}
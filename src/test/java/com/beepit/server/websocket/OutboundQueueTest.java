@@ -0,0 +1,166 @@
+package com.beepit.server.websocket;
+
+import io.micronaut.websocket.CloseReason;
+import io.micronaut.websocket.WebSocketSession;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    private EmbeddedChannel channel;
+    private DeliveryMetrics metrics;
+    private OutboundConfiguration config;
+    private List<CloseReason> closes;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setup() {
+        channel = new EmbeddedChannel();
+        metrics = new DeliveryMetrics();
+        config = new OutboundConfiguration();
+        config.setHighWaterMark(2);
+        config.setMaxQueued(4);
+        closes = new ArrayList<>();
+        session = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {WebSocketSession.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getId" -> "session-1";
+                case "isOpen" -> true;
+                case "close" -> {
+                    closes.add((CloseReason) args[0]);
+                    yield null;
+                }
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testDrainsWhenChannelBecomesWritable() {
+        OutboundQueue queue = queue();
+        setWritable(false);
+        queue.offer(frame("a"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("b"), FrameKind.ESSENTIAL, null);
+        assertEquals(2, queue.depth());
+        assertNull(channel.readOutbound());
+
+        // With no writes in flight, only the writability change drains the queue again
+        setWritable(true);
+        assertEquals(List.of("a", "b"), written());
+        assertEquals(0, queue.depth());
+        assertEquals(2, metrics.snapshot().get("delivered"));
+    }
+
+    @Test
+    void testCoalescesAndDropsPastHighWaterMark() {
+        OutboundQueue queue = queue();
+        setWritable(false);
+        queue.offer(frame("a"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("b"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("presence-1"), FrameKind.COALESCABLE, "presence:alice");
+        queue.offer(frame("presence-2"), FrameKind.COALESCABLE, "presence:alice");
+        queue.offer(frame("typing"), FrameKind.DROPPABLE, null);
+        assertEquals(4, queue.depth());
+
+        // Queue full: what is not essential is dropped
+        ByteBuf late = frame("late");
+        queue.offer(late, FrameKind.DROPPABLE, null);
+        assertEquals(0, late.refCnt());
+        assertEquals(1, queue.dropped());
+
+        setWritable(true);
+        assertEquals(List.of("a", "b", "presence-2", "typing"), written());
+        assertEquals(1, metrics.snapshot().get("coalesced"));
+        assertEquals(1, metrics.snapshot().get("dropped"));
+        assertTrue(closes.isEmpty());
+    }
+
+    @Test
+    void testDropPolicyDisconnectsWhenEssentialFramesOverflow() {
+        config.setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+        OutboundQueue queue = queue();
+        setWritable(false);
+        queue.offer(frame("a"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("b"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("presence"), FrameKind.COALESCABLE, "presence:alice");
+        queue.offer(frame("typing"), FrameKind.DROPPABLE, null);
+        assertEquals(2, queue.depth());
+        assertEquals(2, queue.dropped());
+
+        // Messages keep being queued up to the hard limit
+        queue.offer(frame("c"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("d"), FrameKind.ESSENTIAL, null);
+        assertEquals(4, queue.depth());
+        assertTrue(closes.isEmpty());
+
+        ByteBuf overflow = frame("e");
+        queue.offer(overflow, FrameKind.ESSENTIAL, null);
+        assertEquals(0, overflow.refCnt());
+        assertSlowConsumerClosed(queue);
+    }
+
+    @Test
+    void testDisconnectPolicyClosesPastHighWaterMark() {
+        config.setSlowConsumerPolicy(SlowConsumerPolicy.DISCONNECT);
+        OutboundQueue queue = queue();
+        setWritable(false);
+        ByteBuf queued = frame("a");
+        queue.offer(queued, FrameKind.ESSENTIAL, null);
+        queue.offer(frame("b"), FrameKind.ESSENTIAL, null);
+        queue.offer(frame("typing"), FrameKind.DROPPABLE, null);
+
+        assertSlowConsumerClosed(queue);
+        assertEquals(0, queued.refCnt());
+        // Once the queue is closed, whatever arrives later is dropped
+        queue.offer(frame("late"), FrameKind.ESSENTIAL, null);
+        setWritable(true);
+        assertNull(channel.readOutbound());
+    }
+
+    private void assertSlowConsumerClosed(OutboundQueue queue) {
+        assertEquals(1, closes.size());
+        assertEquals(OutboundQueue.SLOW_CONSUMER_CLOSE_CODE, closes.get(0).getCode());
+        assertEquals(0, queue.depth());
+        assertEquals(1, metrics.snapshot().get("slowConsumerDisconnects"));
+    }
+
+    private OutboundQueue queue() {
+        return new OutboundQueue(session, channel, new BinaryWireCodec(), config, metrics);
+    }
+
+    private void setWritable(boolean writable) {
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, writable);
+        // The writability notice arrives as an event loop task
+        channel.runPendingTasks();
+    }
+
+    private static ByteBuf frame(String content) {
+        return Unpooled.copiedBuffer(content, StandardCharsets.UTF_8);
+    }
+
+    private List<String> written() {
+        List<String> contents = new ArrayList<>();
+        WebSocketFrame frame;
+        while ((frame = channel.readOutbound()) != null) {
+            contents.add(frame.content().toString(StandardCharsets.UTF_8));
+            frame.release();
+        }
+        return contents;
+    }
+}
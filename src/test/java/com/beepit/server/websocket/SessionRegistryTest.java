@@ -0,0 +1,70 @@
+package com.beepit.server.websocket;
+
+import com.beepit.server.websocket.SessionRegistry.LiveSession;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionRegistryTest {
+
+    private final SessionRegistry registry = new SessionRegistry();
+
+    @Test
+    void testFirstAndLastSessionOfUser() {
+        LiveSession phone = session();
+        LiveSession laptop = session();
+        LiveSession chat = session();
+
+        assertTrue(registry.registerUser("alice", phone));
+        assertFalse(registry.registerUser("alice", laptop));
+        // A conversation session also counts as a session of the user
+        assertFalse(registry.register("alice_bob", "alice", chat));
+        assertEquals(Set.of(phone, laptop, chat), registry.sessionsOf("alice"));
+
+        assertFalse(registry.unregisterUser("alice", phone));
+        assertFalse(registry.unregister("alice_bob", "alice", chat));
+        assertTrue(registry.unregisterUser("alice", laptop));
+        assertTrue(registry.sessionsOf("alice").isEmpty());
+        assertTrue(registry.sessionsFor("alice_bob").isEmpty());
+
+        // A session that was already gone: it is not the last one again
+        assertFalse(registry.unregisterUser("alice", laptop));
+        assertTrue(registry.registerUser("alice", laptop));
+    }
+
+    @Test
+    void testSubscriptionsIndexConversationAndPresence() {
+        LiveSession alice = session();
+        LiveSession bob = session();
+        registry.registerUser("alice", alice);
+        registry.registerUser("bob", bob);
+
+        registry.subscribe("alice_bob", "bob", alice);
+        registry.subscribe("alice_carol", "carol", alice);
+        assertEquals(Set.of(alice), registry.sessionsFor("alice_bob"));
+        assertEquals(Set.of(alice), registry.watchersOf("bob"));
+        assertEquals(Set.of(alice), registry.watchersOf("carol"));
+        assertTrue(registry.isViewing("alice_bob", "alice"));
+        assertFalse(registry.isViewing("alice_bob", "bob"));
+
+        registry.subscribe("alice_bob", "alice", bob);
+        assertEquals(Set.of(alice, bob), registry.sessionsFor("alice_bob"));
+        assertTrue(registry.isViewing("alice_bob", "bob"));
+
+        registry.unsubscribe("alice_bob", "bob", alice);
+        assertEquals(Set.of(bob), registry.sessionsFor("alice_bob"));
+        assertTrue(registry.watchersOf("bob").isEmpty());
+        assertEquals(Set.of(alice), registry.watchersOf("carol"));
+        assertFalse(registry.isViewing("alice_bob", "alice"));
+
+        // Unsubscribing does not close the user's session
+        assertEquals(Set.of(alice), registry.sessionsOf("alice"));
+        assertEquals(2, registry.allSessions().size());
+    }
+
+    private static LiveSession session() {
+        return new LiveSession(null, null, null, new BinaryWireCodec());
+    }
+}